@@ -0,0 +1,81 @@
+package com.iamtechknow.d2sbackend;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Time a request thread spends publishing an audit event, with the log writing to a temporary directory and with it
+ * disabled, from one thread and from several at once. The stats printed at teardown show how many events were dropped
+ * because the writer fell behind, which are cheaper to publish than the ones written.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class D2AuditLogBenchmark {
+    private static final long CLIENT = 0x7F000001L + 1;
+
+    @Param({"true", "false"})
+    public boolean enabled;
+
+    private Path dir;
+    private D2AuditLog log;
+    private D2Save save;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("d2s-audit");
+        log = new D2AuditLog(enabled ? dir.toString() : "", 1 << 20, 64L << 20);
+
+        save = new D2Save();
+        save.setName("Benchmark");
+        save.setClassNum(D2Save.NECROMANCER);
+        save.setLevel(80);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException, IOException {
+        log.destroy();
+        System.out.println(log.getStats());
+        try(Stream<Path> paths = Files.walk(dir)) {
+            for(Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+                Files.delete(path);
+        }
+    }
+
+    @Benchmark
+    public void submit() {
+        log.submit(CLIENT, save);
+    }
+
+    @Benchmark
+    public void download() {
+        log.download(CLIENT, save, 8192);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void submitContended() {
+        log.submit(CLIENT, save);
+    }
+}
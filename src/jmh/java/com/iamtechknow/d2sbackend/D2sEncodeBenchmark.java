@@ -0,0 +1,77 @@
+package com.iamtechknow.d2sbackend;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to encode items and a save holding items without a trace, the path every download takes. Only uses writer
+ * constructors that predate D2BitTrace, so it can be run against revisions before it to check it costs them nothing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class D2sEncodeBenchmark {
+    private static final int ITEMS = 1024;
+    private static final String[] STASH_ITEMS = {"hax", "gcv", "lsd", "buc", "cap", "qui", "tbk", "key", "hp1", "mp1"};
+
+    private D2Item[] items;
+    private int next;
+
+    private final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    private D2sItemWriter itemWriter;
+
+    private D2Save save;
+
+    @Setup
+    public void setUp() {
+        D2LootGenerator generator = new D2LootGenerator(1);
+        items = new D2Item[ITEMS];
+        for(int i = 0; i < ITEMS; i++)
+            items[i] = generator.nextItem(1 + i % D2LootGenerator.MAX_LEVEL);
+        itemWriter = new D2sItemWriter(stream, new BitWriter(stream), D2sFormat.V1_10);
+
+        save = new D2Save();
+        save.setName("Encode");
+        save.setLevel(80);
+        save.setExpansion(true);
+        for(String type : STASH_ITEMS) {
+            D2ItemForm form = new D2ItemForm();
+            form.setType(type);
+            form.setDefense(30);
+            form.setDurability(20);
+            form.setQuantity(20);
+            save.getStash().add(form);
+        }
+        if(!save.checkValid())
+            throw new IllegalStateException("The save is invalid");
+    }
+
+    @Benchmark
+    public int encodeItem() {
+        stream.reset();
+        itemWriter.writeItem(items[next]);
+        next = (next + 1) & ITEMS - 1;
+        return stream.size();
+    }
+
+    @Benchmark
+    public byte[] writeSave() {
+        D2sWriter writer = new D2sWriter(new ByteArrayOutputStream());
+        writer.write(save);
+        return writer.toByteArray();
+    }
+}
@@ -0,0 +1,77 @@
+package com.iamtechknow.d2sbackend;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to encode an item with the compiled item layout of D2sItemWriter, and with the hand-written writer it
+ * replaced. Both write the same generated items, checked to come out the same at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class D2sItemWriterBenchmark {
+    private static final int ITEMS = 1024;
+
+    private D2Item[] items;
+    private int next;
+
+    private final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    private D2sItemWriter compiled;
+    private HandWrittenItemWriter handWritten;
+
+    @Setup
+    public void setUp() {
+        D2LootGenerator generator = new D2LootGenerator(1);
+        items = new D2Item[ITEMS];
+        for(int i = 0; i < ITEMS; i++)
+            items[i] = generator.nextItem(1 + i % D2LootGenerator.MAX_LEVEL);
+
+        compiled = new D2sItemWriter(stream, new BitWriter(stream), D2sFormat.V1_10);
+        handWritten = new HandWrittenItemWriter(stream, D2sFormat.V1_10);
+        for(D2Item item : items) {
+            stream.reset();
+            compiled.writeItem(item);
+            byte[] expected = stream.toByteArray();
+            stream.reset();
+            handWritten.writeItem(item);
+            if(!Arrays.equals(expected, stream.toByteArray()))
+                throw new IllegalStateException("The writers disagree on " + item.getTypeCode());
+        }
+    }
+
+    @Benchmark
+    public int compiledLayout() {
+        stream.reset();
+        compiled.writeItem(nextItem());
+        return stream.size();
+    }
+
+    @Benchmark
+    public int handWritten() {
+        stream.reset();
+        handWritten.writeItem(nextItem());
+        return stream.size();
+    }
+
+    private D2Item nextItem() {
+        D2Item item = items[next];
+        next = (next + 1) & ITEMS - 1;
+        return item;
+    }
+}
@@ -0,0 +1,102 @@
+package com.iamtechknow.d2sbackend;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to write whole 1.10-1.13c saves, one of each class, as the submit endpoint does, and the corpse and Iron Golem
+ * sections of a necromancer who has both.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class D2sWriterBenchmark {
+    private static final int CLASSES = 7;
+    private static final String[] CORPSE_ITEMS = {"qui", "hax", "gcv", "lsd", "buc", "cap", "tbk", "key"};
+
+    private D2Save[] saves;
+    private int next;
+
+    private D2Save necromancer;
+
+    @Setup
+    public void setUp() {
+        saves = new D2Save[CLASSES];
+        for(int i = 0; i < CLASSES; i++) {
+            D2Save save = new D2Save();
+            save.setName("Bench" + (char) ('a' + i));
+            save.setClassNum(i);
+            save.setLevel(75 + i);
+            save.setDifficulty(10);
+            save.setStartingAct(i % 5);
+            save.setExpansion(true);
+            save.setGold(75000);
+            save.setStashGold(500000);
+            save.setStr(20);
+
+            D2QuestRewards rewards = save.getRewards();
+            rewards.setDen(true);
+            rewards.setImbue(true);
+            rewards.setSkillBook(true);
+            rewards.setLamEsen(true);
+            rewards.setIzual(true);
+            rewards.setnAncients(true);
+            rewards.setNmAncients(true);
+            save.checkValid();
+            saves[i] = save;
+        }
+
+        necromancer = new D2Save();
+        necromancer.setName("Necro");
+        necromancer.setClassNum(D2Save.NECROMANCER);
+        necromancer.setLevel(60);
+        necromancer.setExpansion(true);
+        for(String type : CORPSE_ITEMS)
+            necromancer.getCorpse().add(form(type));
+        necromancer.setGolem(form("spr"));
+        if(!necromancer.checkValid())
+            throw new IllegalStateException("The necromancer's save is invalid");
+    }
+
+    private static D2ItemForm form(String type) {
+        D2ItemForm form = new D2ItemForm();
+        form.setType(type);
+        form.setDefense(30);
+        form.setDurability(20);
+        form.setQuantity(20);
+        return form;
+    }
+
+    @Benchmark
+    public byte[] writeSave() {
+        D2Save save = saves[next];
+        next = next == CLASSES - 1 ? 0 : next + 1;
+        D2sWriter writer = new D2sWriter(new ByteArrayOutputStream());
+        writer.write(save);
+        return writer.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] writeCorpse() {
+        return D2sWriter.encodeSection(D2sWriter.Section.CORPSE, necromancer);
+    }
+
+    @Benchmark
+    public byte[] writeGolem() {
+        return D2sWriter.encodeSection(D2sWriter.Section.GOLEM, necromancer);
+    }
+}
@@ -0,0 +1,170 @@
+package com.iamtechknow.d2sbackend;
+
+import java.io.ByteArrayOutputStream;
+
+import static com.iamtechknow.d2sbackend.D2ExtendedItem.*;
+
+/**
+ * The item writer as it was before the item layout was compiled to method handles: a field per call, with the item
+ * kinds looked up in the current tables. Kept for D2sItemWriterBenchmark to compare against, with the property lists
+ * written by the shared encoder so the output is the same as D2sItemWriter's.
+ */
+class HandWrittenItemWriter {
+    private static final int[] LIST_MAP = {0, 1, 3, 7, 15, 31};
+
+    private final BitWriter bitWriter;
+    private final D2sFormat format;
+    private final D2PropertyEncoder encoder;
+
+    HandWrittenItemWriter(ByteArrayOutputStream stream, D2sFormat format) {
+        bitWriter = new BitWriter(stream);
+        this.format = format;
+        encoder = D2GameData.current().getPropertyEncoder(format);
+    }
+
+    void writeItem(D2Item item) {
+        bitWriter.writeBits(0x4A, 8, false);
+        bitWriter.writeBits(0x4D, 8, false);
+
+        // Item is IDed (bit 4), socketed (bit 11)
+        short vec1 = 0;
+        vec1 |= boolToInt(item.isIdentified()) << 4;
+        vec1 |= boolToInt(item.isSocketed()) << 11;
+        bitWriter.writeReversed(vec1, 16);
+
+        // Item is simple (bit 5), ethereal (bit 6), personalized (bit 8), RW (bit 10)
+        int vec2 = 0;
+        vec2 |= boolToInt(item.isSimple()) << 5;
+        vec2 |= boolToInt(item.isEthereal()) << 6;
+        vec2 |= 1 << 7;
+        vec2 |= boolToInt(item.isPersonalized()) << 8;
+        vec2 |= boolToInt(item.isHasRW()) << 10;
+        bitWriter.writeReversed(vec2, 26);
+
+        vec2 = 0;
+        vec2 |= item.getItemLocation();
+        vec2 |= item.getEquippedLoc() << 3;
+        vec2 |= item.getX() << 7;
+        vec2 |= item.getY() << 11;
+        vec2 |= item.getItemStore() << 15;
+        bitWriter.writeReversed(vec2, 18);
+
+        vec2 = 0;
+        for(int i = 0; i < item.getItemType().length(); i++)
+            vec2 |= item.getItemType().charAt(i) << (i * 8);
+        bitWriter.writeReversed(vec2, 32);
+
+        bitWriter.writeReversed(item.getNumSocketed(), 3);
+
+        if(!item.isSimple())
+            writeExtended(item);
+
+        bitWriter.pad();
+
+        // Socketed items immediately follow their parent item
+        if(item.getNumSocketed() > 0)
+            for(D2Item socket : item.getSocketedItems())
+                writeItem(socket);
+    }
+
+    private void writeExtended(D2Item item) {
+        D2ExtendedItem xItem = item.getExtendedData();
+        bitWriter.writeReversed(xItem.getIdentifier(), 32);
+        bitWriter.writeReversed(xItem.getiLvl(), 7);
+        bitWriter.writeReversed(xItem.getQuality(), 4);
+
+        bitWriter.writeReversed(boolToInt(xItem.isGenericMagicItem()), 1);
+        if(xItem.isGenericMagicItem())
+            bitWriter.writeReversed(xItem.getImgType(), 3);
+
+        bitWriter.writeReversed(boolToInt(xItem.isExpansionItem()), 1);
+        if(xItem.isExpansionItem())
+            bitWriter.writeReversed(xItem.getExpansionMagicProperty(), 11);
+
+        bitWriter.writeReversed(boolToInt(xItem.isLowQuality()), 1);
+        if(xItem.isLowQuality())
+            bitWriter.writeReversed(xItem.getQualityData(), 11);
+
+        switch(xItem.getQuality()) {
+            case SET:
+                bitWriter.writeReversed(xItem.getSetId(), 12);
+                break;
+            case UNIQUE:
+                bitWriter.writeReversed(xItem.getUniqueId(), 12);
+                break;
+            case RARE:
+            case CRAFTED:
+                bitWriter.writeReversed(xItem.getFirstWordId(), 8);
+                bitWriter.writeReversed(xItem.getSecondWordId(), 8);
+                for(int i = 0; i < 3; i++) {
+                    boolean hasIthPrefix = i < xItem.getPrefixIds().length,
+                            hasIthSuffix = i < xItem.getSuffixIds().length;
+
+                    bitWriter.writeReversed(boolToInt(hasIthPrefix), 1);
+                    if(hasIthPrefix)
+                        bitWriter.writeReversed(xItem.getPrefixIds()[i], 11);
+
+                    bitWriter.writeReversed(boolToInt(hasIthSuffix), 1);
+                    if(hasIthSuffix)
+                        bitWriter.writeReversed(xItem.getSuffixIds()[i], 11);
+                }
+                break;
+            default: // Magical
+                bitWriter.writeReversed(xItem.getPrefixId(), 11);
+                bitWriter.writeReversed(xItem.getSuffixId(), 11);
+        }
+
+        if(item.isHasRW())
+            bitWriter.writeReversed((xItem.getRwId() << 4) | 5, 16);
+
+        if(item.isPersonalized()) {
+            for(char c : xItem.getOwner().toCharArray())
+                bitWriter.writeReversed(c, 7);
+            bitWriter.writeBits(0, 7);
+        }
+
+        bitWriter.writeBits(boolToInt(xItem.isIdTome()), 1);
+
+        D2ItemData itemData = xItem.getData();
+        String type = item.getTypeCode();
+
+        if(D2ItemTypes.isArmor(type) || D2ItemTypes.isShield(type))
+            bitWriter.writeReversed(itemData.getDefense(), format.getDefenseBits());
+
+        if(D2ItemTypes.isNonMisc(type)) {
+            bitWriter.writeReversed(itemData.getMaxDur(), format.getMaxDurabilityBits());
+            if(itemData.getMaxDur() > 0)
+                bitWriter.writeReversed(itemData.getCurDur(), format.getDurabilityBits());
+        }
+
+        if(item.isSocketed())
+            bitWriter.writeReversed(itemData.getSockets(), format.getSocketsBits());
+
+        if(D2ItemTypes.isTome(type))
+            bitWriter.writeBits(0, 5);
+
+        if(D2ItemTypes.hasQuantity(type))
+            bitWriter.writeReversed(itemData.getQuantity(), format.getQuantityBits());
+
+        if(xItem.getQuality() == SET)
+            bitWriter.writeReversed(LIST_MAP[itemData.getPropertyLists()], 5);
+
+        if(item.isHasRW())
+            bitWriter.writeReversed(encoder.getEnd(), format.getPropertyIdBits());
+
+        if(xItem.getQuality() >= MAGICAL || item.isHasRW())
+            encoder.writeList(bitWriter, itemData.getPropertyIds(), itemData.getPropertyValues(), 0);
+
+        // Each set bonus in its own list
+        if(xItem.getQuality() == SET) {
+            int[] ids = itemData.getSetBonusIds();
+            long[] vals = itemData.getSetBonusValues();
+            for(int i = 0, offset = 0; i < itemData.getPropertyLists(); i++)
+                offset = encoder.writeList(bitWriter, new int[]{ids[i]}, vals, offset);
+        }
+    }
+
+    private static int boolToInt(boolean b) {
+        return b ? 1 : 0;
+    }
+}
@@ -6,11 +6,11 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Entry point for the web app. Contains a bean to allow constructor injection of a cache.
+ * Entry point for the web app. Contains a bean to allow constructor injection of a cache, which is shared by request threads and imports.
  */
 @Configuration
 @EnableAutoConfiguration
@@ -22,6 +22,6 @@ public class Application {
 
     @Bean
     public Map<String, D2Save> map() {
-        return new HashMap<>();
+        return new ConcurrentHashMap<>();
     }
 }
@@ -0,0 +1,84 @@
+package com.iamtechknow.d2sbackend;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+// Utility to read up to 56 bits at a time from a byte array, the counterpart of BitWriter.
+// Values come out in the order BitWriter.writeBits wrote their reversed bits, that is the first bit in the stream
+// is bit 0 of the value. The buffer is refilled 8 bytes at a time.
+public class BitReader {
+    public static final int MAX_BITS = 56;
+    private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final byte[] data;
+
+    // Index of the next byte to load into the buffer
+    private int pos;
+
+    // Bits loaded but not yet consumed, starting at bit 0
+    private long buffer;
+    private int bitCount;
+
+    public BitReader(byte[] data, int offset) {
+        this.data = data;
+        pos = offset;
+    }
+
+    // Start reading at another byte offset, dropping what is buffered
+    public void reset(int offset) {
+        pos = offset;
+        buffer = 0;
+        bitCount = 0;
+    }
+
+    public long readBits(int num) {
+        if(num > MAX_BITS)
+            throw new IllegalArgumentException("Cannot read more than " + MAX_BITS + " bits");
+
+        if(bitCount < num)
+            refill();
+        if(bitCount < num)
+            throw new IllegalArgumentException("Save file is truncated at byte " + pos);
+
+        long result = buffer & ((1L << num) - 1);
+        buffer >>>= num;
+        bitCount -= num;
+        return result;
+    }
+
+    // Skip the rest of the current byte, as the writer pads the last byte of a bit section with 0
+    public void alignToByte() {
+        int drop = bitCount & 7;
+        buffer >>>= drop;
+        bitCount -= drop;
+    }
+
+    // Offset of the next unread bit from the start of the data
+    public long getBitPosition() {
+        return (long) pos * 8 - bitCount;
+    }
+
+    /**
+     * @return offset of the next unread byte, after aligning to a byte
+     */
+    public int getBytePosition() {
+        alignToByte();
+        return pos - bitCount / 8;
+    }
+
+    // Top up the buffer to at least 56 bits. Bytes past the loaded ones may be partially shifted in,
+    // but they are or'd in again with the same values on the next refill.
+    private void refill() {
+        if(pos + 8 <= data.length) {
+            buffer |= (long) LONG_LE.get(data, pos) << bitCount;
+            pos += (63 - bitCount) >>> 3;
+            bitCount |= 56;
+        } else {
+            while(bitCount <= 56 && pos < data.length) {
+                buffer |= (data[pos++] & 0xFFL) << bitCount;
+                bitCount += 8;
+            }
+        }
+    }
+}
@@ -12,32 +12,38 @@ public class BitWriter {
 
     private ByteArrayOutputStream stream;
 
+    // Where fields are recorded by traced encoders, null otherwise. The writes themselves never check it
+    private D2BitTrace trace;
+
     public BitWriter(ByteArrayOutputStream stream) {
         this.stream = stream;
     }
 
+    public BitWriter(ByteArrayOutputStream stream, D2BitTrace trace) {
+        this.stream = stream;
+        this.trace = trace;
+    }
+
+    public D2BitTrace getTrace() {
+        return trace;
+    }
+
+    // Bits written to the stream so far, counting the ones not yet flushed
+    public long getBitPosition() {
+        return stream.size() * 8L + bitCount;
+    }
+
     // Takes an int in the range of [0, 255]
     public int reverseByte(int b) {
-        int r = 0;
-        for (int i = 0; i < 8; i++) {
-            r <<= 1;
-            r |= b & 1;
-            b >>= 1;
-        }
-        return r;
+        return Integer.reverse(b) >>> 24;
     }
 
+    // Reverse the lowest num bits of vec
     public long reverseBits(long vec, int num) {
         if(num > 64)
             throw new IllegalArgumentException("Cannot reverse more than 64 bits");
 
-        long r = 0;
-        for (int i = 0; i < num; i++) {
-            r <<= 1;
-            r |= vec & 1;
-            vec >>= 1;
-        }
-        return r;
+        return num == 0 ? 0 : Long.reverse(vec) >>> (64 - num);
     }
 
     public void writeBits(long vec, int num, boolean reverse) {
@@ -68,6 +74,39 @@ public class BitWriter {
         writeBits(vec, num, true);
     }
 
+    /**
+     * Write the lowest num bits of vec, least significant bit first, like every field of the save.
+     * Same as writeBits(reverseBits(vec, num), num), but whole bytes are written at once instead of a bit at a time.
+     */
+    public void writeReversed(long vec, int num) {
+        if(num > 64)
+            throw new IllegalArgumentException("Cannot write more than 64 bits");
+
+        // The bits already seen and the new bits have to fit in a long
+        if(num > 56) {
+            writeReversed(vec, 32);
+            vec >>>= 32;
+            num -= 32;
+        }
+        if(num == 0)
+            return;
+
+        // Bits of the current byte are kept first bit highest, so reverse them to append the new bits after them
+        long bits = reverseBits(currentByte, (int) bitCount) | (vec & (1L << num) - 1) << bitCount;
+        int total = (int) bitCount + num;
+        for(; total >= 8; total -= 8, bits >>>= 8)
+            stream.write((int) bits);
+
+        currentByte = reverseBits(bits, total);
+        bitCount = total;
+    }
+
+    // Write the rest of the bits as a final byte padded with 0, if there are any
+    public void pad() {
+        if(bitCount > 0)
+            stream.write((int) flush());
+    }
+
     // Flush the rest of the bits, padded with 0, and reverse the bits already seen
     public long flush() {
         long retVal = reverseBits(currentByte, (int) bitCount);
@@ -0,0 +1,115 @@
+package com.iamtechknow.d2sbackend;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Administrative endpoints. Every request needs the token set in d2s.admin.token, and they are all disabled if it is empty.
+ */
+@Controller
+public class D2AdminController {
+    public static final String TOKEN_HEADER = "X-Admin-Token";
+
+    private D2SaveStore store;
+    private D2GameDataLoader dataLoader;
+    private byte[] token;
+    private Path checkpoint;
+    private int importThreads;
+
+    // Imports run one at a time, in the background
+    private final ExecutorService importExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "d2s-import");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile D2sImporter importer;
+    private Future<?> importTask;
+
+    @Autowired
+    public D2AdminController(D2SaveStore store, D2GameDataLoader dataLoader,
+                             @Value("${d2s.admin.token:}") String token,
+                             @Value("${d2s.import.checkpoint:import.checkpoint}") String checkpoint,
+                             @Value("${d2s.import.threads:0}") int importThreads) {
+        this.store = store;
+        this.dataLoader = dataLoader;
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+        this.checkpoint = Paths.get(checkpoint);
+        this.importThreads = importThreads > 0 ? importThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Start importing the saves in a directory or ZIP on the server. Returns 409 if an import is already running.
+     */
+    @PostMapping(value = "/api/admin/import", produces = "application/json")
+    public synchronized ResponseEntity<String> startImport(@RequestHeader(value = TOKEN_HEADER, required = false) String token,
+                                                           @RequestParam String source) {
+        checkToken(token);
+        if(importTask != null && !importTask.isDone())
+            return ResponseEntity.status(HttpStatus.CONFLICT).contentType(MediaType.APPLICATION_JSON_UTF8).body(importer.getProgress().toString());
+
+        D2sImporter next = new D2sImporter(store, checkpoint, importThreads);
+        importer = next;
+        importTask = importExecutor.submit(() -> {
+            next.run(Paths.get(source));
+            return null;
+        });
+        return ResponseEntity.status(HttpStatus.ACCEPTED).contentType(MediaType.APPLICATION_JSON_UTF8).body(next.getProgress().toString());
+    }
+
+    @GetMapping(value = "/api/admin/import", produces = "application/json")
+    @ResponseBody
+    public String getImport(@RequestHeader(value = TOKEN_HEADER, required = false) String token) {
+        checkToken(token);
+        if(importer == null)
+            throw new ResourceNotFoundException();
+        return importer.getProgress().toString();
+    }
+
+    /**
+     * Load the game data tables again from their directory and wait until they are in use. Returns 400 with the
+     * error if they don't load, in which case the tables in use are kept.
+     */
+    @PostMapping(value = "/api/admin/data/reload", produces = "application/json")
+    public ResponseEntity<String> reloadData(@RequestHeader(value = TOKEN_HEADER, required = false) String token) throws InterruptedException {
+        checkToken(token);
+        if(!dataLoader.isEnabled())
+            throw new ResourceNotFoundException();
+
+        try {
+            dataLoader.reload().get();
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(dataLoader.getStatus().toString());
+        } catch(ExecutionException e) {
+            return ResponseEntity.badRequest().contentType(MediaType.APPLICATION_JSON_UTF8).body(dataLoader.getStatus().toString());
+        }
+    }
+
+    @GetMapping(value = "/api/admin/data", produces = "application/json")
+    @ResponseBody
+    public String getData(@RequestHeader(value = TOKEN_HEADER, required = false) String token) {
+        checkToken(token);
+        return dataLoader.getStatus().toString();
+    }
+
+    private void checkToken(String token) {
+        if(this.token.length == 0 || token == null || !MessageDigest.isEqual(this.token, token.getBytes(StandardCharsets.UTF_8)))
+            throw new ForbiddenException();
+    }
+}
@@ -0,0 +1,253 @@
+package com.iamtechknow.d2sbackend;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Audit trail of the saves submitted and downloaded, written to append-only files in d2s.audit.dir.
+ *
+ * Request threads claim a slot of a ring buffer with a CAS, fill in its longs and publish it by setting the slot's
+ * sequence, so publishing never blocks or touches the disk. A single writer thread copies every published event into
+ * a buffer and writes the batch with one FileChannel write, starting a new file once one reaches d2s.audit.maxFileSize.
+ * Events are dropped and counted when the ring is full. D2AuditReader decodes the files.
+ */
+@Component
+public class D2AuditLog implements DisposableBean {
+    public static final int SUBMIT = 1, DOWNLOAD = 2;
+
+    // Each file starts with the magic, the format and the record size, then has a record per event
+    static final int MAGIC = 0x44324155, FORMAT = 1, HEADER_SIZE = 8;
+    static final String PREFIX = "audit-", SUFFIX = ".bin";
+
+    /*
+     * Layout of an event, little endian:
+     * 0: time in epoch milliseconds
+     * 8: client key, from D2RateLimitInterceptor.getClientKey, a configured API key or the address
+     * 16: type, class, level and name length as bytes, then size as an int
+     * 24: name, up to 16 ASCII characters
+     */
+    static final int EVENT_LONGS = 5, RECORD_SIZE = EVENT_LONGS * Long.BYTES, MAX_NAME = 16;
+
+    // How long the writer sleeps when the ring is empty
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final Path dir;
+    private final long maxFileSize;
+
+    private final int mask;
+    private final long[] events;
+    // Sequence of the event in each slot plus one, set once the event is filled in
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long consumed;
+
+    private final LongAdder dropped = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private volatile long written, batches, files;
+    private volatile String error;
+
+    private Thread writer;
+    private volatile boolean running;
+
+    private FileChannel channel;
+    private long fileSize;
+    private final ByteBuffer batch;
+
+    /**
+     * @param capacity events the ring holds, rounded up to a power of two
+     */
+    @Autowired
+    public D2AuditLog(@Value("${d2s.audit.dir:}") String dir,
+                      @Value("${d2s.audit.capacity:65536}") int capacity,
+                      @Value("${d2s.audit.maxFileSize:67108864}") long maxFileSize) throws IOException {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.maxFileSize = Math.max(maxFileSize, HEADER_SIZE + RECORD_SIZE);
+        mask = size - 1;
+
+        if(dir.isEmpty()) {
+            this.dir = null;
+            events = null;
+            published = null;
+            batch = null;
+            return;
+        }
+
+        this.dir = Paths.get(dir);
+        Files.createDirectories(this.dir);
+        events = new long[size * EVENT_LONGS];
+        published = new AtomicLongArray(size);
+        batch = ByteBuffer.allocateDirect(Math.min(size, 4096) * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        running = true;
+        writer = new Thread(this::drain, "d2s-audit");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Whether events are written anywhere
+    public boolean isEnabled() {
+        return dir != null;
+    }
+
+    public void submit(long client, D2Save save) {
+        publish(SUBMIT, client, save, 0);
+    }
+
+    /**
+     * @param size bytes of the save file sent
+     */
+    public void download(long client, D2Save save, int size) {
+        publish(DOWNLOAD, client, save, size);
+    }
+
+    private void publish(int type, long client, D2Save save, int size) {
+        if(dir == null)
+            return;
+
+        long start = System.nanoTime(), seq;
+        do {
+            seq = claimed.get();
+            if(seq - consumed > mask) {
+                dropped.increment();
+                return;
+            }
+        } while(!claimed.compareAndSet(seq, seq + 1));
+
+        String name = save.getName();
+        int length = name == null ? 0 : Math.min(name.length(), MAX_NAME);
+        long low = 0, high = 0;
+        for(int i = 0; i < length; i++) {
+            long c = name.charAt(i) & 0x7F;
+            if(i < Long.BYTES)
+                low |= c << i * 8;
+            else
+                high |= c << (i - Long.BYTES) * 8;
+        }
+
+        int slot = (int) seq & mask, base = slot * EVENT_LONGS;
+        events[base] = System.currentTimeMillis();
+        events[base + 1] = client;
+        events[base + 2] = type | (save.getClassNum() & 0xFF) << 8 | (save.getLevel() & 0xFF) << 16 | length << 24 |
+            (long) size << 32;
+        events[base + 3] = low;
+        events[base + 4] = high;
+        published.lazySet(slot, seq + 1);
+        latency.record(System.nanoTime() - start);
+    }
+
+    // Writer thread: copy out every published event, write them as one batch, and sleep when there are none
+    private void drain() {
+        long next = consumed;
+        while(true) {
+            boolean stopping = !running;
+            int slot = (int) next & mask;
+            while(batch.remaining() >= RECORD_SIZE && published.get(slot) == next + 1) {
+                int base = slot * EVENT_LONGS;
+                for(int i = 0; i < EVENT_LONGS; i++)
+                    batch.putLong(events[base + i]);
+                slot = (int) ++next & mask;
+            }
+
+            if(batch.position() > 0) {
+                // The slots are free to reuse once copied
+                consumed = next;
+                flush();
+            } else if(stopping) {
+                break;
+            } else
+                LockSupport.parkNanos(this, IDLE_NANOS);
+        }
+        close();
+    }
+
+    private void flush() {
+        batch.flip();
+        try {
+            if(channel == null || fileSize + batch.remaining() > maxFileSize)
+                rotate();
+            while(batch.hasRemaining())
+                fileSize += channel.write(batch);
+            written += batch.limit() / RECORD_SIZE;
+            batches++;
+        } catch(IOException e) {
+            // Lose the batch rather than stall the ring, and try a new file next time
+            error = e.getMessage();
+            close();
+        }
+        batch.clear();
+    }
+
+    private void rotate() throws IOException {
+        close();
+        Path file;
+        long time = System.currentTimeMillis();
+        do {
+            file = dir.resolve(PREFIX + time++ + SUFFIX);
+        } while(Files.exists(file));
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putShort((short) FORMAT).putShort((short) RECORD_SIZE).flip();
+        while(header.hasRemaining())
+            channel.write(header);
+        fileSize = HEADER_SIZE;
+        files++;
+    }
+
+    private void close() {
+        if(channel == null)
+            return;
+        try {
+            channel.force(false);
+            channel.close();
+        } catch(IOException e) {
+            error = e.getMessage();
+        }
+        channel = null;
+    }
+
+    /**
+     * Counts of events published, dropped and written, and the time request threads spent publishing.
+     */
+    public JsonObject getStats() {
+        JsonObject result = new JsonObject();
+        result.add("enabled", new JsonPrimitive(isEnabled()));
+        result.add("published", new JsonPrimitive(claimed.get()));
+        result.add("dropped", new JsonPrimitive(dropped.sum()));
+        result.add("written", new JsonPrimitive(written));
+        result.add("batches", new JsonPrimitive(batches));
+        result.add("files", new JsonPrimitive(files));
+        result.add("publish", latency.toJson());
+        if(error != null)
+            result.add("error", new JsonPrimitive(error));
+        return result;
+    }
+
+    // Write out what was published, then close the file
+    @Override
+    public void destroy() throws InterruptedException {
+        if(writer == null)
+            return;
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+}
@@ -0,0 +1,109 @@
+package com.iamtechknow.d2sbackend;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Prints the events of the files D2AuditLog writes, a tab separated line per event: time, type, client, name,
+ * class, level and size. Clients that were identified by address are printed as the address, others as their hash.
+ */
+public class D2AuditReader {
+    private static final String[] TYPES = {"?", "submit", "download"};
+
+    private final PrintStream out;
+
+    public D2AuditReader(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Print every event of a file.
+     * @return how many events it has
+     */
+    public long read(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            if(buffer.remaining() < D2AuditLog.HEADER_SIZE || buffer.getInt() != D2AuditLog.MAGIC)
+                throw new IOException(file + " is not an audit log");
+            int format = buffer.getShort(), recordSize = buffer.getShort();
+            if(format != D2AuditLog.FORMAT || recordSize != D2AuditLog.RECORD_SIZE)
+                throw new IOException(file + " has unknown format " + format);
+
+            long count = 0;
+            StringBuilder line = new StringBuilder();
+            // A partly written record at the end is ignored
+            while(buffer.remaining() >= recordSize) {
+                long time = buffer.getLong(), client = buffer.getLong(), info = buffer.getLong(),
+                     low = buffer.getLong(), high = buffer.getLong();
+                int type = (int) info & 0xFF;
+
+                line.setLength(0);
+                line.append(Instant.ofEpochMilli(time)).append('\t')
+                    .append(type < TYPES.length ? TYPES[type] : TYPES[0]).append('\t')
+                    .append(formatClient(client)).append('\t');
+                int length = (int) (info >>> 24) & 0xFF;
+                for(int i = 0; i < length; i++)
+                    line.append((char) ((i < Long.BYTES ? low >>> i * 8 : high >>> (i - Long.BYTES) * 8) & 0x7F));
+                line.append('\t').append(info >>> 8 & 0xFF).append('\t').append(info >>> 16 & 0xFF)
+                    .append('\t').append(info >>> 32);
+                out.println(line);
+                count++;
+            }
+            return count;
+        }
+    }
+
+    // IPv4 addresses are stored plus one, anything else is a hash with the top bit set
+    static String formatClient(long client) {
+        if(client < 0)
+            return String.format("%016x", client);
+        long addr = client - 1;
+        return (addr >>> 24 & 0xFF) + "." + (addr >>> 16 & 0xFF) + "." + (addr >>> 8 & 0xFF) + "." + (addr & 0xFF);
+    }
+
+    /**
+     * Arguments: audit files, or directories whose files are read in the order they were written.
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 1) {
+            System.err.println("Usage: D2AuditReader <file or dir>...");
+            System.exit(1);
+        }
+
+        List<Path> files = new ArrayList<>();
+        for(String arg : args) {
+            Path path = Paths.get(arg);
+            if(Files.isDirectory(path)) {
+                // Names hold the time the file was started, so they sort in order
+                try(Stream<Path> paths = Files.list(path)) {
+                    files.addAll(paths.filter(file -> {
+                        String name = file.getFileName().toString();
+                        return name.startsWith(D2AuditLog.PREFIX) && name.endsWith(D2AuditLog.SUFFIX);
+                    }).sorted((a, b) -> {
+                        String x = a.getFileName().toString(), y = b.getFileName().toString();
+                        return x.length() != y.length() ? x.length() - y.length() : x.compareTo(y);
+                    }).collect(Collectors.toList()));
+                }
+            } else
+                files.add(path);
+        }
+
+        D2AuditReader reader = new D2AuditReader(System.out);
+        long events = 0;
+        for(Path file : files)
+            events += reader.read(file);
+        System.err.printf("%d events in %d files%n", events, files.size());
+    }
+}
@@ -0,0 +1,164 @@
+package com.iamtechknow.d2sbackend;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Declarative description of a bit packed record, such as an item, as a list of fields with their widths and sources.
+ * Fields may be conditional, and anything that can't be described as fields (lists, strings) is a custom step.
+ *
+ * The layout is compiled into a chain of method handles, one per field, with the sources and widths bound in.
+ * Stored in a static final field, the chain is a constant the JIT inlines into a straight-line encoder.
+ * A traced chain can be compiled from the same layout, which also records each field by name in the writer's
+ * D2BitTrace. The two chains share nothing, so the untraced one costs the same as before tracing existed.
+ *
+ * @param <T> type of the value the fields are read from
+ */
+public class D2BitLayout<T> {
+    // Every step has the type (BitWriter, Object)void, or boolean for conditions
+    private static final MethodType STEP = MethodType.methodType(void.class, BitWriter.class, Object.class);
+    private static final MethodHandle WRITE_FIELD, WRITE_BYTE, TEST, CUSTOM,
+                                      TRACE_FIELD, TRACE_BYTE, TRACE_CUSTOM;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            WRITE_FIELD = lookup.findStatic(D2BitLayout.class, "writeField",
+                STEP.insertParameterTypes(0, ToLongFunction.class, int.class));
+            WRITE_BYTE = lookup.findStatic(D2BitLayout.class, "writeByte", STEP.insertParameterTypes(0, int.class));
+            TEST = lookup.findStatic(D2BitLayout.class, "test",
+                STEP.changeReturnType(boolean.class).insertParameterTypes(0, Predicate.class));
+            CUSTOM = lookup.findStatic(D2BitLayout.class, "custom", STEP.insertParameterTypes(0, BiConsumer.class));
+            TRACE_FIELD = lookup.findStatic(D2BitLayout.class, "traceField",
+                STEP.insertParameterTypes(0, String.class, ToLongFunction.class, int.class));
+            TRACE_BYTE = lookup.findStatic(D2BitLayout.class, "traceByte",
+                STEP.insertParameterTypes(0, String.class, int.class));
+            TRACE_CUSTOM = lookup.findStatic(D2BitLayout.class, "traceCustom",
+                STEP.insertParameterTypes(0, String.class, BiConsumer.class));
+        } catch(ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // The steps of each chain, added together
+    private final List<MethodHandle> steps = new ArrayList<>(), tracedSteps = new ArrayList<>();
+
+    /**
+     * Bytes written as they are, such as a section marker. Must start at a byte boundary.
+     */
+    public D2BitLayout<T> bytes(String name, int... values) {
+        for(int value : values) {
+            steps.add(MethodHandles.insertArguments(WRITE_BYTE, 0, value));
+            tracedSteps.add(MethodHandles.insertArguments(TRACE_BYTE, 0, name, value));
+        }
+        return this;
+    }
+
+    /**
+     * A value written with its least significant bit first, like every numeric field of the save.
+     */
+    public D2BitLayout<T> field(String name, int width, ToLongFunction<? super T> source) {
+        steps.add(MethodHandles.insertArguments(WRITE_FIELD, 0, source, width));
+        tracedSteps.add(MethodHandles.insertArguments(TRACE_FIELD, 0, name, source, width));
+        return this;
+    }
+
+    public D2BitLayout<T> constant(String name, int width, long value) {
+        return field(name, width, t -> value);
+    }
+
+    // Flag written as a single bit
+    public D2BitLayout<T> flag(String name, Predicate<? super T> source) {
+        return field(name, 1, t -> source.test(t) ? 1 : 0);
+    }
+
+    /**
+     * Fields that are only written if the condition holds.
+     */
+    public D2BitLayout<T> when(Predicate<? super T> condition, D2BitLayout<T> fields) {
+        MethodHandle test = MethodHandles.insertArguments(TEST, 0, condition);
+        steps.add(MethodHandles.guardWithTest(test, fields.compile(), MethodHandles.empty(STEP)));
+        tracedSteps.add(MethodHandles.guardWithTest(test, fields.compileTraced(), MethodHandles.empty(STEP)));
+        return this;
+    }
+
+    /**
+     * A step that writes variable length data itself. Traced, it is recorded as a span around whatever it records.
+     */
+    public D2BitLayout<T> custom(String name, BiConsumer<BitWriter, ? super T> writer) {
+        steps.add(MethodHandles.insertArguments(CUSTOM, 0, writer));
+        tracedSteps.add(MethodHandles.insertArguments(TRACE_CUSTOM, 0, name, writer));
+        return this;
+    }
+
+    /**
+     * Compile the fields into one method handle of type (BitWriter, Object)void, which writes them in order.
+     */
+    public MethodHandle compile() {
+        return compile(steps, 0, steps.size());
+    }
+
+    /**
+     * Compile the fields into a handle that also records them in the trace of the writer, which must have one.
+     */
+    public MethodHandle compileTraced() {
+        return compile(tracedSteps, 0, tracedSteps.size());
+    }
+
+    // Sequence the steps as a balanced tree, so the nesting the JIT inlines through grows with the log of the field count
+    private static MethodHandle compile(List<MethodHandle> steps, int from, int to) {
+        if(to - from == 0)
+            return MethodHandles.empty(STEP);
+        if(to - from == 1)
+            return steps.get(from);
+
+        // Folding runs the combiner, then the target with the same arguments
+        int mid = (from + to) >>> 1;
+        return MethodHandles.foldArguments(compile(steps, mid, to), compile(steps, from, mid));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeField(ToLongFunction<Object> source, int width, BitWriter writer, Object value) {
+        writer.writeReversed(source.applyAsLong(value), width);
+    }
+
+    private static void writeByte(int b, BitWriter writer, Object value) {
+        writer.writeBits(b, 8, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean test(Predicate<Object> condition, BitWriter writer, Object value) {
+        return condition.test(value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void custom(BiConsumer<BitWriter, Object> writer, BitWriter bitWriter, Object value) {
+        writer.accept(bitWriter, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void traceField(String name, ToLongFunction<Object> source, int width, BitWriter writer, Object value) {
+        long field = source.applyAsLong(value), offset = writer.getBitPosition();
+        writer.writeReversed(field, width);
+        writer.getTrace().field(name, offset, width, field);
+    }
+
+    private static void traceByte(String name, int b, BitWriter writer, Object value) {
+        writer.getTrace().field(name, writer.getBitPosition(), 8, b);
+        writer.writeBits(b, 8, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void traceCustom(String name, BiConsumer<BitWriter, Object> writer, BitWriter bitWriter, Object value) {
+        D2BitTrace trace = bitWriter.getTrace();
+        int span = trace.begin(name, bitWriter.getBitPosition());
+        writer.accept(bitWriter, value);
+        trace.end(span, bitWriter.getBitPosition());
+    }
+}
@@ -0,0 +1,131 @@
+package com.iamtechknow.d2sbackend;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.util.Arrays;
+
+/**
+ * Record of where each field of an encoded save went: its name, bit offset from the start of the output, width and
+ * value. Filled in by writers that are given one, so a bad save can be compared to a good one field by field rather
+ * than by bisecting bits. Spans that aren't single fields, such as sections and property lists, are recorded with
+ * their total width and no value.
+ */
+public class D2BitTrace {
+    private String[] names = new String[256];
+    private long[] offsets = new long[256], values = new long[256];
+    private int[] widths = new int[256];
+    private boolean[] hasValue = new boolean[256];
+    private int size;
+
+    // Prepended to the names recorded, such as the item a field belongs to
+    private String scope = "";
+
+    /**
+     * @param offset bit offset of the field's least significant bit, counting each byte from its least significant bit
+     */
+    public void field(String name, long offset, int width, long value) {
+        add(name, offset, width, width == 64 ? value : value & (1L << width) - 1, true);
+    }
+
+    /**
+     * Start a region holding other fields, which are recorded after it.
+     * @return index of the region, to pass to end
+     */
+    public int begin(String name, long offset) {
+        add(name, offset, 0, 0, false);
+        return size - 1;
+    }
+
+    public void end(int index, long end) {
+        widths[index] = (int) (end - offsets[index]);
+    }
+
+    private void add(String name, long offset, int width, long value, boolean hasValue) {
+        if(size == names.length) {
+            int capacity = size * 2;
+            names = Arrays.copyOf(names, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            values = Arrays.copyOf(values, capacity);
+            widths = Arrays.copyOf(widths, capacity);
+            this.hasValue = Arrays.copyOf(this.hasValue, capacity);
+        }
+        names[size] = scope + name;
+        offsets[size] = offset;
+        widths[size] = width;
+        values[size] = value;
+        this.hasValue[size] = hasValue;
+        size++;
+    }
+
+    /**
+     * Name the fields recorded until the scope is restored with the returned value.
+     */
+    public String enter(String name) {
+        String outer = scope;
+        scope = outer + name + ".";
+        return outer;
+    }
+
+    public void restore(String scope) {
+        this.scope = scope;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String getName(int i) {
+        return names[i];
+    }
+
+    public long getOffset(int i) {
+        return offsets[i];
+    }
+
+    public int getWidth(int i) {
+        return widths[i];
+    }
+
+    public long getValue(int i) {
+        return values[i];
+    }
+
+    /**
+     * Entries in the order they were written, each with name, offset and width in bits, and value if it is a field.
+     */
+    public JsonArray toJson() {
+        JsonArray result = new JsonArray();
+        for(int i = 0; i < size; i++) {
+            JsonObject entry = new JsonObject();
+            entry.add("name", new JsonPrimitive(names[i]));
+            entry.add("offset", new JsonPrimitive(offsets[i]));
+            entry.add("width", new JsonPrimitive(widths[i]));
+            if(hasValue[i])
+                entry.add("value", new JsonPrimitive(values[i]));
+            result.add(entry);
+        }
+        return result;
+    }
+
+    /**
+     * Annotate the encoded bytes: a line per entry with its byte and bit offset, width, name, value and the bytes it
+     * covers in hex.
+     */
+    public String toHex(byte[] data) {
+        StringBuilder result = new StringBuilder();
+        for(int i = 0; i < size; i++) {
+            long offset = offsets[i];
+            result.append(String.format("%06x.%d %5d  %-40s", offset >>> 3, offset & 7, widths[i], names[i]));
+            result.append(hasValue[i] ? String.format(" %-12d", values[i]) : String.format(" %-12s", ""));
+
+            // Spans only show their first bytes
+            long first = offset >>> 3, last = Math.min((offset + Math.max(widths[i], 1) - 1) >>> 3, first + 15);
+            for(long b = first; b <= last && b < data.length; b++)
+                result.append(String.format(" %02x", data[(int) b]));
+            result.append('\n');
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,171 @@
+package com.iamtechknow.d2sbackend;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Item and magic property catalog built from a snapshot of the backend's game data, so the frontend
+ * doesn't need to keep a copy. A new catalog is built whenever the game data is reloaded. The catalog and each of its
+ * views are serialized and gzipped once and served from memory. Property ranges are sliced out of the serialized
+ * properties the first time they are asked for, and the most recently used ones are kept.
+ * The version is a hash of the catalog. The full catalog is revalidated by ETag on each use, while the views
+ * have the version in their URLs and may be cached for a long time.
+ */
+public class D2Catalog {
+    private static final MediaType JSON = MediaType.APPLICATION_JSON_UTF8;
+    private static final CacheControl VERSIONED = CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic(),
+                                    UNVERSIONED = CacheControl.noCache().cachePublic();
+    // Property slices kept, out of the thousands of distinct ranges there are. The least recently used is dropped
+    private static final int MAX_SLICES = 1024;
+
+    private final String version;
+    private final PrecompressedResponse catalog;
+    private final Map<String, PrecompressedResponse> categories = new LinkedHashMap<>();
+
+    // Serialized property array, with the offset of each element and the ID it has, sorted by ID
+    private final byte[] properties;
+    private final int[] propertyIds, propertyOffsets;
+    // Slices by the indices of their first and last property, in access order
+    private final Map<Long, PrecompressedResponse> slices = new LinkedHashMap<Long, PrecompressedResponse>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, PrecompressedResponse> eldest) {
+            return size() > MAX_SLICES;
+        }
+    };
+
+    public D2Catalog(D2GameData data) {
+        JsonObject items = new JsonObject();
+        items.add("armor", toArray(data.getArmorCodes()));
+        items.add("shields", toArray(data.getShieldCodes()));
+        items.add("weapons", toArray(data.getWeaponCodes()));
+        items.add("quantity", toArray(data.getQuantityCodes()));
+
+        // Properties are serialized by hand to record where each element starts
+        D2PropertyDescriptor[] descriptors = data.getDescriptors();
+        StringBuilder sb = new StringBuilder("[");
+        int count = 0;
+        int[] ids = new int[descriptors.length], offsets = new int[descriptors.length + 1];
+        for(D2PropertyDescriptor descriptor : descriptors) {
+            if(descriptor == null)
+                continue;
+            if(count > 0)
+                sb.append(',');
+
+            // Each parameter has a length and bias, the first listed on the property itself
+            JsonObject prop = new JsonObject();
+            prop.add("id", new JsonPrimitive(descriptor.getId()));
+            prop.add("length", new JsonPrimitive(descriptor.getWidth(0)));
+            prop.add("bias", new JsonPrimitive(descriptor.getBias(0)));
+            if(descriptor.getParams() > 1) {
+                JsonArray params = new JsonArray();
+                for(int i = 0; i < descriptor.getParams(); i++) {
+                    JsonObject param = new JsonObject();
+                    param.add("length", new JsonPrimitive(descriptor.getWidth(i)));
+                    param.add("bias", new JsonPrimitive(descriptor.getBias(i)));
+                    params.add(param);
+                }
+                prop.add("params", params);
+            }
+
+            ids[count] = descriptor.getId();
+            offsets[count++] = sb.length();
+            sb.append(prop.toString());
+        }
+        offsets[count] = sb.length();
+        sb.append(']');
+
+        properties = sb.toString().getBytes(StandardCharsets.UTF_8);
+        propertyIds = Arrays.copyOf(ids, count);
+        propertyOffsets = Arrays.copyOf(offsets, count + 1);
+
+        String body = "{\"items\":" + items.toString() + ",\"properties\":" + sb + "}";
+        version = PrecompressedResponse.hash(body.getBytes(StandardCharsets.UTF_8));
+        catalog = toResponse("{\"version\":\"" + version + "\"," + body.substring(1), UNVERSIONED);
+
+        for(Map.Entry<String, JsonElement> entry : items.entrySet())
+            categories.put(entry.getKey(), toResponse(entry.getValue().toString(), VERSIONED));
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public PrecompressedResponse getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * @return the codes for a category (armor, shields, weapons or quantity), or null if it doesn't exist
+     */
+    public PrecompressedResponse getCategory(String category) {
+        return categories.get(category);
+    }
+
+    /**
+     * Properties with IDs in the inclusive range, as a JSON array. Ranges with the same properties share a slice.
+     */
+    public PrecompressedResponse getProperties(int fromId, int toId) {
+        int first = lowerBound(fromId), last = toId == Integer.MAX_VALUE ? propertyIds.length : lowerBound(toId + 1);
+        if(first >= last)
+            first = last = 0;
+
+        long key = (long) first << 32 | last;
+        synchronized(slices) {
+            PrecompressedResponse slice = slices.get(key);
+            if(slice != null)
+                return slice;
+        }
+
+        // Built outside the lock, so a thread that loses a race builds a copy that is dropped
+        PrecompressedResponse slice = toResponse(slice(first, last), VERSIONED);
+        synchronized(slices) {
+            PrecompressedResponse existing = slices.putIfAbsent(key, slice);
+            return existing != null ? existing : slice;
+        }
+    }
+
+    // Copy the properties from index first up to last out of the full property array
+    private byte[] slice(int first, int last) {
+        if(first >= last)
+            return new byte[]{'[', ']'};
+
+        // Offsets point at each element, so the slice ends before the comma of the next element
+        int start = propertyOffsets[first], end = propertyOffsets[last] - (last < propertyIds.length ? 1 : 0);
+        byte[] result = new byte[end - start + 2];
+        result[0] = '[';
+        System.arraycopy(properties, start, result, 1, end - start);
+        result[result.length - 1] = ']';
+        return result;
+    }
+
+    // Index of the first property with an ID at least the given one
+    private int lowerBound(int id) {
+        int idx = Arrays.binarySearch(propertyIds, id);
+        return idx >= 0 ? idx : -idx - 1;
+    }
+
+    private static JsonArray toArray(Set<String> codes) {
+        JsonArray arr = new JsonArray();
+        codes.stream().sorted().forEach(arr::add);
+        return arr;
+    }
+
+    private static PrecompressedResponse toResponse(String json, CacheControl cacheControl) {
+        return toResponse(json.getBytes(StandardCharsets.UTF_8), cacheControl);
+    }
+
+    private static PrecompressedResponse toResponse(byte[] json, CacheControl cacheControl) {
+        return new PrecompressedResponse(json, JSON, cacheControl);
+    }
+}
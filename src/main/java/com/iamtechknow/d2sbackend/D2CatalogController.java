@@ -0,0 +1,59 @@
+package com.iamtechknow.d2sbackend;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+
+/**
+ * Serves the item catalog and its views. Views are addressed by catalog version, so an outdated version is a 404.
+ * Each request uses the catalog of the game data in use when it started.
+ */
+@Controller
+public class D2CatalogController {
+    private static final int MAX_PROPERTY_ID = 511;
+
+    private D2GameDataLoader loader;
+
+    @Autowired
+    public D2CatalogController(D2GameDataLoader loader) {
+        this.loader = loader;
+    }
+
+    @GetMapping("/api/catalog")
+    public ResponseEntity<byte[]> getCatalog(@RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                             @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return loader.getCatalog().getCatalog().toResponse(acceptEncoding, ifNoneMatch);
+    }
+
+    @GetMapping("/api/catalog/{version}/items/{category}")
+    public ResponseEntity<byte[]> getCategory(@PathVariable("version") String version,
+                                              @PathVariable("category") String category,
+                                              @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                              @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        D2Catalog catalog = loader.getCatalog();
+        PrecompressedResponse response = catalog.getCategory(category);
+        if(!catalog.getVersion().equals(version) || response == null)
+            throw new ResourceNotFoundException();
+
+        return response.toResponse(acceptEncoding, ifNoneMatch);
+    }
+
+    // Properties with IDs in the inclusive range, sliced out of the serialized catalog
+    @GetMapping("/api/catalog/{version}/properties")
+    public ResponseEntity<byte[]> getProperties(@PathVariable("version") String version,
+                                                @RequestParam(defaultValue = "0") int from,
+                                                @RequestParam(defaultValue = "" + MAX_PROPERTY_ID) int to,
+                                                @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                                @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        D2Catalog catalog = loader.getCatalog();
+        if(!catalog.getVersion().equals(version))
+            throw new ResourceNotFoundException();
+
+        return catalog.getProperties(from, to).toResponse(acceptEncoding, ifNoneMatch);
+    }
+}
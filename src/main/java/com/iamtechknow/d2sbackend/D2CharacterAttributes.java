@@ -28,37 +28,49 @@ public class D2CharacterAttributes {
      * Determine and write the attributes themselves based on the class and level.
      */
     public D2CharacterAttributes(D2Save save) {
-        int[] vals = getDefaultAttributes(save);
+        int[] vals = getDefaultAttributes(save.getClassNum());
         str = vals[0] + save.getStr(); dex = vals[1] + save.getDex(); vit = vals[2] + save.getVit(); nrg = vals[3] + save.getNrg();
         gold = save.getGold();
         stashGold = save.getStashGold();
 
         // Attributes from quests, calculate how many times the quest has been done. Capped at 3
         // Note that most quest rewards need to be received in the game and thus not accounted for here.
-        int timesBeatGame = save.getDifficulty() / 5;
-
-        int timesCompletedLamEsen = timesBeatGame * (save.getRewards().isLamEsen() ? 1 : 0);
-        if(save.getStartingAct() >= ACT3 && save.getRewards().isLamEsen())
-            timesCompletedLamEsen++;
+        int timesCompletedLamEsen, timesKilledRadamant;
+        boolean nAncientsDone = false, nmAncientsDone = false, hAncientsDone = false;
+        D2Progress progress = save.getProgress();
+        if(progress != null && progress.checkValid()) {
+            // The quests written are the progress's, so count the difficulties they were done in
+            timesCompletedLamEsen = progress.countDone(D2Progress.LAM_ESEN, save.getDifficulty());
+            timesKilledRadamant = progress.countDone(D2Progress.SKILL_BOOK, save.getDifficulty());
+            D2QuestRewards rewards = progress.getRewards(save.getDifficulty());
+            nAncientsDone = save.isExpansion() && rewards.isnAncients();
+            nmAncientsDone = save.isExpansion() && rewards.isNmAncients();
+            hAncientsDone = save.isExpansion() && rewards.ishAncients();
+        } else {
+            int timesBeatGame = save.getDifficulty() / 5;
+
+            timesCompletedLamEsen = timesBeatGame * (save.getRewards().isLamEsen() ? 1 : 0);
+            if(save.getStartingAct() >= ACT3 && save.getRewards().isLamEsen())
+                timesCompletedLamEsen++;
+
+            timesKilledRadamant = timesBeatGame * (save.getRewards().isSkillBook() ? 1 : 0);
+            if(save.getStartingAct() >= ACT2 && save.getRewards().isSkillBook())
+                timesKilledRadamant++;
+
+            if(save.isExpansion() && save.getRewards().isnAncients() && (save.getStartingAct() >= ACT5 || save.getDifficulty() > 0))
+                nAncientsDone = true;
+            if(save.isExpansion() && save.getRewards().isNmAncients() &&
+                    ( (save.getStartingAct() >= ACT5 && save.getDifficulty() >= 5) || save.getDifficulty() > 5))
+                nmAncientsDone = true;
+            if(save.isExpansion() && save.getRewards().ishAncients() &&
+                    ( (save.getStartingAct() >= ACT5 && save.getDifficulty() >= 10) || save.getDifficulty() > 10))
+                hAncientsDone = true;
+        }
         timesCompletedLamEsen = Math.min(MAX_QUEST_TIMES, timesCompletedLamEsen);
-
-        int timesKilledRadamant = timesBeatGame * (save.getRewards().isSkillBook() ? 1 : 0);
-        if(save.getStartingAct() >= ACT2 && save.getRewards().isSkillBook())
-            timesKilledRadamant++;
         timesKilledRadamant = Math.min(MAX_QUEST_TIMES, timesKilledRadamant);
 
         // Calculate experience based on Ancients.
         int xpFromAncients = 0, levelUps = 0;
-        boolean nAncientsDone = false, nmAncientsDone = false, hAncientsDone = false;
-
-        if(save.isExpansion() && save.getRewards().isnAncients() && (save.getStartingAct() >= ACT5 || save.getDifficulty() > 0))
-            nAncientsDone = true;
-        if(save.isExpansion() && save.getRewards().isNmAncients() &&
-                ( (save.getStartingAct() >= ACT5 && save.getDifficulty() >= 5) || save.getDifficulty() > 5))
-            nmAncientsDone = true;
-        if(save.isExpansion() && save.getRewards().ishAncients() &&
-                ( (save.getStartingAct() >= ACT5 && save.getDifficulty() >= 10) || save.getDifficulty() > 10))
-            hAncientsDone = true;
 
         // If a level up occurs, it is incremented and the XP for the difficulty is reset.
         // Arreat Summit has a table that indicates how much XP is required per level
@@ -85,7 +97,8 @@ public class D2CharacterAttributes {
             xpFromAncients = 0;
 
         experience = getExperience(save.getLevel() + levelUps) + xpFromAncients;
-        if(experience >= getExperience(save.getLevel() + levelUps + 1)) // check if character should have leveled up
+        // check if character should have leveled up, there is no level beyond 99
+        if(save.getLevel() + levelUps < 99 && experience >= getExperience(save.getLevel() + levelUps + 1))
             levelUps++;
         level = save.getLevel() + levelUps;
 
@@ -169,11 +182,11 @@ public class D2CharacterAttributes {
     }
 
     /**
-     * Get the default character attributes from level 1
+     * Get the default character attributes from level 1: strength, dexterity, vitality, energy, life, stamina, mana
      */
-    private int[] getDefaultAttributes(D2Save save) {
+    static int[] getDefaultAttributes(int classNum) {
         int[] arr;
-        switch(save.getClassNum()) {
+        switch(classNum) {
             case AMAZON:
                 arr = new int[]{20, 25, 20, 15, 50, 84, 15};
                 break;
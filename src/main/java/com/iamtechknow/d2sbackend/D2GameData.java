@@ -0,0 +1,480 @@
+package com.iamtechknow.d2sbackend;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable snapshot of the game data tables: the item codes of each kind, their inventory sizes, and the magic
+ * property descriptors. The current snapshot is published through a single volatile reference, so a reload builds
+ * a new snapshot and swaps it in without locks. Code that needs the tables to agree over a whole save, such as the
+ * reader and writers, reads current() once and keeps the snapshot until it is done.
+ *
+ * Tables are tab-separated files with a header row, in the layout of the game's own txt files. Only the columns
+ * used here are read, and rows without a code or ID are skipped: armor.txt (code, invwidth, invheight, type),
+ * weapons.txt (code, invwidth, invheight, stackable), misc.txt (code, invwidth, invheight, stackable, type), and
+ * itemstatcost.txt (ID, Save Bits, Save Add).
+ * Properties with more than one parameter list the bits and biases of each, separated by commas. Armor of the
+ * shield types is a shield, and misc items of the book type are tomes.
+ *
+ * The built-in tables are the files in src/main/data, which the build compiles into the gamedata.bin resource with
+ * D2GameDataCompiler. Other tables may be loaded from a directory at runtime.
+ *
+ * Item codes are packed into ints and kept in an open addressing table with the kinds, size and stackable flag of
+ * each, so a lookup is a multiply and usually one probe, and the tables take two arrays instead of sets of strings.
+ */
+public final class D2GameData {
+    // Kinds of items
+    public static final int ARMOR = 0, SHIELD = 1, WEAPON = 2, MISC = 3;
+
+    // Item info: a bit per kind, then whether it is stackable and whether it is a tome, then its size as
+    // width << 4 | height, or 0 for the size of its kind
+    private static final int NON_MISC = 1 << ARMOR | 1 << SHIELD | 1 << WEAPON, STACKABLE = 1 << 4, TOME = 1 << 5,
+                             SIZE_SHIFT = 8;
+
+    // Inventory size of each kind, for types without their own
+    private static final int[] KIND_SIZES = {2 << 4 | 3, 2 << 4 | 3, 2 << 4 | 3, 1 << 4 | 1};
+    private static final int THROWN_SIZE = 1 << 4 | 3;
+
+    // Resource the build compiles the built-in tables to, and its header
+    static final String RESOURCE = "gamedata.bin";
+    private static final int MAGIC = 0x44324744, FORMAT = 2;
+
+    private static final AtomicInteger GENERATIONS = new AtomicInteger();
+    private static final D2GameData BUILT_IN = readBuiltIn();
+    private static volatile D2GameData current = BUILT_IN;
+
+    private final String source;
+    private final int generation;
+
+    // Packed item codes, 0 for an empty slot, and the info of each
+    private final int[] keys, infos;
+    private final int mask;
+    private final D2PropertyDescriptor[] descriptors;
+
+    // Derived from the tables on first use, per format
+    private final Map<D2sFormat, D2PropertyEncoder> propertyEncoders = new ConcurrentHashMap<>();
+    private final Map<D2sFormat, MethodHandle> itemEncoders = new ConcurrentHashMap<>(),
+                                               tracedItemEncoders = new ConcurrentHashMap<>();
+    private volatile D2LootGenerator.Tables lootTables;
+
+    private D2GameData(Builder builder) {
+        source = builder.source;
+        generation = GENERATIONS.getAndIncrement();
+        descriptors = builder.descriptors;
+
+        // At most half full, so probe sequences stay short
+        int capacity = Integer.highestOneBit(Math.max(builder.items.size(), 8) * 2) * 2;
+        keys = new int[capacity];
+        infos = new int[capacity];
+        mask = capacity - 1;
+        for(Map.Entry<Integer, Integer> entry : builder.items.entrySet()) {
+            int idx = slot(entry.getKey());
+            keys[idx] = entry.getKey();
+            infos[idx] = entry.getValue();
+        }
+    }
+
+    private static D2GameData readBuiltIn() {
+        try(InputStream in = D2GameData.class.getResourceAsStream(RESOURCE)) {
+            if(in == null)
+                throw new IllegalStateException("Missing resource " + RESOURCE + ", which the generateGameData task builds");
+            return Builder.read("built-in", ByteBuffer.wrap(in.readAllBytes())).build();
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the snapshot in use
+     */
+    public static D2GameData current() {
+        return current;
+    }
+
+    // The tables compiled into the backend
+    public static D2GameData builtIn() {
+        return BUILT_IN;
+    }
+
+    /**
+     * Make a snapshot the one in use. Saves being read or written keep the snapshot they started with.
+     */
+    static void publish(D2GameData data) {
+        current = data;
+    }
+
+    /**
+     * Load the tables in a directory. If none of the item files exist the built-in item tables are kept, and
+     * likewise for the properties.
+     * @throws IllegalArgumentException if a file has a missing column or a bad value
+     */
+    public static D2GameData load(Path dir) throws IOException {
+        Builder builder = new Builder(dir.toString());
+        if(Files.exists(dir.resolve(Builder.ARMOR_FILE)) || Files.exists(dir.resolve(Builder.WEAPONS_FILE)) ||
+                Files.exists(dir.resolve(Builder.MISC_FILE)))
+            builder.readItems(dir);
+        else
+            builder.addItems(BUILT_IN);
+
+        if(Files.exists(dir.resolve(Builder.STATS_FILE)))
+            builder.readProperties(dir);
+        else
+            builder.setDescriptors(BUILT_IN.descriptors);
+        return builder.build();
+    }
+
+    // Slot of a packed code, or the empty slot where it would go
+    private int slot(int key) {
+        int idx = key * 0x9E3779B9 >>> 16 & mask;
+        while(keys[idx] != 0 && keys[idx] != key)
+            idx = idx + 1 & mask;
+        return idx;
+    }
+
+    // Info of an item type, or 0 if the tables don't have it
+    private int info(String type) {
+        int key = Builder.pack(type);
+        return key == 0 ? 0 : infos[slot(key)];
+    }
+
+    // Where the snapshot was loaded from
+    public String getSource() {
+        return source;
+    }
+
+    // Increases with each snapshot built, so state derived from the tables can tell it is outdated
+    public int getGeneration() {
+        return generation;
+    }
+
+    // Codes of each kind, sorted. Each call builds a new set
+    public Set<String> getArmorCodes() {
+        return codes(1 << ARMOR);
+    }
+
+    public Set<String> getShieldCodes() {
+        return codes(1 << SHIELD);
+    }
+
+    public Set<String> getWeaponCodes() {
+        return codes(1 << WEAPON);
+    }
+
+    public Set<String> getQuantityCodes() {
+        return codes(STACKABLE);
+    }
+
+    private Set<String> codes(int flag) {
+        Set<String> codes = new TreeSet<>();
+        for(int i = 0; i < keys.length; i++)
+            if(keys[i] != 0 && (infos[i] & flag) != 0)
+                codes.add(new String(new char[]{(char) (keys[i] & 0xFF), (char) (keys[i] >> 8 & 0xFF), (char) (keys[i] >>> 16)}));
+        return Collections.unmodifiableSet(codes);
+    }
+
+    public boolean isArmor(String type) {
+        return (info(type) & 1 << ARMOR) != 0;
+    }
+
+    public boolean isShield(String type) {
+        return (info(type) & 1 << SHIELD) != 0;
+    }
+
+    public boolean isNonMisc(String type) {
+        return (info(type) & NON_MISC) != 0;
+    }
+
+    public boolean hasQuantity(String type) {
+        return (info(type) & STACKABLE) != 0;
+    }
+
+    // Tomes have 5 more bits of item data
+    public boolean isTome(String type) {
+        return (info(type) & TOME) != 0;
+    }
+
+    // Number of inventory cells an item of the type takes, across and down
+    public int getWidth(String type) {
+        return getSize(type) >> 4;
+    }
+
+    public int getHeight(String type) {
+        return getSize(type) & 0xF;
+    }
+
+    private int getSize(String type) {
+        int info = info(type), size = info >>> SIZE_SHIFT;
+        if(size != 0)
+            return size;
+        if((info & 1 << ARMOR) != 0)
+            return KIND_SIZES[ARMOR];
+        if((info & 1 << SHIELD) != 0)
+            return KIND_SIZES[SHIELD];
+        if((info & 1 << WEAPON) != 0)
+            return (info & STACKABLE) != 0 ? THROWN_SIZE : KIND_SIZES[WEAPON];
+        return KIND_SIZES[MISC];
+    }
+
+    /**
+     * @return the descriptor of a property, or null if the ID is not saved on its own
+     */
+    public D2PropertyDescriptor getDescriptor(int id) {
+        return id >= 0 && id < descriptors.length ? descriptors[id] : null;
+    }
+
+    // Descriptors indexed by ID, with null for unused IDs. Must not be modified
+    public D2PropertyDescriptor[] getDescriptors() {
+        return descriptors;
+    }
+
+    // Encoder of the magical properties of items in a format
+    public D2PropertyEncoder getPropertyEncoder(D2sFormat format) {
+        return propertyEncoders.computeIfAbsent(format, f -> new D2PropertyEncoder(descriptors, f.getPropertyIdBits()));
+    }
+
+    // Item layout of a format compiled against these tables, see D2sItemWriter
+    MethodHandle getItemEncoder(D2sFormat format) {
+        return itemEncoders.computeIfAbsent(format, f -> D2sItemWriter.itemLayout(f, this).compile());
+    }
+
+    // Item encoder that also records its fields, compiled the first time an item is traced
+    MethodHandle getTracedItemEncoder(D2sFormat format) {
+        return tracedItemEncoders.computeIfAbsent(format, f -> D2sItemWriter.itemLayout(f, this).compileTraced());
+    }
+
+    // Item tables of the loot generator, built by the first item generated. Building them twice is harmless
+    D2LootGenerator.Tables getLootTables() {
+        D2LootGenerator.Tables tables = lootTables;
+        if(tables == null)
+            lootTables = tables = new D2LootGenerator.Tables(this);
+        return tables;
+    }
+
+    /**
+     * Collects the tables of a snapshot from txt files or the compiled resource. Items added without a size take
+     * the size of their kind. Only build() initializes the snapshot class, so the compiler can run before the
+     * resource exists.
+     */
+    static class Builder {
+        static final String ARMOR_FILE = "armor.txt", WEAPONS_FILE = "weapons.txt", MISC_FILE = "misc.txt",
+                            STATS_FILE = "itemstatcost.txt";
+
+        // Highest property ID, below the end of list marker
+        private static final int MAX_PROPERTY_ID = 0x1FE;
+        private static final List<String> SHIELD_TYPES = Arrays.asList("shie", "ashd", "head");
+        private static final String TOME_TYPE = "book";
+
+        private final String source;
+        // Packed codes and their info, in the order they were added
+        private final Map<Integer, Integer> items = new LinkedHashMap<>(1024);
+        private D2PropertyDescriptor[] descriptors = new D2PropertyDescriptor[0];
+
+        Builder(String source) {
+            this.source = source;
+        }
+
+        /**
+         * @param size width << 4 | height, or 0 for the size of the kind
+         */
+        Builder addItem(String code, int kind, int size, boolean stackable, boolean tome) {
+            int key = pack(code);
+            if(key == 0)
+                throw new IllegalArgumentException("Item code \"" + code + "\" is not 3 characters");
+            int info = 1 << kind | (stackable ? STACKABLE : 0) | (tome ? TOME : 0) | size << SIZE_SHIFT;
+            items.merge(key, info, (prev, next) -> prev | next);
+            return this;
+        }
+
+        Builder addItems(D2GameData data) {
+            for(int i = 0; i < data.keys.length; i++)
+                if(data.keys[i] != 0)
+                    items.put(data.keys[i], data.infos[i]);
+            return this;
+        }
+
+        // Items in the armor, weapons and misc files of a directory, any of which may be missing
+        Builder readItems(Path dir) throws IOException {
+            for(String[] row : readTable(dir.resolve(ARMOR_FILE), "code", "invwidth", "invheight", "type"))
+                addItem(row[0], SHIELD_TYPES.contains(row[3]) ? SHIELD : ARMOR, toSize(row), false, false);
+            for(String[] row : readTable(dir.resolve(WEAPONS_FILE), "code", "invwidth", "invheight", "stackable"))
+                addItem(row[0], WEAPON, toSize(row), "1".equals(row[3]), false);
+            for(String[] row : readTable(dir.resolve(MISC_FILE), "code", "invwidth", "invheight", "stackable", "type"))
+                addItem(row[0], MISC, toSize(row), "1".equals(row[3]), TOME_TYPE.equals(row[4]));
+            return this;
+        }
+
+        Builder setDescriptors(D2PropertyDescriptor[] descriptors) {
+            this.descriptors = descriptors;
+            return this;
+        }
+
+        // Properties in the item stat cost file of a directory
+        Builder readProperties(Path dir) throws IOException {
+            D2PropertyDescriptor[] loaded = new D2PropertyDescriptor[0];
+            for(String[] row : readTable(dir.resolve(STATS_FILE), "ID", "Save Bits", "Save Add")) {
+                int id = parseInt(row[0]);
+                if(id < 0 || id > MAX_PROPERTY_ID)
+                    throw new IllegalArgumentException("Property ID " + id + " is out of range");
+                if(row[1].isEmpty() || row[1].equals("0"))
+                    continue;
+
+                int[] widths = parseList(row[1]);
+                int[] biases = row[2].isEmpty() ? new int[widths.length] : parseList(row[2]);
+                if(id >= loaded.length)
+                    loaded = Arrays.copyOf(loaded, id + 1);
+                loaded[id] = new D2PropertyDescriptor(id, widths, biases);
+            }
+            return setDescriptors(loaded);
+        }
+
+        /**
+         * Write the tables in the resource format: the magic number and format, the item count then for each item
+         * its code and info in 5 bytes, then the length of the descriptor array, the descriptor count, and for each
+         * descriptor its ID, parameter count, and the width and bias of each parameter.
+         */
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeShort(FORMAT);
+            out.writeInt(items.size());
+            for(Map.Entry<Integer, Integer> entry : items.entrySet()) {
+                int key = entry.getKey();
+                out.writeByte(key);
+                out.writeByte(key >> 8);
+                out.writeByte(key >> 16);
+                out.writeShort(entry.getValue());
+            }
+
+            int count = 0;
+            for(D2PropertyDescriptor descriptor : descriptors)
+                if(descriptor != null)
+                    count++;
+            out.writeShort(descriptors.length);
+            out.writeShort(count);
+            for(D2PropertyDescriptor descriptor : descriptors) {
+                if(descriptor == null)
+                    continue;
+                out.writeShort(descriptor.getId());
+                out.writeByte(descriptor.getParams());
+                for(int i = 0; i < descriptor.getParams(); i++) {
+                    out.writeByte(descriptor.getWidth(i));
+                    out.writeShort(descriptor.getBias(i));
+                }
+            }
+        }
+
+        // Mirrors write
+        static Builder read(String source, ByteBuffer buffer) {
+            if(buffer.getInt() != MAGIC || buffer.getShort() != FORMAT)
+                throw new IllegalArgumentException("Not a game data resource of format " + FORMAT);
+
+            Builder builder = new Builder(source);
+            for(int i = buffer.getInt(); i > 0; i--) {
+                int key = buffer.get() & 0xFF | (buffer.get() & 0xFF) << 8 | (buffer.get() & 0xFF) << 16;
+                builder.items.put(key, buffer.getShort() & 0xFFFF);
+            }
+
+            D2PropertyDescriptor[] descriptors = new D2PropertyDescriptor[buffer.getShort()];
+            for(int i = buffer.getShort(); i > 0; i--) {
+                int id = buffer.getShort();
+                int[] widths = new int[buffer.get()], biases = new int[widths.length];
+                for(int param = 0; param < widths.length; param++) {
+                    widths[param] = buffer.get();
+                    biases[param] = buffer.getShort();
+                }
+                descriptors[id] = new D2PropertyDescriptor(id, widths, biases);
+            }
+            return builder.setDescriptors(descriptors);
+        }
+
+        int getItemCount() {
+            return items.size();
+        }
+
+        D2GameData build() {
+            return new D2GameData(this);
+        }
+
+        // Three character code as an int, or 0 if it can't be a code
+        static int pack(String code) {
+            if(code.length() != 3)
+                return 0;
+            int c0 = code.charAt(0), c1 = code.charAt(1), c2 = code.charAt(2);
+            if(c0 == 0 || c1 == 0 || c2 == 0 || (c0 | c1 | c2) > 0xFF)
+                return 0;
+            return c0 | c1 << 8 | c2 << 16;
+        }
+
+        /**
+         * Rows of a table with the values of the given columns, or no rows if the file doesn't exist.
+         */
+        private static List<String[]> readTable(Path file, String... columns) throws IOException {
+            if(!Files.exists(file))
+                return Collections.emptyList();
+
+            try(BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line = reader.readLine();
+                if(line == null)
+                    throw new IllegalArgumentException(file + " has no header row");
+
+                // Index of each wanted column in the header
+                List<String> header = Arrays.asList(line.split("\t", -1));
+                int[] idx = new int[columns.length];
+                for(int i = 0; i < columns.length; i++) {
+                    idx[i] = header.indexOf(columns[i]);
+                    if(idx[i] < 0)
+                        throw new IllegalArgumentException(file + " has no column " + columns[i]);
+                }
+
+                List<String[]> rows = new ArrayList<>();
+                while((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\t", -1);
+                    if(idx[0] >= fields.length || fields[idx[0]].trim().isEmpty())
+                        continue;
+
+                    String[] row = new String[columns.length];
+                    for(int i = 0; i < columns.length; i++)
+                        row[i] = idx[i] < fields.length ? fields[idx[i]].trim() : "";
+                    rows.add(row);
+                }
+                return rows;
+            }
+        }
+
+        private static int toSize(String[] row) {
+            int width = parseInt(row[1]), height = parseInt(row[2]);
+            if(width < 1 || width > 15 || height < 1 || height > 15)
+                throw new IllegalArgumentException("Item " + row[0] + " has an invalid size");
+            return width << 4 | height;
+        }
+
+        private static int parseInt(String value) {
+            try {
+                return Integer.parseInt(value);
+            } catch(NumberFormatException e) {
+                throw new IllegalArgumentException("Expected a number, got \"" + value + "\"");
+            }
+        }
+
+        private static int[] parseList(String value) {
+            return Arrays.stream(value.split(",")).map(String::trim).mapToInt(Builder::parseInt).toArray();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.iamtechknow.d2sbackend;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Compiles the game data txt files into the resource D2GameData reads its built-in tables from, so startup is a single
+ * read of a few kilobytes rather than parsing text or running large static initializers. Run by the generateGameData
+ * task of the build before the resources are processed.
+ */
+public class D2GameDataCompiler {
+    /**
+     * Arguments: directory of the txt files, then the resource to write. Every table must be in the directory.
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length != 2) {
+            System.err.println("Usage: D2GameDataCompiler <data dir> <output file>");
+            System.exit(1);
+        }
+
+        Path dir = Paths.get(args[0]), output = Paths.get(args[1]);
+        for(String file : new String[]{D2GameData.Builder.ARMOR_FILE, D2GameData.Builder.WEAPONS_FILE,
+                                       D2GameData.Builder.MISC_FILE, D2GameData.Builder.STATS_FILE}) {
+            if(!Files.exists(dir.resolve(file))) {
+                System.err.println("Missing " + dir.resolve(file));
+                System.exit(1);
+            }
+        }
+
+        D2GameData.Builder builder = new D2GameData.Builder(dir.toString()).readItems(dir).readProperties(dir);
+        if(output.getParent() != null)
+            Files.createDirectories(output.getParent());
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(output)))) {
+            builder.write(out);
+        }
+        System.out.printf("%d item codes, %d bytes written to %s%n", builder.getItemCount(), Files.size(output), output);
+    }
+}
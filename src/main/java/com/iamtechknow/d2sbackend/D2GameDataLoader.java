@@ -0,0 +1,143 @@
+package com.iamtechknow.d2sbackend;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the game data tables from the directory in d2s.data.dir, and loads them again when a file in it changes
+ * or an admin asks. The tables are read and the catalog built from them on a background thread, then both are
+ * swapped in. Requests keep using the old tables until then, and a reload that fails leaves them in use.
+ * Without a directory the built-in tables are used and nothing is watched.
+ */
+@Component
+public class D2GameDataLoader implements DisposableBean {
+    // Editors often write a file in several steps, so a change is loaded once the directory has been quiet this long
+    private static final long SETTLE_MILLIS = 500;
+
+    private final Path dir;
+    private WatchService watcher;
+
+    // Reloads run one at a time
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "d2s-data");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile D2Catalog catalog;
+    private volatile long loaded;
+    private volatile String error;
+
+    /**
+     * Loads the tables right away, so the backend doesn't start with tables that don't load.
+     */
+    @Autowired
+    public D2GameDataLoader(@Value("${d2s.data.dir:}") String dir) throws IOException {
+        if(dir.isEmpty()) {
+            this.dir = null;
+            publish(D2GameData.current());
+            return;
+        }
+
+        this.dir = Paths.get(dir);
+        publish(D2GameData.load(this.dir));
+
+        watcher = FileSystems.getDefault().newWatchService();
+        this.dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+            StandardWatchEventKinds.ENTRY_DELETE);
+        Thread thread = new Thread(this::watch, "d2s-data-watch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Whether the tables come from a directory, and so can be reloaded
+    public boolean isEnabled() {
+        return dir != null;
+    }
+
+    /**
+     * Load the tables again in the background.
+     * @return the new tables once they are in use
+     */
+    public Future<D2GameData> reload() {
+        if(dir == null)
+            throw new IllegalStateException("No game data directory is set");
+
+        return executor.submit(() -> {
+            try {
+                D2GameData data = D2GameData.load(dir);
+                publish(data);
+                error = null;
+                return data;
+            } catch(IOException | RuntimeException e) {
+                error = e.getMessage();
+                throw e;
+            }
+        });
+    }
+
+    // Build everything derived from the tables before swapping them in
+    private void publish(D2GameData data) {
+        D2Catalog next = new D2Catalog(data);
+        D2GameData.publish(data);
+        catalog = next;
+        loaded = System.currentTimeMillis();
+    }
+
+    // Reload after each burst of changes, until the watch service is closed
+    private void watch() {
+        try {
+            while(true) {
+                WatchKey key = watcher.take();
+                do {
+                    key.pollEvents();
+                    key.reset();
+                } while((key = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null);
+                reload();
+            }
+        } catch(InterruptedException | ClosedWatchServiceException e) {
+            // Shutting down
+        }
+    }
+
+    // Catalog of the tables in use
+    public D2Catalog getCatalog() {
+        return catalog;
+    }
+
+    public JsonObject getStatus() {
+        D2GameData data = D2GameData.current();
+        JsonObject result = new JsonObject();
+        result.add("source", new JsonPrimitive(data.getSource()));
+        result.add("generation", new JsonPrimitive(data.getGeneration()));
+        result.add("loaded", new JsonPrimitive(loaded));
+        result.add("catalogVersion", new JsonPrimitive(catalog.getVersion()));
+        if(error != null)
+            result.add("error", new JsonPrimitive(error));
+        return result;
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        executor.shutdownNow();
+        if(watcher != null)
+            watcher.close();
+    }
+}
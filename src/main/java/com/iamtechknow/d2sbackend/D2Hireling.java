@@ -0,0 +1,161 @@
+package com.iamtechknow.d2sbackend;
+
+import java.util.function.Predicate;
+
+/**
+ * POJO for the mercenary of an expansion save: its type from D2Mercenaries, name, level, and the items it has equipped.
+ * The items are built the first time they are needed, once the forms are bound, and are kept with their encoding,
+ * so a hireling written to many saves encodes its items only once.
+ */
+public class D2Hireling {
+    // Equipped slots a mercenary can use
+    public static final int HEAD = 1, TORSO = 3, RIGHT_HAND = 4, LEFT_HAND = 5;
+
+    private int type;
+    private int nameId;
+    private int level = D2Mercenaries.MIN_LEVEL;
+    private int identifier = 1;
+    private boolean dead;
+    private D2ItemForm head, torso, weapon, shield;
+
+    // Items built from the forms, in slot order
+    private D2Item[] items;
+
+    public D2Hireling() {
+    }
+
+    // Copy of another hireling and its item forms, without the items built from them
+    public D2Hireling(D2Hireling other) {
+        type = other.type;
+        nameId = other.nameId;
+        level = other.level;
+        identifier = other.identifier;
+        dead = other.dead;
+        head = copy(other.head);
+        torso = copy(other.torso);
+        weapon = copy(other.weapon);
+        shield = copy(other.shield);
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public void setType(int type) {
+        this.type = type;
+    }
+
+    public int getNameId() {
+        return nameId;
+    }
+
+    public void setNameId(int nameId) {
+        this.nameId = nameId;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    public int getIdentifier() {
+        return identifier;
+    }
+
+    public void setIdentifier(int identifier) {
+        this.identifier = identifier;
+    }
+
+    public boolean isDead() {
+        return dead;
+    }
+
+    public void setDead(boolean dead) {
+        this.dead = dead;
+    }
+
+    public D2ItemForm getHead() {
+        return head;
+    }
+
+    public void setHead(D2ItemForm head) {
+        this.head = head;
+        items = null;
+    }
+
+    public D2ItemForm getTorso() {
+        return torso;
+    }
+
+    public void setTorso(D2ItemForm torso) {
+        this.torso = torso;
+        items = null;
+    }
+
+    public D2ItemForm getWeapon() {
+        return weapon;
+    }
+
+    public void setWeapon(D2ItemForm weapon) {
+        this.weapon = weapon;
+        items = null;
+    }
+
+    public D2ItemForm getShield() {
+        return shield;
+    }
+
+    public void setShield(D2ItemForm shield) {
+        this.shield = shield;
+        items = null;
+    }
+
+    public int getExperience() {
+        return D2Mercenaries.getExperience(type, level);
+    }
+
+    /**
+     * Checks the mercenary's type, name and level, and that each item is valid and of a kind its slot holds.
+     */
+    public boolean checkValid() {
+        if(!D2Mercenaries.isType(type) || nameId < 0 || nameId >= D2Mercenaries.getNumNames(type) ||
+                level < D2Mercenaries.MIN_LEVEL || level > D2Mercenaries.MAX_LEVEL || identifier == 0)
+            return false;
+
+        return checkSlot(head, D2ItemTypes::isArmor) && checkSlot(torso, D2ItemTypes::isArmor) &&
+            checkSlot(weapon, code -> D2ItemTypes.isNonMisc(code) && !D2ItemTypes.isArmor(code) && !D2ItemTypes.isShield(code)) &&
+            checkSlot(shield, D2ItemTypes::isShield);
+    }
+
+    private static D2ItemForm copy(D2ItemForm form) {
+        return form == null ? null : new D2ItemForm(form);
+    }
+
+    private static boolean checkSlot(D2ItemForm form, Predicate<String> allowed) {
+        return form == null || form.checkValid() && allowed.test(form.getType());
+    }
+
+    /**
+     * @return the equipped items, built on the first call
+     */
+    public D2Item[] getItems() {
+        if(items == null) {
+            D2ItemForm[] forms = {head, torso, weapon, shield};
+            int[] slots = {HEAD, TORSO, RIGHT_HAND, LEFT_HAND};
+            int count = 0;
+            for(D2ItemForm form : forms)
+                if(form != null)
+                    count++;
+
+            D2Item[] built = new D2Item[count];
+            for(int i = 0, idx = 0; i < forms.length; i++)
+                if(forms[i] != null)
+                    built[idx++] = forms[i].toEquippedItem(slots[i]);
+            items = built;
+        }
+        return items;
+    }
+}
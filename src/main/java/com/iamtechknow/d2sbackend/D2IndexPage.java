@@ -0,0 +1,57 @@
+package com.iamtechknow.d2sbackend;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.Context;
+
+import javax.servlet.ServletContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The index page has no dynamic content, so it is rendered once at startup and served from memory.
+ * The bundle name is looked up in the manifest written by Webpack, since builds are fingerprinted. Watch builds keep
+ * the plain name, so the name read at startup stays right while they rebuild.
+ */
+@Component
+public class D2IndexPage {
+    private static final String MANIFEST = "/dist/manifest.json", ENTRY = "app.js", DEFAULT_BUNDLE = "/dist/bundle.js";
+
+    private final PrecompressedResponse page;
+
+    @Autowired
+    public D2IndexPage(ITemplateEngine templateEngine, ServletContext servletContext) {
+        Context context = new Context();
+        context.setVariable("bundle", getBundle(servletContext));
+
+        byte[] html = templateEngine.process("index", context).getBytes(StandardCharsets.UTF_8);
+        page = new PrecompressedResponse(html, MediaType.parseMediaType("text/html;charset=UTF-8"), CacheControl.noCache());
+    }
+
+    public PrecompressedResponse getPage() {
+        return page;
+    }
+
+    // Without a manifest, such as when the bundle isn't built, fall back to the plain bundle name
+    private String getBundle(ServletContext servletContext) {
+        try(InputStream in = servletContext.getResourceAsStream(MANIFEST)) {
+            if(in == null)
+                return DEFAULT_BUNDLE;
+
+            JsonObject manifest = new JsonParser().parse(new InputStreamReader(in, StandardCharsets.UTF_8)).getAsJsonObject();
+            JsonElement bundle = manifest.get(ENTRY);
+            return bundle == null ? DEFAULT_BUNDLE : bundle.getAsString();
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
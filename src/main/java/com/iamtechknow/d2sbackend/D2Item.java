@@ -10,7 +10,7 @@ public class D2Item {
     public static final int STORED = 0, EQUIPPED = 1, BELT = 2, SOCKETED = 6, INVENTORY = 1, CUBE = 4, STASH = 5;
 
     private final boolean identified, socketed, simple, ethereal, personalized, hasRW;
-    private final String itemType;
+    private final String itemType, typeCode;
     private final int numSocketed;
 
     // Bits that determine where the item is.
@@ -25,6 +25,21 @@ public class D2Item {
     // Socketed items, they immediately follow this item structure
     private final D2Item[] socketedItems;
 
+    // Bytes of the item and its socketed items in the format and game data they were cached for, see D2sItemWriter
+    private volatile Encoding encoding;
+
+    private static class Encoding {
+        private final D2sFormat format;
+        private final D2GameData data;
+        private final byte[] bytes;
+
+        private Encoding(D2sFormat format, D2GameData data, byte[] bytes) {
+            this.format = format;
+            this.data = data;
+            this.bytes = bytes;
+        }
+    }
+
     public static class Builder {
         private final String itemType;
         private boolean identified = true, socketed, simple, ethereal, personalized, hasRW;
@@ -38,6 +53,18 @@ public class D2Item {
             itemType = type + " "; // item types always have 3 chars and space
         }
 
+        // Start from a copy of an item, to change a few of its fields
+        public Builder(D2Item item) {
+            itemType = item.itemType;
+            identified = item.identified; socketed = item.socketed; simple = item.simple; ethereal = item.ethereal;
+            personalized = item.personalized; hasRW = item.hasRW;
+            itemLocation = item.itemLocation; itemStore = item.itemStore; equippedLoc = item.equippedLoc;
+            x = item.x; y = item.y;
+            numSocketed = item.numSocketed;
+            extendedData = item.extendedData;
+            socketedItems = item.socketedItems;
+        }
+
         public Builder setIdentified(boolean identified) {
             this.identified = identified;
             return this;
@@ -121,6 +148,7 @@ public class D2Item {
         personalized = builder.personalized;
         hasRW = builder.hasRW;
         itemType = builder.itemType;
+        typeCode = itemType.trim();
         itemLocation = builder.itemLocation;
         itemStore = builder.itemStore;
         equippedLoc = builder.equippedLoc;
@@ -159,6 +187,11 @@ public class D2Item {
         return itemType;
     }
 
+    // Item type without the padding space, as used by the item tables
+    public String getTypeCode() {
+        return typeCode;
+    }
+
     public int getItemLocation() {
         return itemLocation;
     }
@@ -190,4 +223,14 @@ public class D2Item {
     public D2Item[] getSocketedItems() {
         return socketedItems;
     }
+
+    // Cached encoding of the item in the format, or null if it has none
+    byte[] getEncoding(D2sFormat format, D2GameData data) {
+        Encoding curr = encoding;
+        return curr != null && curr.format == format && curr.data == data ? curr.bytes : null;
+    }
+
+    void setEncoding(D2sFormat format, D2GameData data, byte[] bytes) {
+        encoding = new Encoding(format, data, bytes);
+    }
 }
@@ -13,11 +13,12 @@ public class D2ItemData {
 	// Number of lists, more than one for set items
 	private final int propertyLists;
 	
-	// Property IDs and corresponding values. The IDs are 9 bits and values are variable bits (up to 32)
+	// Property IDs and corresponding values. The IDs are 9 bits and values are variable bits (up to 32).
+	// Values are flattened: a property with several parameters, as in D2PropertyDescriptor, has that many values in a row
 	private final int[] propertyIds;
 	private final long[] propertyValues;
 
-	// Partial Set bonus properties. Each bonus belongs in its own properties list.
+	// Partial Set bonus properties, with values flattened the same way. Each bonus belongs in its own properties list.
 	private final int[] setBonusIds;
 	private final long[] setBonusValues;
 	
@@ -0,0 +1,187 @@
+package com.iamtechknow.d2sbackend;
+
+/**
+ * POJO for an item submitted in one of the storages of the save, bound from the request.
+ * A form without a position is placed in its storage when the save is validated.
+ * Items read from a save are kept as they are, so writing the save again gives the same bytes.
+ */
+public class D2ItemForm {
+    private static final int LOW = 1, SUPERIOR = 3, MAX_LEVEL = 99, MAX_DEFENSE = 1023, MAX_DURABILITY = 255,
+                            MAX_QUANTITY = 511;
+
+    private String type;
+    private int quality = 2;
+    private int iLvl = 1;
+    private Integer x, y;
+    private boolean ethereal;
+    private int defense, durability, quantity;
+    private int identifier;
+
+    // Item this form was read from, if any
+    private D2Item item;
+
+    public D2ItemForm() {
+    }
+
+    public D2ItemForm(D2Item item) {
+        this.item = item;
+        type = item.getTypeCode();
+        x = item.getX();
+        y = item.getY();
+    }
+
+    // Copy of another form, so a form used as a template isn't changed by the saves made from it
+    public D2ItemForm(D2ItemForm other) {
+        type = other.type;
+        quality = other.quality;
+        iLvl = other.iLvl;
+        x = other.x;
+        y = other.y;
+        ethereal = other.ethereal;
+        defense = other.defense;
+        durability = other.durability;
+        quantity = other.quantity;
+        identifier = other.identifier;
+        item = other.item;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public int getQuality() {
+        return quality;
+    }
+
+    public void setQuality(int quality) {
+        this.quality = quality;
+    }
+
+    public int getiLvl() {
+        return iLvl;
+    }
+
+    public void setiLvl(int iLvl) {
+        this.iLvl = iLvl;
+    }
+
+    public Integer getX() {
+        return x;
+    }
+
+    public void setX(Integer x) {
+        this.x = x;
+    }
+
+    public Integer getY() {
+        return y;
+    }
+
+    public void setY(Integer y) {
+        this.y = y;
+    }
+
+    public boolean isEthereal() {
+        return ethereal;
+    }
+
+    public void setEthereal(boolean ethereal) {
+        this.ethereal = ethereal;
+    }
+
+    public int getDefense() {
+        return defense;
+    }
+
+    public void setDefense(int defense) {
+        this.defense = defense;
+    }
+
+    public int getDurability() {
+        return durability;
+    }
+
+    public void setDurability(int durability) {
+        this.durability = durability;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public int getIdentifier() {
+        return identifier;
+    }
+
+    public void setIdentifier(int identifier) {
+        this.identifier = identifier;
+    }
+
+    // Item this form was read from, or null if it was submitted
+    public D2Item getItem() {
+        return item;
+    }
+
+    // Whether the item is built without extended data, and so has no identifier
+    public boolean isSimple() {
+        if(item != null)
+            return item.isSimple();
+        return !D2ItemTypes.isNonMisc(type) && !D2ItemTypes.hasQuantity(type) && !D2ItemTypes.isTome(type);
+    }
+
+    public boolean hasPosition() {
+        return x != null && y != null;
+    }
+
+    /**
+     * Checks the type code and the values the item is built from. Items read from a save are always valid.
+     */
+    public boolean checkValid() {
+        if(item != null)
+            return true;
+        if(type == null || type.length() != 3 || !type.chars().allMatch(Character::isLetterOrDigit))
+            return false;
+        return quality >= LOW && quality <= SUPERIOR && iLvl >= 1 && iLvl <= MAX_LEVEL &&
+            defense >= 0 && defense <= MAX_DEFENSE && durability >= 0 && durability <= MAX_DURABILITY &&
+            quantity >= 0 && quantity <= MAX_QUANTITY;
+    }
+
+    /**
+     * Build the item at the form's position in a storage, or at the top left without a position. Armor, weapons
+     * and items with a quantity get extended data, other items are written as simple items.
+     */
+    public D2Item toItem(int store) {
+        return hasPosition() ? build(D2Item.STORED, 0, store, x, y) : build(D2Item.STORED, 0, store, 0, 0);
+    }
+
+    /**
+     * Build the item equipped in a slot, which has no position.
+     */
+    public D2Item toEquippedItem(int slot) {
+        return build(D2Item.EQUIPPED, slot, 0, 0, 0);
+    }
+
+    private D2Item build(int location, int slot, int store, int x, int y) {
+        if(item != null)
+            return item;
+
+        D2Item.Builder builder = new D2Item.Builder(type).setItemLocation(location).setEquippedLoc(slot)
+            .setItemStore(store).setX(x).setY(y);
+        if(isSimple())
+            return builder.setSimple(true).build();
+
+        D2ItemData data = new D2ItemData.Builder().setDefense(defense).setMaxDur(durability).setCurDur(durability)
+            .setQuantity(quantity).build();
+        return builder.setEthereal(ethereal)
+            .setExtendedData(new D2ExtendedItem.Builder(identifier, iLvl, quality).setData(data).build())
+            .build();
+    }
+}
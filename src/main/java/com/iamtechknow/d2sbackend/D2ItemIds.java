@@ -0,0 +1,87 @@
+package com.iamtechknow.d2sbackend;
+
+/**
+ * Generates unique item identifiers for a save from a seed.
+ *
+ * Identifiers are a counter run through a permutation of the 32-bit integers picked by the seed, so two counter values
+ * never give the same identifier, and the same seed always gives the same identifiers. The permutation is a few
+ * rounds of xor-shifts and odd multiplications, each of which can be undone, with the seed mixed in between.
+ *
+ * A generator is not thread safe, and there are no locks to share. Each thread uses its own, made with split(),
+ * which takes half of the counter values left, so split generators never give the same identifier either.
+ */
+public class D2ItemIds {
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    // Keys of the permutation
+    private final int key0, key1, key2;
+
+    // Counter values left, from next up to but not including end
+    private long next, end;
+
+    public D2ItemIds(long seed) {
+        this(mix(seed), mix(seed + GOLDEN_GAMMA), mix(seed + 2 * GOLDEN_GAMMA), 0, 1L << 32);
+    }
+
+    private D2ItemIds(int key0, int key1, int key2, long next, long end) {
+        this.key0 = key0;
+        this.key1 = key1;
+        this.key2 = key2;
+        this.next = next;
+        this.end = end;
+    }
+
+    /**
+     * Seed for the items of a save, from a base seed and the character's name.
+     */
+    public static long seedFor(String name, long seed) {
+        long hash = seed;
+        for(int i = 0; i < name.length(); i++)
+            hash = (hash ^ name.charAt(i)) * 0x100000001B3L;
+        return hash;
+    }
+
+    /**
+     * @return a generator for another thread, that takes the upper half of the counter values left
+     */
+    public D2ItemIds split() {
+        long mid = next + (end - next) / 2;
+        D2ItemIds other = new D2ItemIds(key0, key1, key2, mid, end);
+        end = mid;
+        return other;
+    }
+
+    /**
+     * @return the next identifier
+     * @throws IllegalStateException if every identifier of this generator was given
+     */
+    public int next() {
+        if(next == end)
+            throw new IllegalStateException("No item identifiers left");
+        return permute((int) next++);
+    }
+
+    // Number of identifiers this generator can still give
+    public long remaining() {
+        return end - next;
+    }
+
+    private int permute(int x) {
+        x ^= key0;
+        x ^= x >>> 16;
+        x *= 0x7FEB352D;
+        x ^= key1;
+        x ^= x >>> 15;
+        x *= 0x846CA68B;
+        x ^= key2;
+        x ^= x >>> 16;
+        return x;
+    }
+
+    // SplitMix64 finalizer, to spread the seed's bits over the keys
+    private static int mix(long z) {
+        z = (z ^ z >>> 30) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ z >>> 27) * 0x94D049BB133111EBL;
+        return (int) (z ^ z >>> 31);
+    }
+}
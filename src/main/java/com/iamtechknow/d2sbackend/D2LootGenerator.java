@@ -0,0 +1,350 @@
+package com.iamtechknow.d2sbackend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static com.iamtechknow.d2sbackend.D2ExtendedItem.*;
+
+/**
+ * Generates random magic, rare, set and unique items, for load tests and random mules.
+ *
+ * Affixes, set items and uniques are kept in tables per item category, sorted by the item level they need, so the
+ * ones an item can roll are a prefix of the table. The size of that prefix is precomputed for every level, and
+ * picking an affix is a single random index. Base types, set items and uniques depend on the item codes, so their
+ * tables are kept on each game data snapshot.
+ *
+ * A generator is not thread safe. Each thread should use its own, made with split(). Items are the same for the same
+ * seed, and for generators split in the same order. Identifiers come from D2ItemIds, so items of a generator and of
+ * the generators split from it never share one.
+ */
+public class D2LootGenerator {
+    public static final int MAX_LEVEL = 99;
+
+    // Item categories, from the game data classification of item codes
+    private static final int ARMOR = 0, SHIELD = 1, WEAPON = 2, JEWELRY = 3, CATEGORIES = 4;
+    private static final int A = 1 << ARMOR, S = 1 << SHIELD, W = 1 << WEAPON, J = 1 << JEWELRY, ALL = A | S | W | J;
+
+    // Rare names are a word from each list
+    private static final int RARE_FIRST_WORDS = 156, RARE_SECOND_WORDS = 177, MAX_RARE_AFFIXES = 3, MAX_SET_BONUSES = 2;
+
+    // Chance of each quality out of 100: magic, rare, set, unique
+    private static final int MAGIC_CHANCE = 60, RARE_CHANCE = 25, SET_CHANCE = 7;
+
+    private static final String[] JEWELRY_CODES = {"rin", "amu", "jew", "cm1", "cm2", "cm3"};
+    private static final int[] JEWELRY_IMAGES = {5, 3, 6, 3, 3, 3};
+    private static final int[] EMPTY = {};
+
+    // Affix ID, item level, categories, property ID, min and max value
+    private static final int[][] PREFIXES = {
+        {3, 1, A | S, 16, 10, 20}, {5, 11, A | S, 16, 21, 30}, {9, 25, A | S, 16, 31, 40}, {14, 35, A | S, 16, 41, 50},
+        {19, 1, W, 19, 10, 20}, {22, 14, W, 19, 21, 40}, {27, 30, W, 19, 41, 100},
+        {33, 1, W, 22, 1, 2}, {36, 12, W, 22, 3, 5}, {40, 28, W, 22, 6, 10},
+        {45, 12, ALL, 9, 5, 10}, {48, 27, ALL, 9, 11, 20},
+        {52, 1, S | J, 39, 5, 10}, {55, 1, S | J, 41, 5, 10}, {58, 1, S | J, 43, 5, 10}, {61, 1, S | J, 45, 5, 10},
+        {64, 20, S | J, 39, 11, 20}, {67, 20, S | J, 41, 11, 20}, {70, 20, S | J, 43, 11, 20}, {73, 20, S | J, 45, 11, 20},
+        {80, 36, A | J, 80, 15, 25}
+    };
+
+    private static final int[][] SUFFIXES = {
+        {2, 1, ALL, 0, 1, 3}, {5, 9, ALL, 0, 4, 6}, {8, 17, ALL, 0, 7, 10},
+        {11, 1, ALL, 2, 1, 3}, {14, 9, ALL, 2, 4, 6}, {17, 1, ALL, 3, 1, 3}, {20, 1, ALL, 1, 1, 3},
+        {23, 1, A | S | J, 7, 1, 10}, {26, 15, A | S | J, 7, 11, 30}, {29, 30, A | S | J, 7, 31, 60},
+        {32, 5, W | J, 93, 10, 20}, {35, 10, A, 99, 10, 24}, {38, 8, A | J, 79, 10, 40},
+        {41, 15, ALL, 74, 3, 5}, {44, 1, ALL, 89, 1, 3}, {47, 20, W | J, 105, 10, 20}, {50, 25, A, 96, 10, 30}
+    };
+
+    // Set or unique ID, base item type, item level
+    private static final Object[][] SET_ITEMS = {
+        {0, "lrg", 13}, {1, "amu", 13}, {2, "gsc", 13}, {3, "mbt", 5}, {4, "buc", 5}, {5, "mbl", 5},
+        {6, "lsd", 6}, {7, "sml", 6}, {8, "mgl", 6}
+    };
+
+    private static final Object[][] UNIQUES = {
+        {0, "hax", 7}, {1, "axe", 12}, {2, "2ax", 15}, {3, "mpi", 21}, {4, "wax", 13}, {5, "lax", 11},
+        {6, "bax", 19}, {7, "btx", 26}, {8, "gax", 34}, {9, "gix", 39}
+    };
+
+    // Affix tables per category, sorted by item level, and the number of entries an item of each level can roll
+    private static final int[][][] PREFIX_TABLE = new int[CATEGORIES][][], SUFFIX_TABLE = new int[CATEGORIES][][];
+    private static final int[][] PREFIX_COUNT = new int[CATEGORIES][], SUFFIX_COUNT = new int[CATEGORIES][];
+
+    static {
+        for(int c = 0; c < CATEGORIES; c++) {
+            PREFIX_TABLE[c] = affixTable(PREFIXES, c);
+            PREFIX_COUNT[c] = countByLevel(PREFIX_TABLE[c], row -> row[1]);
+            SUFFIX_TABLE[c] = affixTable(SUFFIXES, c);
+            SUFFIX_COUNT[c] = countByLevel(SUFFIX_TABLE[c], row -> row[1]);
+        }
+    }
+
+    /**
+     * Base types, set items and uniques per category of a game data snapshot, which classifies the item codes.
+     * Built the first time a snapshot generates an item and kept on it, so they follow reloads.
+     */
+    static final class Tables {
+        private final String[][] baseTypes = new String[CATEGORIES][];
+        private final Object[][][] setTable = new Object[CATEGORIES][][], uniqueTable = new Object[CATEGORIES][][];
+        private final int[][] setCount = new int[CATEGORIES][], uniqueCount = new int[CATEGORIES][];
+
+        /**
+         * @throws IllegalStateException if an affix rolls a property the snapshot doesn't have or can't hold the value of
+         */
+        Tables(D2GameData data) {
+            checkAffixes(PREFIXES, data);
+            checkAffixes(SUFFIXES, data);
+
+            baseTypes[ARMOR] = sorted(data.getArmorCodes().toArray(new String[0]));
+            baseTypes[SHIELD] = sorted(data.getShieldCodes().toArray(new String[0]));
+            baseTypes[WEAPON] = sorted(data.getWeaponCodes().toArray(new String[0]));
+            baseTypes[JEWELRY] = JEWELRY_CODES;
+            for(int c = 0; c < CATEGORIES; c++) {
+                setTable[c] = itemTable(SET_ITEMS, c, data);
+                setCount[c] = countByLevel(setTable[c], row -> (int) row[2]);
+                uniqueTable[c] = itemTable(UNIQUES, c, data);
+                uniqueCount[c] = countByLevel(uniqueTable[c], row -> (int) row[2]);
+            }
+        }
+    }
+
+    private final SplittableRandom random;
+    private final D2ItemIds ids;
+
+    public D2LootGenerator(long seed) {
+        this(new SplittableRandom(seed), new D2ItemIds(seed));
+    }
+
+    private D2LootGenerator(SplittableRandom random, D2ItemIds ids) {
+        this.random = random;
+        this.ids = ids;
+    }
+
+    /**
+     * @return a generator with its own random sequence, for another thread
+     */
+    public D2LootGenerator split() {
+        return new D2LootGenerator(random.split(), ids.split());
+    }
+
+    /**
+     * Generate an item of a random quality, falling back to magic when the category has no set or unique item
+     * of the level.
+     * @param iLvl item level, from 1 to 99
+     */
+    public D2Item nextItem(int iLvl) {
+        int roll = random.nextInt(100);
+        int quality = roll < MAGIC_CHANCE ? MAGICAL : roll < MAGIC_CHANCE + RARE_CHANCE ? RARE
+                        : roll < MAGIC_CHANCE + RARE_CHANCE + SET_CHANCE ? SET : UNIQUE;
+        return nextItem(iLvl, quality);
+    }
+
+    /**
+     * Generate an item of the quality, one of MAGICAL, RARE, SET or UNIQUE.
+     */
+    public D2Item nextItem(int iLvl, int quality) {
+        if(iLvl < 1 || iLvl > MAX_LEVEL)
+            throw new IllegalArgumentException("Item level must be from 1 to " + MAX_LEVEL);
+
+        D2GameData gameData = D2GameData.current();
+        Tables tables = gameData.getLootTables();
+        int category = random.nextInt(CATEGORIES);
+        String type = null;
+        Object[] setOrUnique = null;
+        if(quality == SET || quality == UNIQUE) {
+            Object[][] table = quality == SET ? tables.setTable[category] : tables.uniqueTable[category];
+            int count = (quality == SET ? tables.setCount : tables.uniqueCount)[category][iLvl];
+            if(count > 0) {
+                setOrUnique = table[random.nextInt(count)];
+                type = (String) setOrUnique[1];
+            } else
+                quality = MAGICAL;
+        } else if(quality != MAGICAL && quality != RARE)
+            throw new IllegalArgumentException("Quality " + quality + " is not generated");
+
+        String[] types = tables.baseTypes[category];
+        if(type == null)
+            type = types[random.nextInt(types.length)];
+
+        D2ExtendedItem.Builder builder = new D2ExtendedItem.Builder(ids.next(), iLvl, quality)
+            .setPrefixIds(EMPTY).setSuffixIds(EMPTY);
+        if(category == JEWELRY)
+            for(int i = 0; i < JEWELRY_CODES.length; i++)
+                if(JEWELRY_CODES[i].equals(type))
+                    builder.setGenericMagicItem(true).setImgType(random.nextInt(JEWELRY_IMAGES[i]));
+
+        // Every affix adds a property, and an item has at most 6 of them
+        int[] ids = new int[2 * MAX_RARE_AFFIXES];
+        long[] values = new long[ids.length];
+        int numProperties = 0;
+
+        switch(quality) {
+            case MAGICAL: {
+                // At least one of the prefix and suffix
+                int[] prefix = null, suffix = null;
+                int roll = random.nextInt(3);
+                if(roll != 1)
+                    prefix = pick(PREFIX_TABLE[category], PREFIX_COUNT[category][iLvl]);
+                if(roll != 0 || prefix == null)
+                    suffix = pick(SUFFIX_TABLE[category], SUFFIX_COUNT[category][iLvl]);
+
+                builder.setPrefixId(prefix != null ? prefix[0] : 0).setSuffixId(suffix != null ? suffix[0] : 0);
+                numProperties = roll(prefix, ids, values, numProperties);
+                numProperties = roll(suffix, ids, values, numProperties);
+                break;
+            }
+            case RARE: {
+                builder.setFirstWordId(1 + random.nextInt(RARE_FIRST_WORDS))
+                    .setSecondWordId(1 + random.nextInt(RARE_SECOND_WORDS));
+
+                // 3 to 6 affixes, at least one of each kind, never two for the same property
+                int affixes = 3 + random.nextInt(2 * MAX_RARE_AFFIXES - 2);
+                int[] prefixIds = new int[MAX_RARE_AFFIXES], suffixIds = new int[MAX_RARE_AFFIXES];
+                int numPrefixes = 0, numSuffixes = 0;
+                for(int tries = 0; numPrefixes + numSuffixes < affixes && tries < 4 * affixes; tries++) {
+                    boolean isPrefix = numSuffixes == MAX_RARE_AFFIXES || numPrefixes == 0
+                        || numPrefixes < MAX_RARE_AFFIXES && numSuffixes > 0 && random.nextBoolean();
+                    int[] affix = isPrefix ? pick(PREFIX_TABLE[category], PREFIX_COUNT[category][iLvl])
+                                           : pick(SUFFIX_TABLE[category], SUFFIX_COUNT[category][iLvl]);
+                    if(affix == null || contains(ids, numProperties, affix[3]))
+                        continue;
+
+                    if(isPrefix)
+                        prefixIds[numPrefixes++] = affix[0];
+                    else
+                        suffixIds[numSuffixes++] = affix[0];
+                    numProperties = roll(affix, ids, values, numProperties);
+                }
+                builder.setPrefixIds(Arrays.copyOf(prefixIds, numPrefixes)).setSuffixIds(Arrays.copyOf(suffixIds, numSuffixes));
+                break;
+            }
+            default: {
+                // Sets and uniques get 2 to 4 properties of their category
+                if(quality == SET)
+                    builder.setSetId((int) setOrUnique[0]);
+                else
+                    builder.setUniqueId((int) setOrUnique[0]);
+
+                for(int i = 2 + random.nextInt(3); i > 0; i--) {
+                    int[] affix = random.nextBoolean() ? pick(PREFIX_TABLE[category], PREFIX_COUNT[category][iLvl])
+                                                       : pick(SUFFIX_TABLE[category], SUFFIX_COUNT[category][iLvl]);
+                    if(affix != null && !contains(ids, numProperties, affix[3]))
+                        numProperties = roll(affix, ids, values, numProperties);
+                }
+            }
+        }
+
+        D2ItemData.Builder data = new D2ItemData.Builder()
+            .setPropertyIds(Arrays.copyOf(ids, numProperties)).setPropertyValues(Arrays.copyOf(values, numProperties));
+
+        // Set items have a list of bonuses for each extra item of the set worn
+        if(quality == SET) {
+            int lists = random.nextInt(MAX_SET_BONUSES + 1);
+            int[] bonusIds = new int[lists];
+            long[] bonusValues = new long[lists];
+            for(int i = 0; i < lists; i++) {
+                int[] affix = SUFFIX_TABLE[category][random.nextInt(SUFFIX_COUNT[category][iLvl])];
+                bonusIds[i] = affix[3];
+                bonusValues[i] = rollValue(affix);
+            }
+            data.setPropertyLists(lists).setSetBonusIds(bonusIds).setSetBonusValues(bonusValues);
+        }
+
+        // Defense and durability for armor, shields and weapons, quantity for throwing weapons
+        if(category == ARMOR || category == SHIELD)
+            data.setDefense(Math.min(2 + iLvl * 5 + random.nextInt(iLvl * 3 + 1), 1023));
+        if(category != JEWELRY) {
+            int maxDur = 10 + random.nextInt(241);
+            data.setMaxDur(maxDur).setCurDur(1 + random.nextInt(maxDur));
+        }
+        if(gameData.hasQuantity(type))
+            data.setQuantity(1 + random.nextInt(511));
+
+        return new D2Item.Builder(type).setExtendedData(builder.setData(data.build()).build()).build();
+    }
+
+    // Random affix among the first count, or null if there are none
+    private int[] pick(int[][] table, int count) {
+        return count == 0 ? null : table[random.nextInt(count)];
+    }
+
+    // Add the affix's property with a random value
+    private int roll(int[] affix, int[] ids, long[] values, int numProperties) {
+        if(affix == null)
+            return numProperties;
+        ids[numProperties] = affix[3];
+        values[numProperties] = rollValue(affix);
+        return numProperties + 1;
+    }
+
+    private long rollValue(int[] affix) {
+        return affix[4] + random.nextInt(affix[5] - affix[4] + 1);
+    }
+
+    private static boolean contains(int[] ids, int size, int id) {
+        for(int i = 0; i < size; i++)
+            if(ids[i] == id)
+                return true;
+        return false;
+    }
+
+    // Affixes must roll properties that exist and fit their bit width
+    private static void checkAffixes(int[][] affixes, D2GameData data) {
+        for(int[] affix : affixes) {
+            D2PropertyDescriptor descriptor = data.getDescriptor(affix[3]);
+            if(descriptor == null || descriptor.getParams() != 1 || affix[5] + descriptor.getBias(0) >= 1 << descriptor.getWidth(0))
+                throw new IllegalStateException("Affix " + affix[0] + " has an invalid property");
+        }
+    }
+
+    private static int[][] affixTable(int[][] affixes, int category) {
+        List<int[]> table = new ArrayList<>();
+        for(int[] affix : affixes)
+            if((affix[2] & 1 << category) != 0)
+                table.add(affix);
+        table.sort(Comparator.comparingInt(affix -> affix[1]));
+        return table.toArray(new int[0][]);
+    }
+
+    private static Object[][] itemTable(Object[][] items, int category, D2GameData data) {
+        List<Object[]> table = new ArrayList<>();
+        for(Object[] item : items)
+            if(getCategory((String) item[1], data) == category)
+                table.add(item);
+        table.sort(Comparator.comparingInt(item -> (int) item[2]));
+        return table.toArray(new Object[0][]);
+    }
+
+    private interface Level<T> {
+        int of(T row);
+    }
+
+    // For each item level, the number of rows of a table sorted by level that the level can roll
+    private static <T> int[] countByLevel(T[] table, Level<T> level) {
+        int[] counts = new int[MAX_LEVEL + 1];
+        for(int lvl = 1, i = 0; lvl <= MAX_LEVEL; lvl++) {
+            while(i < table.length && level.of(table[i]) <= lvl)
+                i++;
+            counts[lvl] = i;
+        }
+        return counts;
+    }
+
+    // Category of a base type, or -1 if the tables no longer have it
+    private static int getCategory(String type, D2GameData data) {
+        if(data.isArmor(type))
+            return ARMOR;
+        if(data.isShield(type))
+            return SHIELD;
+        if(data.isNonMisc(type))
+            return WEAPON;
+        return Arrays.asList(JEWELRY_CODES).contains(type) ? JEWELRY : -1;
+    }
+
+    // Sets have no order, so sort the codes to pick the same types for the same seed
+    private static String[] sorted(String[] codes) {
+        Arrays.sort(codes);
+        return codes;
+    }
+}
@@ -0,0 +1,64 @@
+package com.iamtechknow.d2sbackend;
+
+/**
+ * Tables of the mercenaries that can be hired, by their type in hireling.txt order, and the experience each needs
+ * for every level. The experience is computed once, since the header stores it rather than the level.
+ */
+public class D2Mercenaries {
+    public static final int MIN_LEVEL = 1, MAX_LEVEL = 98;
+
+    // Kinds of mercenaries, the act they are hired in
+    public static final int ROGUE = 0, DESERT = 1, SORCERER = 2, BARBARIAN = 3;
+
+    // Per kind: first type, number of types, number of names, experience per level
+    private static final int[][] KINDS = {
+        {0, 6, 41, 100},    // Rogue Scouts: fire and cold, for each difficulty
+        {6, 9, 21, 105},    // Desert Mercenaries: combat, defensive and offensive
+        {15, 9, 20, 110},   // Eastern Sorcerors: fire, cold and lightning
+        {24, 6, 67, 120}    // Barbarians, two lines for each difficulty
+    };
+
+    private static final int NUM_TYPES = 30;
+
+    // Kind of each type, and experience at each level for each kind
+    private static final int[] TYPE_KINDS = new int[NUM_TYPES];
+    private static final int[][] EXPERIENCE = new int[KINDS.length][MAX_LEVEL + 1];
+
+    static {
+        for(int kind = 0; kind < KINDS.length; kind++) {
+            for(int type = KINDS[kind][0]; type < KINDS[kind][0] + KINDS[kind][1]; type++)
+                TYPE_KINDS[type] = kind;
+
+            // Experience to reach a level is the experience per level times level squared times level plus one
+            long perLevel = KINDS[kind][3];
+            for(int level = MIN_LEVEL; level <= MAX_LEVEL; level++)
+                EXPERIENCE[kind][level] = (int) (perLevel * level * level * (level + 1));
+        }
+    }
+
+    public static boolean isType(int type) {
+        return type >= 0 && type < NUM_TYPES;
+    }
+
+    public static int getKind(int type) {
+        return TYPE_KINDS[type];
+    }
+
+    // Number of names mercenaries of the type can have, the name ID is an index into them
+    public static int getNumNames(int type) {
+        return KINDS[TYPE_KINDS[type]][2];
+    }
+
+    public static int getExperience(int type, int level) {
+        return EXPERIENCE[TYPE_KINDS[type]][level];
+    }
+
+    // Highest level whose experience is at most the given experience
+    public static int getLevel(int type, long experience) {
+        int[] table = EXPERIENCE[TYPE_KINDS[type]];
+        int level = MIN_LEVEL;
+        while(level < MAX_LEVEL && table[level + 1] <= experience)
+            level++;
+        return level;
+    }
+}
@@ -0,0 +1,253 @@
+package com.iamtechknow.d2sbackend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Places stored items in the inventory, stash and cube without overlaps.
+ *
+ * Each storage is a bitboard in a long, a bit per cell. Cells are numbered down each column, then across columns,
+ * so the lowest free position is the leftmost column's topmost cell, which is where the game puts picked up items.
+ * For each item size, the positions it can start at are found with a few shifts and ANDs of the free cells, and a
+ * first fit is the lowest bit of that mask. A best fit picks the position that leaves the fewest free cells around the
+ * item, to keep room for larger items.
+ *
+ * An instance keeps the boards of one character, and is not thread safe.
+ */
+public class D2Placement {
+    public enum Strategy { FIRST_FIT, BEST_FIT }
+
+    /**
+     * A grid an item can be stored in. Classic characters only have the top rows of grids that are taller in the
+     * expansion.
+     */
+    public enum Storage {
+        INVENTORY(D2Item.INVENTORY, 10, 4, 4), STASH(D2Item.STASH, 6, 8, 4), CUBE(D2Item.CUBE, 3, 4, 4);
+
+        // Largest item is 2x4
+        private static final int MAX_WIDTH = 2, MAX_HEIGHT = 4;
+
+        private final int store, width, height, classicHeight;
+
+        // Per item size: cells of the item at position 0, positions it can start at, and cells around it at each position
+        private final long[][] footprints = new long[MAX_WIDTH + 1][MAX_HEIGHT + 1], origins = new long[MAX_WIDTH + 1][MAX_HEIGHT + 1];
+        private final long[][][] borders = new long[MAX_WIDTH + 1][MAX_HEIGHT + 1][];
+
+        Storage(int store, int width, int height, int classicHeight) {
+            this.store = store;
+            this.width = width;
+            this.height = height;
+            this.classicHeight = classicHeight;
+
+            for(int w = 1; w <= MAX_WIDTH; w++) {
+                for(int h = 1; h <= MAX_HEIGHT; h++) {
+                    borders[w][h] = new long[width * height];
+                    for(int x = 0; x + w <= width; x++) {
+                        for(int y = 0; y + h <= height; y++) {
+                            origins[w][h] |= 1L << cell(x, y);
+                            borders[w][h][cell(x, y)] = rect(x - 1, y - 1, w + 2, h + 2) & ~rect(x, y, w, h);
+                        }
+                    }
+                    footprints[w][h] = rect(0, 0, w, h);
+                }
+            }
+        }
+
+        private int cell(int x, int y) {
+            return x * height + y;
+        }
+
+        // Cells of a rectangle, clipped to the grid
+        private long rect(int x, int y, int w, int h) {
+            long cells = 0;
+            for(int i = Math.max(x, 0); i < Math.min(x + w, width); i++)
+                for(int j = Math.max(y, 0); j < Math.min(y + h, height); j++)
+                    cells |= 1L << cell(i, j);
+            return cells;
+        }
+
+        private boolean fits(int w, int h) {
+            return w >= 1 && w <= MAX_WIDTH && w <= width && h >= 1 && h <= MAX_HEIGHT && h <= height;
+        }
+
+        public int getStore() {
+            return store;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        // Rows in the expansion, which positions are numbered by
+        public int getHeight() {
+            return height;
+        }
+
+        public int getHeight(boolean expansion) {
+            return expansion ? height : classicHeight;
+        }
+    }
+
+    /**
+     * Items that were placed, in the order given, and the items that didn't fit anywhere.
+     */
+    public static class Result {
+        private final List<D2Item> placed, unplaced;
+
+        private Result(List<D2Item> placed, List<D2Item> unplaced) {
+            this.placed = placed;
+            this.unplaced = unplaced;
+        }
+
+        public List<D2Item> getPlaced() {
+            return placed;
+        }
+
+        public List<D2Item> getUnplaced() {
+            return unplaced;
+        }
+    }
+
+    private final Strategy strategy;
+    private final long[] boards = new long[Storage.values().length];
+    // Cells that don't exist for the character, marked as used on the boards
+    private final long[] missing = new long[Storage.values().length];
+
+    public D2Placement(Strategy strategy) {
+        this(strategy, true);
+    }
+
+    /**
+     * @param expansion whether the storages are an expansion character's, otherwise classic ones
+     */
+    public D2Placement(Strategy strategy, boolean expansion) {
+        this.strategy = strategy;
+        for(Storage storage : Storage.values()) {
+            int rows = storage.getHeight(expansion);
+            missing[storage.ordinal()] = storage.rect(0, rows, storage.width, storage.height - rows);
+            boards[storage.ordinal()] = missing[storage.ordinal()];
+        }
+    }
+
+    /**
+     * Mark the cells of an item that already has a position as used.
+     * @return false if the item is outside its storage or overlaps another item, in which case nothing is marked
+     */
+    public boolean occupy(D2Item item) {
+        Storage storage = getStorage(item);
+        return storage != null && item.getItemLocation() == D2Item.STORED &&
+            occupy(storage, item.getTypeCode(), item.getX(), item.getY());
+    }
+
+    /**
+     * Mark the cells of an item of the type at a position of a storage as used.
+     * @return false if the item is outside the storage or overlaps another item, in which case nothing is marked
+     */
+    public boolean occupy(Storage storage, String type, int x, int y) {
+        int w = D2ItemTypes.getWidth(type), h = D2ItemTypes.getHeight(type);
+        if(!storage.fits(w, h) || x < 0 || y < 0 || x + w > storage.width || y + h > storage.height)
+            return false;
+
+        long cells = storage.footprints[w][h] << storage.cell(x, y);
+        if((boards[storage.ordinal()] & cells) != 0)
+            return false;
+        boards[storage.ordinal()] |= cells;
+        return true;
+    }
+
+    /**
+     * Place an item in the first of the storages that has room for it.
+     * @return a copy of the item with its store and position set, or null if it doesn't fit
+     */
+    public D2Item place(D2Item item, Storage... storages) {
+        for(Storage storage : storages) {
+            int origin = place(item.getTypeCode(), storage);
+            if(origin >= 0)
+                return new D2Item.Builder(item).setItemLocation(D2Item.STORED).setItemStore(storage.store)
+                    .setX(origin / storage.height).setY(origin % storage.height).build();
+        }
+        return null;
+    }
+
+    /**
+     * Place an item of the type in a storage and mark its cells as used.
+     * @return the cell the item starts at, its column times the storage height plus its row, or -1 if it doesn't fit
+     */
+    public int place(String type, Storage storage) {
+        int w = D2ItemTypes.getWidth(type), h = D2ItemTypes.getHeight(type);
+        if(!storage.fits(w, h))
+            return -1;
+
+        // A position is free if every cell of the item at that position is, so AND the free cells shifted by each cell
+        long board = boards[storage.ordinal()], free = ~board, candidates = storage.origins[w][h];
+        for(int dx = 0; dx < w && candidates != 0; dx++)
+            for(int dy = 0; dy < h; dy++)
+                candidates &= free >>> storage.cell(dx, dy);
+        if(candidates == 0)
+            return -1;
+
+        int origin = strategy == Strategy.FIRST_FIT ? Long.numberOfTrailingZeros(candidates) : bestFit(storage, board, candidates, w, h);
+        boards[storage.ordinal()] = board | storage.footprints[w][h] << origin;
+        return origin;
+    }
+
+    // The candidate with the fewest free cells around it, the first one on ties
+    private static int bestFit(Storage storage, long board, long candidates, int w, int h) {
+        long[] borders = storage.borders[w][h];
+        int best = -1, bestFree = Integer.MAX_VALUE;
+        for(; candidates != 0; candidates &= candidates - 1) {
+            int origin = Long.numberOfTrailingZeros(candidates);
+            int free = Long.bitCount(borders[origin] & ~board);
+            if(free < bestFree) {
+                best = origin;
+                bestFree = free;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Place every item in the storages, trying them in order. Larger items are placed first so small ones don't break up
+     * the space they need, but the result keeps the order of the items.
+     */
+    public Result placeAll(List<D2Item> items, Storage... storages) {
+        // Sort the indexes by decreasing area, keeping the order of items of the same area
+        long[] order = new long[items.size()];
+        for(int i = 0; i < order.length; i++)
+            order[i] = (long) -area(items.get(i)) << 32 | i;
+        Arrays.sort(order);
+
+        D2Item[] placed = new D2Item[items.size()];
+        for(long key : order) {
+            int i = (int) key;
+            placed[i] = place(items.get(i), storages);
+        }
+
+        List<D2Item> result = new ArrayList<>(items.size()), unplaced = new ArrayList<>();
+        for(int i = 0; i < placed.length; i++) {
+            if(placed[i] != null)
+                result.add(placed[i]);
+            else
+                unplaced.add(items.get(i));
+        }
+        return new Result(result, unplaced.isEmpty() ? Collections.emptyList() : unplaced);
+    }
+
+    private static int area(D2Item item) {
+        return D2ItemTypes.getWidth(item.getTypeCode()) * D2ItemTypes.getHeight(item.getTypeCode());
+    }
+
+    private static Storage getStorage(D2Item item) {
+        for(Storage storage : Storage.values())
+            if(storage.store == item.getItemStore())
+                return storage;
+        return null;
+    }
+
+    // Number of used cells of a storage
+    public int getUsed(Storage storage) {
+        return Long.bitCount(boards[storage.ordinal()] & ~missing[storage.ordinal()]);
+    }
+}
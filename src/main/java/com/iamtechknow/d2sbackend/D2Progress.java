@@ -0,0 +1,201 @@
+package com.iamtechknow.d2sbackend;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Quest and waypoint state of every difficulty, kept as the bytes the save stores them as, packed into longs.
+ *
+ * Each difficulty has a 96 byte quest block of 16-bit words: for each act an introduction word, a word per quest and
+ * a word for traveling to the next act, then padding. Each difficulty also has a 24 byte waypoint block: two bytes
+ * that are always 2 and 1, then a bit per waypoint, 39 in all, then padding. Both are packed little endian, so the
+ * writer copies the longs into the save as they are. A save with this state ignores its starting act and rewards:
+ * the writer copies these two sections, and the rewards and their attribute bonuses come from the quests done here.
+ */
+public class D2Progress {
+    public static final int DIFFICULTIES = 3, QUEST_WORDS = 41, WAYPOINTS = 39;
+    // Words of the quests that give rewards, in each difficulty's quest block
+    public static final int DEN = 1, IMBUE = 3, SKILL_BOOK = 9, LAM_ESEN = 17, POTION = 20, IZUAL = 25, SOCKET = 35,
+                            SCROLL = 37, ANCIENTS = 39;
+    static final int QUEST_SIZE = 96, WAYPOINT_SIZE = 24;
+
+    private static final int QUEST_LONGS = QUEST_SIZE / Long.BYTES, WAYPOINT_LONGS = WAYPOINT_SIZE / Long.BYTES;
+    // The two bytes before the waypoint bits
+    private static final long WAYPOINT_HEADER = 0x0102;
+    private static final int WAYPOINT_SHIFT = 16;
+
+    private long[] quests = new long[DIFFICULTIES * QUEST_LONGS];
+    private long[] waypoints = new long[DIFFICULTIES * WAYPOINT_LONGS];
+
+    public D2Progress() {
+        for(int diff = 0; diff < DIFFICULTIES; diff++)
+            waypoints[diff * WAYPOINT_LONGS] = WAYPOINT_HEADER;
+    }
+
+    /**
+     * State of the quest and waypoint sections the writer derives from the save's starting act and rewards.
+     */
+    public static D2Progress of(D2Save save) {
+        D2sFormat format = D2sFormat.forVersion(save.getVersion());
+        if(format == null)
+            throw new IllegalArgumentException("Unsupported save version " + save.getVersion());
+        byte[] quests = D2sWriter.encodeSection(D2sWriter.Section.QUESTS, save),
+               waypoints = D2sWriter.encodeSection(D2sWriter.Section.WAYPOINTS, save);
+        return read(quests, format.getQuestHeader().length, waypoints, format.getWaypointHeader().length);
+    }
+
+    /**
+     * State stored in a save file.
+     */
+    public static D2Progress read(byte[] data, D2sFormat format) {
+        return read(data, format.getQuestOffset() + format.getQuestHeader().length,
+            data, format.getWaypointOffset() + format.getWaypointHeader().length);
+    }
+
+    private static D2Progress read(byte[] quests, int questOffset, byte[] waypoints, int waypointOffset) {
+        D2Progress progress = new D2Progress();
+        ByteBuffer.wrap(quests, questOffset, DIFFICULTIES * QUEST_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+            .asLongBuffer().get(progress.quests);
+        ByteBuffer.wrap(waypoints, waypointOffset, DIFFICULTIES * WAYPOINT_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+            .asLongBuffer().get(progress.waypoints);
+        return progress;
+    }
+
+    /**
+     * Copy the quest blocks of every difficulty into a buffer, which must be little endian.
+     */
+    void writeQuests(ByteBuffer buffer) {
+        buffer.asLongBuffer().put(quests);
+        buffer.position(buffer.position() + quests.length * Long.BYTES);
+    }
+
+    void writeWaypoints(ByteBuffer buffer) {
+        buffer.asLongBuffer().put(waypoints);
+        buffer.position(buffer.position() + waypoints.length * Long.BYTES);
+    }
+
+    /**
+     * @param quest index of the word in the difficulty's quest block, from 0 to 40
+     */
+    public int getQuestWord(int diff, int quest) {
+        int word = diff * QUEST_SIZE / 2 + checkQuest(quest);
+        return (int) (quests[word >> 2] >>> (word & 3) * 16) & 0xFFFF;
+    }
+
+    public void setQuestWord(int diff, int quest, int value) {
+        int word = diff * QUEST_SIZE / 2 + checkQuest(quest), shift = (word & 3) * 16;
+        quests[word >> 2] = quests[word >> 2] & ~(0xFFFFL << shift) | (value & 0xFFFFL) << shift;
+    }
+
+    // Whether a quest was done in a difficulty, which the game marks in the low byte of its word
+    public boolean isDone(int diff, int quest) {
+        return (getQuestWord(diff, quest) & 0xFF) != 0;
+    }
+
+    /**
+     * Number of difficulties up to the current one that a quest was done in.
+     * @param progression the save's difficulty, 0, 5 or 10, or 15 once the game is finished in hell
+     */
+    public int countDone(int quest, int progression) {
+        int count = 0;
+        for(int diff = 0; diff < DIFFICULTIES && diff * 5 <= progression; diff++)
+            if(isDone(diff, quest))
+                count++;
+        return count;
+    }
+
+    /**
+     * Rewards of the quests done in any difficulty up to the current one, the same ones D2sReader reads from a save.
+     * Each Ancients reward is for its own difficulty.
+     */
+    public D2QuestRewards getRewards(int progression) {
+        D2QuestRewards rewards = new D2QuestRewards();
+        rewards.setDen(countDone(DEN, progression) > 0);
+        rewards.setImbue(countDone(IMBUE, progression) > 0);
+        rewards.setSkillBook(countDone(SKILL_BOOK, progression) > 0);
+        rewards.setLamEsen(countDone(LAM_ESEN, progression) > 0);
+        rewards.setPotion(countDone(POTION, progression) > 0);
+        rewards.setIzual(countDone(IZUAL, progression) > 0);
+        rewards.setSocket(countDone(SOCKET, progression) > 0);
+        rewards.setScroll(countDone(SCROLL, progression) > 0);
+        rewards.setnAncients(isDone(0, ANCIENTS));
+        rewards.setNmAncients(progression >= 5 && isDone(1, ANCIENTS));
+        rewards.sethAncients(progression >= 10 && isDone(2, ANCIENTS));
+        return rewards;
+    }
+
+    /**
+     * @param waypoint index of the waypoint, from 0 for the Rogue Encampment to 38 for Worldstone Keep
+     */
+    public boolean hasWaypoint(int diff, int waypoint) {
+        return (waypoints[diff * WAYPOINT_LONGS] >>> WAYPOINT_SHIFT + checkWaypoint(waypoint) & 1) != 0;
+    }
+
+    public void setWaypoint(int diff, int waypoint, boolean active) {
+        long bit = 1L << WAYPOINT_SHIFT + checkWaypoint(waypoint);
+        int idx = diff * WAYPOINT_LONGS;
+        waypoints[idx] = active ? waypoints[idx] | bit : waypoints[idx] & ~bit;
+    }
+
+    // Every waypoint of a difficulty, a bit per waypoint
+    public long getWaypointMask(int diff) {
+        return waypoints[diff * WAYPOINT_LONGS] >>> WAYPOINT_SHIFT & (1L << WAYPOINTS) - 1;
+    }
+
+    public void setWaypointMask(int diff, long mask) {
+        waypoints[diff * WAYPOINT_LONGS] = (mask & (1L << WAYPOINTS) - 1) << WAYPOINT_SHIFT | WAYPOINT_HEADER;
+    }
+
+    private static int checkQuest(int quest) {
+        if(quest < 0 || quest >= QUEST_WORDS)
+            throw new IllegalArgumentException("Quest word " + quest + " does not exist");
+        return quest;
+    }
+
+    private static int checkWaypoint(int waypoint) {
+        if(waypoint < 0 || waypoint >= WAYPOINTS)
+            throw new IllegalArgumentException("Waypoint " + waypoint + " does not exist");
+        return waypoint;
+    }
+
+    public long[] getQuests() {
+        return quests;
+    }
+
+    public void setQuests(long[] quests) {
+        this.quests = quests;
+    }
+
+    public long[] getWaypoints() {
+        return waypoints;
+    }
+
+    public void setWaypoints(long[] waypoints) {
+        this.waypoints = waypoints;
+    }
+
+    /**
+     * Checks that the arrays have the size of every block, and that the waypoint blocks start with their two fixed bytes.
+     */
+    public boolean checkValid() {
+        if(quests == null || quests.length != DIFFICULTIES * QUEST_LONGS ||
+                waypoints == null || waypoints.length != DIFFICULTIES * WAYPOINT_LONGS)
+            return false;
+
+        for(int diff = 0; diff < DIFFICULTIES; diff++)
+            if((waypoints[diff * WAYPOINT_LONGS] & 0xFFFF) != WAYPOINT_HEADER)
+                return false;
+        return true;
+    }
+
+    // Every value of the quest or waypoint blocks as ints, for comparing the state of two saves
+    int[] toInts(boolean quests) {
+        long[] values = quests ? this.quests : waypoints;
+        int[] arr = new int[values.length * 2];
+        for(int i = 0; i < values.length; i++) {
+            arr[2 * i] = (int) values[i];
+            arr[2 * i + 1] = (int) (values[i] >>> 32);
+        }
+        return arr;
+    }
+}
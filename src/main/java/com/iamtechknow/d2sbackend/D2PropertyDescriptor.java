@@ -0,0 +1,53 @@
+package com.iamtechknow.d2sbackend;
+
+/**
+ * How a property is saved after its ID: one or more parameters, each with a bit width and a bias that is added
+ * before writing. Most properties have a single value, but some have more, such as the level, skill and chance
+ * of a skill on hit, or the minimum and maximum of elemental damage.
+ */
+public class D2PropertyDescriptor {
+    private final int id;
+    private final int[] widths, biases;
+    private final int bits;
+
+    public D2PropertyDescriptor(int id, int[] widths, int[] biases) {
+        if(widths.length == 0 || widths.length != biases.length)
+            throw new IllegalArgumentException("Property " + id + " needs a bias for each of its parameters");
+
+        this.id = id;
+        this.widths = widths;
+        this.biases = biases;
+
+        int total = 0;
+        for(int width : widths)
+            total += width;
+        bits = total;
+    }
+
+    // Property with one value
+    public D2PropertyDescriptor(int id, int width, int bias) {
+        this(id, new int[]{width}, new int[]{bias});
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    // Number of values the property has
+    public int getParams() {
+        return widths.length;
+    }
+
+    public int getWidth(int param) {
+        return widths[param];
+    }
+
+    public int getBias(int param) {
+        return biases[param];
+    }
+
+    // Bits of every parameter together, not counting the ID
+    public int getBits() {
+        return bits;
+    }
+}
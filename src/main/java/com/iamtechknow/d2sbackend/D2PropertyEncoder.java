@@ -0,0 +1,116 @@
+package com.iamtechknow.d2sbackend;
+
+/**
+ * Writes property lists, the ID and value pairs ended by the ID with every bit set, that hold both the character
+ * attributes and the magical properties of items.
+ *
+ * Values are flattened: a property with several parameters takes that many values in a row. The ID and every
+ * parameter are packed into one long and written at once when they fit, which is the case for every known property.
+ */
+public class D2PropertyEncoder {
+    private static final int MAX_FUSED_BITS = 64;
+
+    private final D2PropertyDescriptor[] descriptors;
+    private final int idBits, end;
+
+    /**
+     * @param descriptors descriptors indexed by property ID, null for IDs that can't be written
+     * @param idBits bit width of the IDs
+     */
+    public D2PropertyEncoder(D2PropertyDescriptor[] descriptors, int idBits) {
+        this.descriptors = descriptors;
+        this.idBits = idBits;
+        end = (1 << idBits) - 1;
+    }
+
+    /**
+     * Write the properties and the end of the list.
+     * @param values flattened values, starting at offset
+     * @return offset of the first value not used
+     */
+    public int writeList(BitWriter writer, int[] ids, long[] values, int offset) {
+        return writeList(writer, ids, 0, ids.length, values, offset);
+    }
+
+    /**
+     * Write the properties from index from to to of ids, and the end of the list. Writers with a trace record each
+     * ID and parameter.
+     */
+    public int writeList(BitWriter writer, int[] ids, int from, int to, long[] values, int offset) {
+        if(writer.getTrace() != null)
+            return traceList(writer, ids, from, to, values, offset);
+
+        for(int i = from; i < to; i++)
+            offset = write(writer, ids[i], values, offset);
+        writer.writeReversed(end, idBits);
+        return offset;
+    }
+
+    // Write the list the same way, then record the fields where they went
+    private int traceList(BitWriter writer, int[] ids, int from, int to, long[] values, int offset) {
+        D2BitTrace trace = writer.getTrace();
+        for(int i = from; i < to; i++) {
+            long position = writer.getBitPosition();
+            int next = write(writer, ids[i], values, offset);
+
+            D2PropertyDescriptor descriptor = getDescriptor(ids[i]);
+            String outer = trace.enter("property" + ids[i]);
+            trace.field("id", position, idBits, ids[i]);
+            position += idBits;
+            for(int param = 0; param < descriptor.getParams(); param++) {
+                trace.field("value" + param, position, descriptor.getWidth(param), values[offset + param] + descriptor.getBias(param));
+                position += descriptor.getWidth(param);
+            }
+            trace.restore(outer);
+            offset = next;
+        }
+
+        trace.field("end", writer.getBitPosition(), idBits, end);
+        writer.writeReversed(end, idBits);
+        return offset;
+    }
+
+    /**
+     * Write one property with its parameters.
+     * @return offset of the value after its parameters
+     */
+    public int write(BitWriter writer, int id, long[] values, int offset) {
+        D2PropertyDescriptor descriptor = getDescriptor(id);
+        int params = descriptor.getParams();
+        if(offset + params > values.length)
+            throw new IllegalArgumentException("Variable ID " + id + " needs " + params + " values");
+
+        if(idBits + descriptor.getBits() <= MAX_FUSED_BITS) {
+            // Each field starts where the previous one ends, least significant bits first
+            long packed = id;
+            int shift = idBits;
+            for(int i = 0; i < params; i++) {
+                int width = descriptor.getWidth(i);
+                packed |= (values[offset + i] + descriptor.getBias(i) & (1L << width) - 1) << shift;
+                shift += width;
+            }
+            writer.writeReversed(packed, shift);
+        } else {
+            writer.writeReversed(id, idBits);
+            for(int i = 0; i < params; i++)
+                writer.writeReversed(values[offset + i] + descriptor.getBias(i), descriptor.getWidth(i));
+        }
+        return offset + params;
+    }
+
+    public boolean isDefined(int id) {
+        return id >= 0 && id < descriptors.length && descriptors[id] != null;
+    }
+
+    public D2PropertyDescriptor getDescriptor(int id) {
+        D2PropertyDescriptor descriptor = id >= 0 && id < descriptors.length ? descriptors[id] : null;
+        if(descriptor == null)
+            throw new IllegalArgumentException("Variable ID " + id + " does not exist");
+        return descriptor;
+    }
+
+    // The ID that ends a list
+    public int getEnd() {
+        return end;
+    }
+}
@@ -0,0 +1,31 @@
+package com.iamtechknow.d2sbackend;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ModelAttribute;
+
+/**
+ * Searches the stored saves, e.g. /api/saves?classNum=3&minLevel=80&difficulty=2&hardcore=true&rewards=hAncients
+ * Returns the total number of matches and a page of their names as JSON.
+ */
+@Controller
+public class D2QueryController {
+    private D2SaveStore store;
+
+    @Autowired
+    public D2QueryController(D2SaveStore store) {
+        this.store = store;
+    }
+
+    @GetMapping("/api/saves")
+    public ResponseEntity<String> query(@ModelAttribute D2SaveQuery query) {
+        try {
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(store.getIndex().query(query).toString());
+        } catch(IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+}
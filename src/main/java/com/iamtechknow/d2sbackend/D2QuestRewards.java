@@ -7,6 +7,10 @@ public class D2QuestRewards {
     private boolean den, imbue, skillBook, potion, lamEsen, izual, socket, scroll;
     private boolean nAncients, nmAncients, hAncients;
 
+    // Names of the reward flags, in the bit order of toBits
+    public static final String[] NAMES = {"den", "imbue", "skillBook", "potion", "lamEsen", "izual", "socket", "scroll",
+                                          "nAncients", "nmAncients", "hAncients"};
+
     public boolean isDen() {
         return den;
     }
@@ -94,4 +98,16 @@ public class D2QuestRewards {
     public void sethAncients(boolean hAncients) {
         this.hAncients = hAncients;
     }
+
+    /**
+     * Pack every reward flag into an int, one bit each in declaration order, as named in NAMES.
+     */
+    public int toBits() {
+        boolean[] flags = {den, imbue, skillBook, potion, lamEsen, izual, socket, scroll, nAncients, nmAncients, hAncients};
+        int bits = 0;
+        for(int i = 0; i < flags.length; i++)
+            if(flags[i])
+                bits |= 1 << i;
+        return bits;
+    }
 }
@@ -0,0 +1,145 @@
+package com.iamtechknow.d2sbackend;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Limits how often a client may submit and preview saves, download them, download sweeps and fetch catalog property
+ * ranges. Clients are identified
+ * by their API key if they send one of the keys in d2s.ratelimit.apiKeys, otherwise by address, so a client can't get
+ * a new bucket by sending a new key. Requests over the limit get a 429 before reaching the controller,
+ * so they never cause a save to be encoded.
+ */
+@Component
+public class D2RateLimitInterceptor implements HandlerInterceptor {
+    public static final String API_KEY_HEADER = "X-Api-Key";
+    private static final int SLOTS = 1 << 16;
+
+    private static final String CATALOG = "/api/catalog/", PROPERTIES = "/properties";
+
+    private final D2RateLimiter submitLimiter, previewLimiter, downloadLimiter, sweepLimiter, propertiesLimiter;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final Set<String> apiKeys;
+
+    /**
+     * @param apiKeys comma separated keys that clients may be identified by
+     */
+    public D2RateLimitInterceptor(@Value("${d2s.ratelimit.apiKeys:}") String apiKeys,
+                                  @Value("${d2s.ratelimit.submit.capacity:20}") int submitCapacity,
+                                  @Value("${d2s.ratelimit.submit.rate:5}") double submitRate,
+                                  @Value("${d2s.ratelimit.preview.capacity:50}") int previewCapacity,
+                                  @Value("${d2s.ratelimit.preview.rate:20}") double previewRate,
+                                  @Value("${d2s.ratelimit.download.capacity:10}") int downloadCapacity,
+                                  @Value("${d2s.ratelimit.download.rate:2}") double downloadRate,
+                                  @Value("${d2s.ratelimit.sweep.capacity:2}") int sweepCapacity,
+                                  @Value("${d2s.ratelimit.sweep.rate:0.01}") double sweepRate,
+                                  @Value("${d2s.ratelimit.properties.capacity:100}") int propertiesCapacity,
+                                  @Value("${d2s.ratelimit.properties.rate:20}") double propertiesRate) {
+        submitLimiter = new D2RateLimiter(submitCapacity, submitRate, SLOTS);
+        previewLimiter = new D2RateLimiter(previewCapacity, previewRate, SLOTS);
+        downloadLimiter = new D2RateLimiter(downloadCapacity, downloadRate, SLOTS);
+        sweepLimiter = new D2RateLimiter(sweepCapacity, sweepRate, SLOTS);
+        propertiesLimiter = new D2RateLimiter(propertiesCapacity, propertiesRate, SLOTS);
+        this.apiKeys = Arrays.stream(apiKeys.split(",")).map(String::trim).filter(key -> !key.isEmpty())
+            .collect(Collectors.toSet());
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        D2RateLimiter limiter = getLimiter(request);
+        if(limiter == null)
+            return true;
+
+        long start = System.nanoTime();
+        boolean allowed = limiter.tryAcquire(getClientKey(request));
+        latency.record(System.nanoTime() - start);
+
+        if(!allowed)
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        return allowed;
+    }
+
+    /**
+     * Counts of allowed and rejected requests per endpoint, and the latency of the limiter's decisions.
+     */
+    public JsonObject getStats() {
+        JsonObject result = new JsonObject();
+        result.add("submit", getStats(submitLimiter));
+        result.add("preview", getStats(previewLimiter));
+        result.add("download", getStats(downloadLimiter));
+        result.add("sweep", getStats(sweepLimiter));
+        result.add("properties", getStats(propertiesLimiter));
+        result.add("decision", latency.toJson());
+        return result;
+    }
+
+    private JsonObject getStats(D2RateLimiter limiter) {
+        JsonObject result = new JsonObject();
+        result.add("allowed", new JsonPrimitive(limiter.getAllowed()));
+        result.add("rejected", new JsonPrimitive(limiter.getRejected()));
+        return result;
+    }
+
+    private D2RateLimiter getLimiter(HttpServletRequest request) {
+        String path = request.getServletPath();
+        if(path.startsWith("/download/"))
+            return downloadLimiter;
+        // A sweep encodes up to thousands of saves
+        if(path.equals("/sweep.zip"))
+            return sweepLimiter;
+        // A range that isn't one of the slices kept is sliced, gzipped and hashed for the request
+        if(path.startsWith(CATALOG) && path.endsWith(PROPERTIES))
+            return propertiesLimiter;
+        if(!request.getMethod().equals("POST"))
+            return null;
+        // Tracing encodes a save just like submitting one
+        if(path.equals("/") || path.equals("/trace"))
+            return submitLimiter;
+        // Previews are sent as the form changes, and each one may keep encoded sections in the session
+        if(path.equals("/preview"))
+            return previewLimiter;
+        return null;
+    }
+
+    /**
+     * Key a client by a hash of its API key if it is a configured one, by its IPv4 address, or by a hash of its IPv6
+     * address. Hashes have the top bit set so they can't collide with IPv4 keys, and no key is 0.
+     */
+    long getClientKey(HttpServletRequest request) {
+        String apiKey = request.getHeader(API_KEY_HEADER);
+        if(apiKey != null && apiKeys.contains(apiKey))
+            return hash(apiKey) | Long.MIN_VALUE;
+
+        String addr = request.getRemoteAddr();
+        try {
+            byte[] bytes = InetAddress.getByName(addr).getAddress();
+            if(bytes.length == 4)
+                return ((bytes[0] & 0xFFL) << 24 | (bytes[1] & 0xFFL) << 16 | (bytes[2] & 0xFFL) << 8 | (bytes[3] & 0xFFL)) + 1;
+        } catch(UnknownHostException e) {
+            // Remote addresses are literals so this doesn't resolve anything, fall through to hashing
+        }
+        return hash(addr) | Long.MIN_VALUE;
+    }
+
+    // 64-bit FNV-1a
+    private static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for(int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,95 @@
+package com.iamtechknow.d2sbackend;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-client token buckets kept in a fixed size, lock-free table keyed by a 64-bit client key.
+ *
+ * Each bucket is a single long holding the time at which the bucket will be full again (the generic cell rate
+ * algorithm, equivalent to a token bucket), so taking a token and refilling the bucket is one CAS.
+ * A bucket that is already full carries no information, so when a client finds no free slot
+ * it may take over the slot of a full bucket.
+ */
+public class D2RateLimiter {
+    private static final int MAX_PROBES = 8;
+
+    private final AtomicLongArray keys, buckets;
+    private final int mask;
+    private final long interval, tolerance, start = System.nanoTime();
+    private final LongAdder allowed = new LongAdder(), rejected = new LongAdder();
+
+    /**
+     * @param capacity most requests a client may burst
+     * @param rate requests per second refilled into a client's bucket
+     * @param slots size of the table, rounded up to a power of two
+     */
+    public D2RateLimiter(int capacity, double rate, int slots) {
+        if(capacity < 1 || rate <= 0)
+            throw new IllegalArgumentException("Capacity and rate must be positive");
+
+        int size = Integer.highestOneBit(Math.max(MAX_PROBES, slots - 1)) << 1;
+        keys = new AtomicLongArray(size);
+        buckets = new AtomicLongArray(size);
+        mask = size - 1;
+        interval = (long) (1_000_000_000L / rate);
+        tolerance = interval * (capacity - 1);
+    }
+
+    /**
+     * Take a token from the client's bucket.
+     * @param key client key, any value other than 0
+     * @return whether the request is allowed
+     */
+    public boolean tryAcquire(long key) {
+        long now = System.nanoTime() - start + 1;
+        int slot = findSlot(key, now);
+
+        while(true) {
+            long full = buckets.get(slot), tat = Math.max(full, now);
+            if(tat - now > tolerance) {
+                rejected.increment();
+                return false;
+            }
+            if(buckets.compareAndSet(slot, full, tat + interval)) {
+                allowed.increment();
+                return true;
+            }
+        }
+    }
+
+    public long getAllowed() {
+        return allowed.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    // Find the client's slot, claim an empty slot, take over a full bucket, or share the first slot
+    private int findSlot(long key, long now) {
+        int home = mix(key) & mask;
+        for(int i = 0; i < MAX_PROBES; i++) {
+            int slot = (home + i) & mask;
+            long curr = keys.get(slot);
+            if(curr == key || (curr == 0 && (keys.compareAndSet(slot, 0, key) || keys.get(slot) == key)))
+                return slot;
+        }
+
+        for(int i = 0; i < MAX_PROBES; i++) {
+            int slot = (home + i) & mask;
+            long curr = keys.get(slot);
+            if(buckets.get(slot) <= now && keys.compareAndSet(slot, curr, key))
+                return slot;
+        }
+
+        return home;
+    }
+
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
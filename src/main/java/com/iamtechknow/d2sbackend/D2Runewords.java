@@ -0,0 +1,157 @@
+package com.iamtechknow.d2sbackend;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Table of runewords, with their runes, the bases they can be made in and their properties, and an assembler that
+ * builds a complete socketed runeword item in one call.
+ *
+ * Everything that doesn't depend on the base is built once per runeword: the rune items, which are immutable and
+ * shared by every item of the runeword, and the item data. Assembling an item only builds the base.
+ */
+public class D2Runewords {
+    // Bases a runeword can be made in, from the D2ItemTypes classification
+    public static final int ARMOR = 1, SHIELD = 2, WEAPON = 4;
+
+    // Rune item codes, r01 (El) to r33 (Zod)
+    private static final String[] RUNES = {null, "El", "Eld", "Tir", "Nef", "Eth", "Ith", "Tal", "Ral", "Ort", "Thul",
+        "Amn", "Sol", "Shael", "Dol", "Hel", "Io", "Lum", "Ko", "Fal", "Lem", "Pul", "Um", "Mal", "Ist", "Gul", "Vex",
+        "Ohm", "Lo", "Sur", "Ber", "Jah", "Cham", "Zod"};
+
+    // Runewords are made with normal or superior bases
+    private static final int NORMAL = 2;
+
+    private static final Map<String, Runeword> RUNEWORDS = new LinkedHashMap<>();
+
+    static {
+        // Runeword ID, name, runes, bases, then property IDs and values.
+        // Enhanced damage (17) takes its max and min.
+        add(new Runeword(1, "Steel", new String[]{"Tir", "El"}, WEAPON,
+            new int[]{93, 17, 21, 22, 19}, new long[]{25, 20, 20, 3, 3, 50}));
+        add(new Runeword(2, "Stealth", new String[]{"Tal", "Eth"}, ARMOR,
+            new int[]{96, 105, 99, 2, 9}, new long[]{25, 25, 25, 6, 15}));
+        add(new Runeword(3, "Lore", new String[]{"Ort", "Sol"}, ARMOR,
+            new int[]{127, 1, 41}, new long[]{1, 10, 30}));
+        add(new Runeword(4, "Nadir", new String[]{"Nef", "Tir"}, ARMOR,
+            new int[]{16, 31, 0, 79}, new long[]{50, 10, 5, -12}));
+        add(new Runeword(5, "Malice", new String[]{"Ith", "El", "Eth"}, WEAPON,
+            new int[]{17, 19, 89}, new long[]{33, 33, 50, -1}));
+        add(new Runeword(6, "Rhyme", new String[]{"Shael", "Eth"}, SHIELD,
+            new int[]{39, 41, 43, 45, 80, 99}, new long[]{25, 25, 25, 25, 25, 40}));
+        add(new Runeword(7, "Strength", new String[]{"Amn", "Tir"}, WEAPON,
+            new int[]{17, 0, 3}, new long[]{35, 35, 20, 10}));
+        add(new Runeword(8, "Zephyr", new String[]{"Ort", "Eth"}, WEAPON,
+            new int[]{17, 19, 96, 93}, new long[]{33, 33, 66, 25, 25}));
+        add(new Runeword(9, "Spirit", new String[]{"Tal", "Thul", "Ort", "Amn"}, WEAPON | SHIELD,
+            new int[]{127, 105, 99, 1, 3, 9}, new long[]{2, 35, 55, 22, 22, 112}));
+        add(new Runeword(10, "Insight", new String[]{"Ral", "Tir", "Tal", "Sol"}, WEAPON,
+            new int[]{151, 17, 80, 105}, new long[]{120, 17, 240, 240, 23, 35}));
+        add(new Runeword(11, "Enigma", new String[]{"Jah", "Ith", "Ber"}, ARMOR,
+            new int[]{127, 96, 0, 80, 7}, new long[]{2, 45, 75, 99, 5}));
+    }
+
+    /**
+     * A runeword and everything about it that is the same for every item made with it.
+     */
+    public static class Runeword {
+        private final int id, bases;
+        private final String name;
+        private final String[] runes;
+        private final D2Item[] runeItems;
+        private final D2ItemData data;
+
+        public Runeword(int id, String name, String[] runes, int bases, int[] propertyIds, long[] propertyValues) {
+            this.id = id;
+            this.name = name;
+            this.runes = runes;
+            this.bases = bases;
+
+            // Values must fit the properties, so a bad entry fails here rather than when an item is written
+            D2PropertyEncoder encoder = D2sFormat.V1_10.getPropertyEncoder();
+            int values = 0;
+            for(int propertyId : propertyIds) {
+                D2PropertyDescriptor descriptor = encoder.getDescriptor(propertyId);
+                for(int i = 0; i < descriptor.getParams(); i++, values++) {
+                    long value = values < propertyValues.length ? propertyValues[values] + descriptor.getBias(i) : 0;
+                    if(value < 0 || value >= 1L << descriptor.getWidth(i))
+                        throw new IllegalArgumentException("Runeword " + name + " has an invalid value for property " + propertyId);
+                }
+            }
+            if(values != propertyValues.length)
+                throw new IllegalArgumentException("Runeword " + name + " needs " + values + " property values");
+
+            // Runes are simple items in the sockets, in order
+            runeItems = new D2Item[runes.length];
+            for(int i = 0; i < runes.length; i++)
+                runeItems[i] = new D2Item.Builder(runeCode(runes[i])).setSimple(true)
+                    .setItemLocation(D2Item.SOCKETED).setX(i).build();
+
+            data = new D2ItemData.Builder().setSockets(runes.length)
+                .setPropertyIds(propertyIds).setPropertyValues(propertyValues).build();
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String[] getRunes() {
+            return runes.clone();
+        }
+
+        public boolean allowsBase(String type) {
+            int base = D2ItemTypes.isArmor(type) ? ARMOR : D2ItemTypes.isShield(type) ? SHIELD
+                        : D2ItemTypes.isNonMisc(type) ? WEAPON : 0;
+            return (bases & base) != 0;
+        }
+    }
+
+    private static void add(Runeword runeword) {
+        RUNEWORDS.put(runeword.getName(), runeword);
+    }
+
+    private static String runeCode(String rune) {
+        for(int i = 1; i < RUNES.length; i++)
+            if(RUNES[i].equals(rune))
+                return String.format("r%02d", i);
+        throw new IllegalArgumentException("Unknown rune " + rune);
+    }
+
+    public static Map<String, Runeword> getRunewords() {
+        return Collections.unmodifiableMap(RUNEWORDS);
+    }
+
+    /**
+     * Build a runeword item: the base with its sockets filled by the runes, and the runeword's properties.
+     * @param name runeword name
+     * @param baseType item code of the base, which must be a kind of item the runeword can be made in
+     * @param identifier unique ID of the item
+     * @param iLvl item level of the base
+     * @param defense defense of the base, for armor and shields
+     * @param durability max durability of the base, or 0 if it is indestructible
+     */
+    public static D2Item assemble(String name, String baseType, int identifier, int iLvl, int defense, int durability) {
+        Runeword runeword = RUNEWORDS.get(name);
+        if(runeword == null)
+            throw new IllegalArgumentException("Unknown runeword " + name);
+        if(!runeword.allowsBase(baseType))
+            throw new IllegalArgumentException(name + " can't be made in " + baseType);
+
+        D2ItemData data = runeword.data;
+        if(defense != 0 || durability != 0)
+            data = new D2ItemData.Builder().setSockets(data.getSockets()).setDefense(defense)
+                .setMaxDur(durability).setCurDur(durability)
+                .setPropertyIds(data.getPropertyIds()).setPropertyValues(data.getPropertyValues()).build();
+
+        D2ExtendedItem extended = new D2ExtendedItem.Builder(identifier, iLvl, NORMAL).setRwId(runeword.id)
+            .setData(data).build();
+        return new D2Item.Builder(baseType).setSocketed(true).setHasRW(true)
+            .setNumSocketed(runeword.runeItems.length).setSocketedItems(runeword.runeItems)
+            .setExtendedData(extended).build();
+    }
+}
@@ -1,11 +1,17 @@
 package com.iamtechknow.d2sbackend;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 /**
  * POJO that stores all information to serialize a d2s file.
  */
 public class D2Save {
+    public static final int NECROMANCER = 2;
     private static final int STARTING_LEVEL = 1, MAX_CLASS_NUM = 6, MAX_DIFFICULTY = 15,
-                            GOLD_PER_LEVEL = 10000, MIN_LEN = 2, MAX_LENGTH = 15, NUM_SKILLS = 30;
+                            GOLD_PER_LEVEL = 10000, MAX_LEVEL = 99, MIN_LEN = 2, MAX_LENGTH = 15, NUM_SKILLS = 30;
 
     private String name;
     private int level = STARTING_LEVEL;
@@ -21,8 +27,35 @@ public class D2Save {
     private D2QuestRewards rewards = new D2QuestRewards();
     private int[] skills = new int[NUM_SKILLS];
 
+    // Exact quest and waypoint state, or null to derive it from the starting act and rewards
+    private D2Progress progress;
+
+    // Items stored in each storage, in the order they are written
+    private List<D2ItemForm> inventory = new ArrayList<>(), stash = new ArrayList<>(), cube = new ArrayList<>();
+
+    // Items on the character's corpse, laid out as in the inventory
+    private List<D2ItemForm> corpse = new ArrayList<>();
+
+    // Item an expansion Necromancer's Iron Golem was made from, or null if there is no Iron Golem
+    private D2ItemForm golem;
+
+    // Mercenary of an expansion save, or null if none is hired
+    private D2Hireling hireling;
+
+    // Save format version, see D2sFormat
+    private int version = D2sFormat.V1_10.getVersion();
+
     // Invalid booleans for error messages
-    private boolean invalid, invalidForClassic, invalidName, invalidAct, invalidAncients;
+    private boolean invalid, invalidForClassic, invalidName, invalidAct, invalidAncients, invalidItems, invalidHireling, invalidGolem,
+                    invalidSkills;
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
 
     public String getName() {
         return name;
@@ -108,6 +141,10 @@ public class D2Save {
         return skills;
     }
 
+    public void setSkills(int[] skills) {
+        this.skills = skills;
+    }
+
     public int getStr() {
         return str;
     }
@@ -160,12 +197,107 @@ public class D2Save {
         return invalidAncients;
     }
 
+    public boolean isInvalidItems() {
+        return invalidItems;
+    }
+
+    public boolean isInvalidHireling() {
+        return invalidHireling;
+    }
+
+    public boolean isInvalidGolem() {
+        return invalidGolem;
+    }
+
+    public boolean isInvalidSkills() {
+        return invalidSkills;
+    }
+
+    public List<D2ItemForm> getCorpse() {
+        return corpse;
+    }
+
+    public void setCorpse(List<D2ItemForm> corpse) {
+        this.corpse = corpse;
+    }
+
+    public D2ItemForm getGolem() {
+        return golem;
+    }
+
+    public void setGolem(D2ItemForm golem) {
+        this.golem = golem;
+    }
+
+    public D2Hireling getHireling() {
+        return hireling;
+    }
+
+    public void setHireling(D2Hireling hireling) {
+        this.hireling = hireling;
+    }
+
+    public List<D2ItemForm> getInventory() {
+        return inventory;
+    }
+
+    public void setInventory(List<D2ItemForm> inventory) {
+        this.inventory = inventory;
+    }
+
+    public List<D2ItemForm> getStash() {
+        return stash;
+    }
+
+    public void setStash(List<D2ItemForm> stash) {
+        this.stash = stash;
+    }
+
+    public List<D2ItemForm> getCube() {
+        return cube;
+    }
+
+    public void setCube(List<D2ItemForm> cube) {
+        this.cube = cube;
+    }
+
+    // Items submitted for a storage
+    public List<D2ItemForm> getItems(D2Placement.Storage storage) {
+        switch(storage) {
+            case INVENTORY: return inventory;
+            case STASH: return stash;
+            default: return cube;
+        }
+    }
+
+    public D2Progress getProgress() {
+        return progress;
+    }
+
+    public void setProgress(D2Progress progress) {
+        this.progress = progress;
+    }
+
     public D2QuestRewards getRewards() {
         return rewards;
     }
 
+    public void setRewards(D2QuestRewards rewards) {
+        this.rewards = rewards;
+    }
+
+    /**
+     * Rewards of the quests the save is written with: those done in its progress if it has one, otherwise the
+     * rewards set.
+     */
+    public D2QuestRewards getEarnedRewards() {
+        return progress != null && progress.checkValid() ? progress.getRewards(difficulty) : rewards;
+    }
+
     /**
-     * Various checks to determine whether a save file could be made from this object, and caps gold amount.
+     * Various checks to determine whether a save file could be made from this object. Also completes the save so it
+     * can be written: caps the gold amount, and if it is valid gives stored items without a position one and items
+     * without an identifier one. Calling it again keeps what was assigned.
      * @return whether the form data is valid
      */
     public boolean checkValid() {
@@ -174,8 +306,17 @@ public class D2Save {
         invalidForClassic = !checkClass();
         invalidAct = !checkAct();
         invalidAncients = !checkAncients();
-        invalid = invalidName || invalidForClassic || invalidAct || invalidAncients ||
-                classNum > MAX_CLASS_NUM || difficulty > MAX_DIFFICULTY;
+        invalidItems = !checkItems();
+        invalidSkills = !checkSkills();
+        invalidHireling = hireling != null && (!expansion || !hireling.checkValid());
+        invalidGolem = golem != null && (!expansion || classNum != NECROMANCER || !golem.checkValid() ||
+            !D2ItemTypes.isNonMisc(golem.getType()));
+        invalid = invalidName || invalidForClassic || invalidAct || invalidAncients || invalidItems || invalidHireling ||
+                invalidGolem || invalidSkills ||
+                classNum > MAX_CLASS_NUM || difficulty > MAX_DIFFICULTY || D2sFormat.forVersion(version) == null ||
+                progress != null && !progress.checkValid();
+        if(!invalid)
+            assignIdentifiers();
         return !invalid;
     }
 
@@ -221,9 +362,91 @@ public class D2Save {
      * @return whether the character may complete Ancients
      */
     private boolean checkAncients() {
+        D2QuestRewards rewards = getEarnedRewards();
         if(!rewards.isnAncients() && !rewards.isNmAncients() && !rewards.ishAncients())
             return true;
 
         return !( (rewards.isnAncients() && level < 20) || (rewards.isNmAncients() && level < 40) || (rewards.ishAncients() && level < 60) );
     }
+
+    /**
+     * Checks the skill allocation against the class's skill tree at the level the character ends up with,
+     * and that it doesn't use more points than the character has.
+     * @return whether the skills are valid
+     */
+    private boolean checkSkills() {
+        if(!D2SkillTrees.isClass(classNum) || level < STARTING_LEVEL || level > MAX_LEVEL)
+            return false;
+
+        D2CharacterAttributes attrs = new D2CharacterAttributes(this);
+        return attrs.getSkillPoints() >= 0 && D2SkillTrees.isValid(classNum, attrs.getLevel(), skills);
+    }
+
+    /**
+     * Checks that every stored item is valid and fits its storage without overlapping another, in the storages of a
+     * classic or expansion character. Items with a position are marked first, then the others are placed in the first
+     * free spot, and their position is set. Corpse items are checked the same way, in an inventory of their own.
+     * @return whether the items can be stored
+     */
+    private boolean checkItems() {
+        D2Placement placement = new D2Placement(D2Placement.Strategy.FIRST_FIT, expansion);
+        for(D2Placement.Storage storage : D2Placement.Storage.values())
+            if(!placeItems(getItems(storage), storage, placement))
+                return false;
+        return placeItems(corpse, D2Placement.Storage.INVENTORY, new D2Placement(D2Placement.Strategy.FIRST_FIT, expansion));
+    }
+
+    private boolean placeItems(List<D2ItemForm> items, D2Placement.Storage storage, D2Placement placement) {
+        if(items == null || items.size() > storage.getWidth() * storage.getHeight(expansion))
+            return false;
+
+        for(D2ItemForm item : items)
+            if(item == null || !item.checkValid() ||
+                    item.hasPosition() && !placement.occupy(storage, item.getType(), item.getX(), item.getY()))
+                return false;
+
+        for(D2ItemForm item : items) {
+            if(item.hasPosition())
+                continue;
+            int cell = placement.place(item.getType(), storage);
+            if(cell < 0)
+                return false;
+            item.setX(cell / storage.getHeight());
+            item.setY(cell % storage.getHeight());
+        }
+        return true;
+    }
+
+    /**
+     * Give every submitted item without an identifier one that no other item of the save has. Identifiers are
+     * derived from the character's name, so the same save always gets the same ones.
+     */
+    private void assignIdentifiers() {
+        List<D2ItemForm> forms = new ArrayList<>();
+        for(D2Placement.Storage storage : D2Placement.Storage.values())
+            forms.addAll(getItems(storage));
+        forms.addAll(corpse);
+        if(golem != null)
+            forms.add(golem);
+        if(hireling != null)
+            for(D2ItemForm form : new D2ItemForm[]{hireling.getHead(), hireling.getTorso(), hireling.getWeapon(), hireling.getShield()})
+                if(form != null)
+                    forms.add(form);
+
+        Set<Integer> used = new HashSet<>();
+        for(D2ItemForm form : forms)
+            if(!form.isSimple() && (form.getItem() != null || form.getIdentifier() != 0))
+                used.add(form.getItem() != null ? form.getItem().getExtendedData().getIdentifier() : form.getIdentifier());
+
+        D2ItemIds ids = new D2ItemIds(D2ItemIds.seedFor(name, 0));
+        for(D2ItemForm form : forms) {
+            if(form.isSimple() || form.getItem() != null || form.getIdentifier() != 0)
+                continue;
+            int id;
+            do {
+                id = ids.next();
+            } while(id == 0 || !used.add(id));
+            form.setIdentifier(id);
+        }
+    }
 }
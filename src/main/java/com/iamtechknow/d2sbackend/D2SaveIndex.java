@@ -0,0 +1,320 @@
+package com.iamtechknow.d2sbackend;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Columnar index over the stored saves, so they can be filtered without looking at every save object.
+ *
+ * Each save has a row. Values with few choices (class, difficulty, act, flags and quest rewards) have a bitset
+ * per choice, and item types have a sorted posting list of rows. Levels are bit-sliced: there is a bitset for each bit
+ * of the level, so a level range is compared for 64 rows at a time. A query ANDs the bitsets of its filters
+ * one long at a time, in plain loops over arrays that the JIT can vectorize.
+ */
+public class D2SaveIndex {
+    private static final int CLASSES = 7, DIFFICULTIES = 3, ACTS = 5, HARDCORE = 0, EXPANSION = 1, REWARDS = 2,
+                            FLAGS = REWARDS + D2QuestRewards.NAMES.length, LEVEL_BITS = 7, INITIAL_ROWS = 1024;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> rows = new HashMap<>();
+    private final Map<String, PostingList> itemTypes = new HashMap<>();
+    private int size;
+
+    // Columns, indexed by row
+    private String[] names = new String[INITIAL_ROWS];
+    private String[][] rowItemTypes = new String[INITIAL_ROWS][];
+
+    // Bitsets, indexed by value (or bit of the level) then by word of rows
+    private long[][] classBits = new long[CLASSES][INITIAL_ROWS / 64], difficultyBits = new long[DIFFICULTIES][INITIAL_ROWS / 64],
+                    actBits = new long[ACTS][INITIAL_ROWS / 64], flagBits = new long[FLAGS][INITIAL_ROWS / 64],
+                    levelBits = new long[LEVEL_BITS][INITIAL_ROWS / 64];
+
+    // Rows with an item type, in increasing order
+    private static class PostingList {
+        private int[] rows = new int[8];
+        private int size;
+
+        private void add(int row) {
+            int i = Arrays.binarySearch(rows, 0, size, row);
+            if(i >= 0)
+                return;
+
+            i = -i - 1;
+            if(size == rows.length)
+                rows = Arrays.copyOf(rows, size * 2);
+            System.arraycopy(rows, i, rows, i + 1, size - i);
+            rows[i] = row;
+            size++;
+        }
+
+        private void remove(int row) {
+            int i = Arrays.binarySearch(rows, 0, size, row);
+            if(i >= 0) {
+                System.arraycopy(rows, i + 1, rows, i, size - i - 1);
+                size--;
+            }
+        }
+    }
+
+    /**
+     * Add a save, or update its row if a save with the same name was indexed before.
+     */
+    public void put(D2Save save) {
+        lock.writeLock().lock();
+        try {
+            index(save);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void putAll(Collection<D2Save> saves) {
+        lock.writeLock().lock();
+        try {
+            for(D2Save save : saves)
+                index(save);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void index(D2Save save) {
+        Integer existing = rows.get(save.getName());
+        int row = existing != null ? existing : size;
+        if(existing == null) {
+            grow(size + 1);
+            rows.put(save.getName(), row);
+            names[row] = save.getName();
+            size++;
+        }
+
+        for(int i = 0; i < LEVEL_BITS; i++)
+            set(levelBits[i], row, (save.getLevel() >> i & 1) != 0);
+        for(int i = 0; i < CLASSES; i++)
+            set(classBits[i], row, save.getClassNum() == i);
+        for(int i = 0; i < DIFFICULTIES; i++)
+            set(difficultyBits[i], row, getDifficulty(save) == i);
+        for(int i = 0; i < ACTS; i++)
+            set(actBits[i], row, save.getStartingAct() == i);
+
+        int rewards = save.getEarnedRewards().toBits();
+        set(flagBits[HARDCORE], row, save.isHardcore());
+        set(flagBits[EXPANSION], row, save.isExpansion());
+        for(int i = 0; i < D2QuestRewards.NAMES.length; i++)
+            set(flagBits[REWARDS + i], row, (rewards & 1 << i) != 0);
+
+        if(rowItemTypes[row] != null)
+            for(String type : rowItemTypes[row])
+                itemTypes.get(type).remove(row);
+        rowItemTypes[row] = getItemTypes(save);
+        for(String type : rowItemTypes[row])
+            itemTypes.computeIfAbsent(type, key -> new PostingList()).add(row);
+    }
+
+    // Active difficulty as written to the save: 0 for normal, 1 for nightmare, 2 for hell
+    private static int getDifficulty(D2Save save) {
+        return Math.min(save.getDifficulty() / 5, DIFFICULTIES - 1);
+    }
+
+    // Types of the items the writer adds to the save
+    private static String[] getItemTypes(D2Save save) {
+        Set<String> types = new LinkedHashSet<>();
+        if(save.isRejuv())
+            types.add("rvl");
+        for(D2Placement.Storage storage : D2Placement.Storage.values())
+            for(D2ItemForm item : save.getItems(storage))
+                types.add(item.getType());
+        for(D2ItemForm item : save.getCorpse())
+            types.add(item.getType());
+        if(save.getGolem() != null)
+            types.add(save.getGolem().getType());
+        return types.toArray(new String[0]);
+    }
+
+    private void grow(int minRows) {
+        if(minRows <= names.length)
+            return;
+
+        int rowCapacity = names.length * 2, words = rowCapacity / 64;
+        names = Arrays.copyOf(names, rowCapacity);
+        rowItemTypes = Arrays.copyOf(rowItemTypes, rowCapacity);
+        for(long[][] bitsets : new long[][][]{classBits, difficultyBits, actBits, flagBits, levelBits})
+            for(int i = 0; i < bitsets.length; i++)
+                bitsets[i] = Arrays.copyOf(bitsets[i], words);
+    }
+
+    private static void set(long[] bits, int row, boolean value) {
+        if(value)
+            bits[row >>> 6] |= 1L << row;
+        else
+            bits[row >>> 6] &= ~(1L << row);
+    }
+
+    /**
+     * Find the saves matching every filter of the query.
+     * @return the total number of matches and the names of the requested page of them, in the order they were indexed
+     */
+    public JsonObject query(D2SaveQuery query) {
+        long start = System.nanoTime();
+        lock.readLock().lock();
+        try {
+            long[] match = evaluate(query);
+            long total = 0;
+            for(long word : match)
+                total += Long.bitCount(word);
+
+            JsonArray page = new JsonArray();
+            long skip = query.getOffset();
+            for(int w = 0; w < match.length && page.size() < query.getLimit(); w++) {
+                long word = match[w];
+                int count = Long.bitCount(word);
+                if(skip >= count) {
+                    skip -= count;
+                    continue;
+                }
+
+                for(; word != 0 && page.size() < query.getLimit(); word &= word - 1) {
+                    if(skip > 0)
+                        skip--;
+                    else
+                        page.add(names[w * 64 + Long.numberOfTrailingZeros(word)]);
+                }
+            }
+
+            JsonObject result = new JsonObject();
+            result.add("total", new JsonPrimitive(total));
+            result.add("offset", new JsonPrimitive(query.getOffset()));
+            result.add("names", page);
+            result.add("micros", new JsonPrimitive((System.nanoTime() - start) / 1000));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Bitset of the rows matching the query
+    private long[] evaluate(D2SaveQuery query) {
+        int words = (size + 63) >>> 6;
+        long[] match = new long[words];
+        Arrays.fill(match, -1L);
+        if(size % 64 != 0)
+            match[words - 1] = (1L << size) - 1;
+
+        and(match, classBits, query.getClassNum());
+        and(match, difficultyBits, query.getDifficulty());
+        and(match, actBits, query.getAct());
+        and(match, flagBits[HARDCORE], query.getHardcore());
+        and(match, flagBits[EXPANSION], query.getExpansion());
+
+        if(query.getRewards() != null && !query.getRewards().isEmpty()) {
+            for(String reward : query.getRewards().split(",")) {
+                int i = Arrays.asList(D2QuestRewards.NAMES).indexOf(reward.trim());
+                if(i < 0)
+                    throw new IllegalArgumentException("Unknown reward " + reward);
+                and(match, flagBits[REWARDS + i], true);
+            }
+        }
+
+        if(query.getItemType() != null) {
+            PostingList list = itemTypes.get(query.getItemType());
+            long[] bits = new long[words];
+            if(list != null)
+                for(int i = 0; i < list.size; i++)
+                    bits[list.rows[i] >>> 6] |= 1L << list.rows[i];
+            and(match, bits, true);
+        }
+
+        if(query.getMinLevel() != null)
+            andLevelAtLeast(match, query.getMinLevel());
+        if(query.getMaxLevel() != null)
+            andLevelAtMost(match, query.getMaxLevel());
+        return match;
+    }
+
+    // Compare the level slices to the bound from the highest bit down. A row is greater once it has a 1 where the bound
+    // has a 0, while all higher bits were equal.
+    private void andLevelAtLeast(long[] match, int min) {
+        if(min <= 0)
+            return;
+        if(min >= 1 << LEVEL_BITS) {
+            Arrays.fill(match, 0);
+            return;
+        }
+
+        for(int w = 0; w < match.length; w++) {
+            long greater = 0, equal = -1L;
+            for(int b = LEVEL_BITS - 1; b >= 0; b--) {
+                long slice = levelBits[b][w];
+                if((min >> b & 1) != 0)
+                    equal &= slice;
+                else {
+                    greater |= equal & slice;
+                    equal &= ~slice;
+                }
+            }
+            match[w] &= greater | equal;
+        }
+    }
+
+    private void andLevelAtMost(long[] match, int max) {
+        if(max >= 1 << LEVEL_BITS)
+            return;
+        if(max < 0) {
+            Arrays.fill(match, 0);
+            return;
+        }
+
+        for(int w = 0; w < match.length; w++) {
+            long less = 0, equal = -1L;
+            for(int b = LEVEL_BITS - 1; b >= 0; b--) {
+                long slice = levelBits[b][w];
+                if((max >> b & 1) != 0) {
+                    less |= equal & ~slice;
+                    equal &= slice;
+                } else
+                    equal &= ~slice;
+            }
+            match[w] &= less | equal;
+        }
+    }
+
+    // Keep the rows of the value's bitset, or none if the value is out of range
+    private static void and(long[] match, long[][] bitsets, Integer value) {
+        if(value == null)
+            return;
+        if(value < 0 || value >= bitsets.length)
+            Arrays.fill(match, 0);
+        else
+            and(match, bitsets[value], true);
+    }
+
+    private static void and(long[] match, long[] bits, Boolean value) {
+        if(value == null)
+            return;
+        if(value)
+            for(int i = 0; i < match.length; i++)
+                match[i] &= bits[i];
+        else
+            for(int i = 0; i < match.length; i++)
+                match[i] &= ~bits[i];
+    }
+}
@@ -0,0 +1,106 @@
+package com.iamtechknow.d2sbackend;
+
+/**
+ * POJO with the filters of a save query, bound from request parameters. Unset filters match every save.
+ */
+public class D2SaveQuery {
+    public static final int DEFAULT_LIMIT = 100, MAX_LIMIT = 1000;
+
+    private Integer classNum, minLevel, maxLevel, difficulty, act;
+    private Boolean hardcore, expansion;
+
+    // Comma separated reward names from D2QuestRewards.NAMES, all of which must be set
+    private String rewards;
+    private String itemType;
+
+    private int offset, limit = DEFAULT_LIMIT;
+
+    public Integer getClassNum() {
+        return classNum;
+    }
+
+    public void setClassNum(Integer classNum) {
+        this.classNum = classNum;
+    }
+
+    public Integer getMinLevel() {
+        return minLevel;
+    }
+
+    public void setMinLevel(Integer minLevel) {
+        this.minLevel = minLevel;
+    }
+
+    public Integer getMaxLevel() {
+        return maxLevel;
+    }
+
+    public void setMaxLevel(Integer maxLevel) {
+        this.maxLevel = maxLevel;
+    }
+
+    // Current difficulty: 0 for normal, 1 for nightmare, 2 for hell
+    public Integer getDifficulty() {
+        return difficulty;
+    }
+
+    public void setDifficulty(Integer difficulty) {
+        this.difficulty = difficulty;
+    }
+
+    public Integer getAct() {
+        return act;
+    }
+
+    public void setAct(Integer act) {
+        this.act = act;
+    }
+
+    public Boolean getHardcore() {
+        return hardcore;
+    }
+
+    public void setHardcore(Boolean hardcore) {
+        this.hardcore = hardcore;
+    }
+
+    public Boolean getExpansion() {
+        return expansion;
+    }
+
+    public void setExpansion(Boolean expansion) {
+        this.expansion = expansion;
+    }
+
+    public String getRewards() {
+        return rewards;
+    }
+
+    public void setRewards(String rewards) {
+        this.rewards = rewards;
+    }
+
+    public String getItemType() {
+        return itemType;
+    }
+
+    public void setItemType(String itemType) {
+        this.itemType = itemType;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public void setOffset(int offset) {
+        this.offset = Math.max(0, offset);
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = Math.max(0, Math.min(limit, MAX_LIMIT));
+    }
+}
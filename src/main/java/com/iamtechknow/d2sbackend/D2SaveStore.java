@@ -0,0 +1,50 @@
+package com.iamtechknow.d2sbackend;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Saves available for download, by name, together with the index used to query them.
+ * All writes go through here so the index stays in sync with the cache.
+ */
+@Component
+public class D2SaveStore {
+    private Map<String, D2Save> cache;
+    private final D2SaveIndex index = new D2SaveIndex();
+
+    @Autowired
+    public D2SaveStore(@Qualifier("map") Map<String, D2Save> map) {
+        cache = map;
+        index.putAll(map.values());
+    }
+
+    public D2Save get(String name) {
+        return cache.get(name);
+    }
+
+    public boolean contains(String name) {
+        return cache.containsKey(name);
+    }
+
+    public void put(D2Save save) {
+        cache.put(save.getName(), save);
+        index.put(save);
+    }
+
+    // Add a group of saves, keyed by name, with one update of the index
+    public void putAll(Map<String, D2Save> saves) {
+        cache.putAll(saves);
+        index.putAll(saves.values());
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public D2SaveIndex getIndex() {
+        return index;
+    }
+}
@@ -0,0 +1,121 @@
+package com.iamtechknow.d2sbackend;
+
+/**
+ * Skill trees of each class, the same as the frontend's class data: the character level each skill needs and the
+ * skills it depends on, by index into the 30 skills of the save. Both are kept as bitsets of skills, so checking an
+ * allocation is a few bitwise operations, and the same bitsets tell which skills are wrong.
+ */
+public class D2SkillTrees {
+    public static final int NUM_SKILLS = 30, MAX_POINTS = 20;
+    private static final int MAX_LEVEL = 99;
+
+    // ID of the first skill of each class, the others follow in save order
+    private static final int[] FIRST_IDS = {6, 36, 66, 96, 126, 221, 251};
+
+    // Per class, for each skill in save order: the level it needs, then the skills it depends on
+    private static final int[][][] TREES = {
+        { // Amazon, from skill 6
+            {1}, {1}, {1}, {1}, {1}, {6}, {6, 0}, {6}, {6, 4}, {6},
+            {12, 1, 6}, {12, 2}, {12, 7}, {12, 4}, {12, 9}, {18, 5}, {18, 5, 6}, {18, 3}, {18, 8, 14}, {18, 14},
+            {24, 16}, {24, 10}, {24, 11}, {24, 12}, {24, 13}, {30, 15}, {30, 22, 23}, {30, 17}, {30, 18}, {30, 19}
+        },
+        { // Sorceress, from skill 36
+            {1}, {1}, {1}, {1}, {1}, {6}, {6}, {6}, {6}, {6, 3},
+            {12, 5}, {12, 0}, {12, 6}, {12, 2}, {12, 4, 9}, {18, 10}, {18, 1, 11}, {18, 13}, {18, 7}, {18, 9},
+            {24, 11, 15}, {24, 12, 17}, {24, 17, 18}, {24, 8, 19}, {24, 14}, {30}, {30, 16}, {30}, {30, 23}, {30}
+        },
+        { // Necromancer, from skill 66
+            {1}, {1}, {1}, {1, 4}, {1}, {6}, {6, 0}, {6}, {6, 1}, {6},
+            {12, 0}, {12, 6}, {12, 2}, {12, 9}, {12, 4}, {18, 5}, {18, 10}, {18, 7, 8}, {18, 8}, {18, 9},
+            {24, 15}, {24, 11}, {24, 12, 18}, {24, 13}, {24, 19}, {30, 16, 21}, {30, 17}, {30, 18}, {30, 24}, {30, 14, 24}
+        },
+        { // Paladin, from skill 96
+            {1}, {1}, {1}, {1}, {1}, {6}, {6, 2}, {6}, {6}, {6},
+            {12, 0}, {12, 1}, {12, 2}, {12, 3}, {12}, {18, 10}, {18, 5}, {18, 12}, {18, 6}, {18, 8, 13},
+            {24, 15}, {24, 11, 16}, {24, 18}, {24, 7, 18}, {24, 13}, {30, 16, 20}, {30, 17}, {30, 23}, {30, 19}, {30}
+        },
+        { // Barbarian, from skill 126
+            {1}, {1}, {1}, {1}, {1}, {1}, {6}, {6, 0}, {6}, {6},
+            {6}, {6, 4}, {6, 4}, {12, 0}, {12, 7}, {12}, {12, 5}, {18, 6}, {18, 13}, {18},
+            {18, 11}, {24, 14}, {24, 15}, {24, 12}, {24, 16}, {30, 17, 18}, {30, 18}, {30, 19}, {30, 20, 23}, {30, 23}
+        },
+        { // Druid, from skill 221
+            {1}, {1}, {1}, {1, 2}, {1}, {6}, {6, 0}, {6}, {6, 4}, {6},
+            {12, 1}, {12, 2}, {12, 7}, {12, 8}, {12, 9}, {18, 5}, {18, 5, 6}, {18, 11}, {18, 11, 12}, {18, 14},
+            {24, 10}, {24, 18}, {24, 12}, {24, 13}, {24, 19}, {30, 15}, {30, 16}, {30, 17}, {30, 23, 29}, {30, 24}
+        },
+        { // Assassin, from skill 251
+            {1}, {1}, {1}, {1}, {1}, {6, 0}, {6}, {6, 1}, {6}, {6, 4},
+            {12, 5}, {12, 0}, {12, 1}, {12, 2}, {12, 3}, {18, 6, 11}, {18, 7}, {18, 12, 13}, {18, 5}, {18, 9},
+            {24, 10}, {24, 11}, {24, 13}, {24, 18}, {24, 19}, {30, 20}, {30, 15}, {30, 16}, {30, 17}, {30, 14, 23}
+        }
+    };
+
+    // Per class: the skills each skill depends on, and the skills that may have points at each character level
+    private static final int[][] PREREQS = new int[TREES.length][NUM_SKILLS],
+                                 AVAILABLE = new int[TREES.length][MAX_LEVEL + 1];
+
+    static {
+        for(int cls = 0; cls < TREES.length; cls++) {
+            for(int skill = 0; skill < NUM_SKILLS; skill++) {
+                int[] entry = TREES[cls][skill];
+                for(int i = 1; i < entry.length; i++)
+                    PREREQS[cls][skill] |= 1 << entry[i];
+                for(int level = entry[0]; level <= MAX_LEVEL; level++)
+                    AVAILABLE[cls][level] |= 1 << skill;
+            }
+        }
+    }
+
+    public static boolean isClass(int classNum) {
+        return classNum >= 0 && classNum < TREES.length;
+    }
+
+    public static int getSkillId(int classNum, int skill) {
+        return FIRST_IDS[classNum] + skill;
+    }
+
+    public static int getRequiredLevel(int classNum, int skill) {
+        return TREES[classNum][skill][0];
+    }
+
+    /**
+     * Checks that no skill has more than 20 points, and that every skill with points is available at the level
+     * and has points in the skills it depends on. The points left are up to the caller.
+     */
+    public static boolean isValid(int classNum, int level, int[] skills) {
+        if(!isClass(classNum) || level < 1 || level > MAX_LEVEL || skills == null || skills.length != NUM_SKILLS)
+            return false;
+
+        int allocated = 0, required = 0;
+        int[] prereqs = PREREQS[classNum];
+        for(int i = 0; i < NUM_SKILLS; i++) {
+            if(skills[i] < 0 || skills[i] > MAX_POINTS)
+                return false;
+            if(skills[i] > 0) {
+                allocated |= 1 << i;
+                required |= prereqs[i];
+            }
+        }
+        return (allocated & ~AVAILABLE[classNum][level]) == 0 && (required & ~allocated) == 0;
+    }
+
+    // Bitset of the skills with points
+    public static int getAllocated(int[] skills) {
+        int allocated = 0;
+        for(int i = 0; i < NUM_SKILLS; i++)
+            if(skills[i] > 0)
+                allocated |= 1 << i;
+        return allocated;
+    }
+
+    // Skills of a bitset the character is below the level of
+    public static int getUnavailable(int classNum, int level, int skills) {
+        return skills & ~AVAILABLE[classNum][Math.max(0, Math.min(level, MAX_LEVEL))];
+    }
+
+    // Skills a skill depends on that are not in the allocated bitset
+    public static int getMissing(int classNum, int skill, int allocated) {
+        return PREREQS[classNum][skill] & ~allocated;
+    }
+}
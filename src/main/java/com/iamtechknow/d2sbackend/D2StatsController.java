@@ -0,0 +1,33 @@
+package com.iamtechknow.d2sbackend;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * Exposes runtime statistics of the backend as JSON.
+ */
+@Controller
+public class D2StatsController {
+    private D2RateLimitInterceptor rateLimitInterceptor;
+    private D2AuditLog audit;
+
+    @Autowired
+    public D2StatsController(D2RateLimitInterceptor rateLimitInterceptor, D2AuditLog audit) {
+        this.rateLimitInterceptor = rateLimitInterceptor;
+        this.audit = audit;
+    }
+
+    @GetMapping(value = "/api/stats/ratelimit", produces = "application/json")
+    @ResponseBody
+    public String getRateLimitStats() {
+        return rateLimitInterceptor.getStats().toString();
+    }
+
+    @GetMapping(value = "/api/stats/audit", produces = "application/json")
+    @ResponseBody
+    public String getAuditStats() {
+        return audit.getStats().toString();
+    }
+}
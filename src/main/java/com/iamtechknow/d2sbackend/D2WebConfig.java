@@ -0,0 +1,66 @@
+package com.iamtechknow.d2sbackend;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.resource.EncodedResourceResolver;
+
+import javax.servlet.Filter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Serves the Webpack output through a resource chain that picks the gzipped copy of an asset
+ * when the client accepts it. Fingerprinted assets never change, so they are cached as immutable.
+ * Also applies rate limiting to the endpoints that encode saves.
+ */
+@Configuration
+public class D2WebConfig implements WebMvcConfigurer {
+    // Webpack content hashes are 20 hex characters, e.g. bundle.0123456789abcdef0123.js
+    private static final Pattern FINGERPRINTED = Pattern.compile(".*\\.[0-9a-f]{20}\\.[a-z]+(\\.map)?$");
+    private static final String IMMUTABLE = CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().getHeaderValue() + ", immutable";
+
+    private D2RateLimitInterceptor rateLimitInterceptor;
+
+    @Autowired
+    public D2WebConfig(D2RateLimitInterceptor rateLimitInterceptor) {
+        this.rateLimitInterceptor = rateLimitInterceptor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(rateLimitInterceptor).addPathPatterns("/", "/preview", "/trace", "/download/**", "/sweep.zip",
+            "/api/catalog/*/properties");
+    }
+
+    @Override
+    public void addResourceHandlers(ResourceHandlerRegistry registry) {
+        registry.addResourceHandler("/dist/**")
+            .addResourceLocations("/dist/")
+            .resourceChain(true)
+            .addResolver(new EncodedResourceResolver());
+    }
+
+    // CacheControl has no immutable directive, so the header is set before the resource handler runs.
+    // The handler has no cache settings of its own and leaves it as is.
+    @Bean
+    public FilterRegistrationBean<Filter> immutableCacheFilter() {
+        Filter filter = (request, response, chain) -> {
+            if(FINGERPRINTED.matcher(((HttpServletRequest) request).getRequestURI()).matches())
+                ((HttpServletResponse) response).setHeader(HttpHeaders.CACHE_CONTROL, IMMUTABLE);
+            chain.doFilter(request, response);
+        };
+
+        FilterRegistrationBean<Filter> registration = new FilterRegistrationBean<>(filter);
+        registration.addUrlPatterns("/dist/*");
+        return registration;
+    }
+}
@@ -1,9 +1,9 @@
 package com.iamtechknow.d2sbackend;
 
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -14,10 +14,14 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
 import java.io.ByteArrayOutputStream;
-import java.util.Map;
 
 /**
  * Main controller that maps site URLs to specific views.
@@ -25,40 +29,148 @@ import java.util.Map;
  */
 @Controller
 public class D2sController {
-    private Map<String, D2Save> cache;
+    private static final String EDIT_SESSION = "editSession";
+
+    private D2SaveStore cache;
+    private D2IndexPage indexPage;
+    private D2AuditLog audit;
+    private D2RateLimitInterceptor rateLimitInterceptor;
 
     @Autowired
-    public D2sController(@Qualifier("map") Map<String, D2Save> map) {
-        cache = map;
+    public D2sController(D2SaveStore store, D2IndexPage indexPage, D2AuditLog audit, D2RateLimitInterceptor rateLimitInterceptor) {
+        cache = store;
+        this.indexPage = indexPage;
+        this.audit = audit;
+        this.rateLimitInterceptor = rateLimitInterceptor;
     }
 
+    // The index page is rendered at startup, so just send it from memory
     @GetMapping("/")
-    public String d2sForm(Model model) {
-        return "index";
+    public ResponseEntity<byte[]> d2sForm(@RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                          @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return indexPage.getPage().toResponse(acceptEncoding, ifNoneMatch);
     }
 
     // Check the save model (parsed from POST data by data binding), then return JSON representing the validation status.
     @PostMapping(value = "/", produces = "application/json")
     @ResponseBody
-    public String d2sSubmit(@ModelAttribute D2Save save, Model model) {
+    public String d2sSubmit(@ModelAttribute D2Save save, Model model, HttpServletRequest request) {
         JsonObject result = new JsonObject();
         if(save.checkValid()) {
-            cache.put(save.getName(), save);
+            cache.put(save);
+            audit.submit(rateLimitInterceptor.getClientKey(request), save);
             result.add("link", new JsonPrimitive(String.format("/download/%s.d2s", save.getName())));
         }
         result.add("valid", new JsonPrimitive(!save.isInvalid()));
         return result.toString();
     }
 
+    /**
+     * Preview the save for the current state of the form. Sections are kept in the user's session between calls,
+     * so only those affected by the change are encoded. Returns the validity and size of the save as JSON.
+     */
+    @PostMapping(value = "/preview", produces = "application/json")
+    @ResponseBody
+    public String d2sPreview(@ModelAttribute D2Save save, HttpSession session) {
+        D2sEditSession edits = (D2sEditSession) session.getAttribute(EDIT_SESSION);
+        if(edits == null) {
+            edits = new D2sEditSession();
+            session.setAttribute(EDIT_SESSION, edits);
+        }
+
+        JsonObject result = new JsonObject();
+        result.add("encoded", new JsonPrimitive(edits.update(save)));
+        result.add("valid", new JsonPrimitive(edits.isValid()));
+        result.add("size", new JsonPrimitive(edits.size()));
+        return result.toString();
+    }
+
+    /**
+     * Encode the save of the form with a trace, and return where each section and field went, either as JSON or as
+     * text annotating the bytes in hex.
+     */
+    @PostMapping("/trace")
+    public ResponseEntity<String> d2sTrace(@ModelAttribute D2Save save,
+                                           @RequestParam(value = "format", defaultValue = "json") String format) {
+        if(!save.checkValid() || !(format.equals("json") || format.equals("hex")))
+            return ResponseEntity.badRequest().build();
+
+        D2BitTrace trace = new D2BitTrace();
+        D2sWriter writer = new D2sWriter(new ByteArrayOutputStream(), trace);
+        writer.write(save);
+        byte[] data = writer.toByteArray();
+
+        if(format.equals("hex"))
+            return ResponseEntity.ok().contentType(MediaType.TEXT_PLAIN).body(trace.toHex(data));
+
+        JsonObject result = new JsonObject();
+        result.add("size", new JsonPrimitive(data.length));
+        result.add("fields", trace.toJson());
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(result.toString());
+    }
+
+    /**
+     * Check the skill allocation of the form, returning every error at once and the skill points left,
+     * so it can be checked on each change of the form.
+     */
+    @PostMapping(value = "/skills", produces = "application/json")
+    public ResponseEntity<String> d2sSkills(@ModelAttribute D2Save save) {
+        int[] skills = save.getSkills();
+        if(!D2SkillTrees.isClass(save.getClassNum()) || save.getLevel() < 1 || save.getLevel() > 99 ||
+                skills == null || skills.length != D2SkillTrees.NUM_SKILLS)
+            return ResponseEntity.badRequest().build();
+
+        D2CharacterAttributes attrs = new D2CharacterAttributes(save);
+        JsonObject result = new JsonObject();
+        result.add("valid", new JsonPrimitive(attrs.getSkillPoints() >= 0 &&
+            D2SkillTrees.isValid(save.getClassNum(), attrs.getLevel(), skills)));
+        result.add("points", new JsonPrimitive(attrs.getSkillPoints()));
+        result.add("errors", getSkillErrors(save.getClassNum(), attrs.getLevel(), skills));
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(result.toString());
+    }
+
+    /**
+     * Every error of a skill allocation: for each wrong skill its index and ID, its points if there are too many,
+     * the level it needs if the character is below it, and the IDs of the skills it depends on that have no points.
+     */
+    private static JsonArray getSkillErrors(int classNum, int level, int[] skills) {
+        JsonArray errors = new JsonArray();
+        int allocated = D2SkillTrees.getAllocated(skills), unavailable = D2SkillTrees.getUnavailable(classNum, level, allocated);
+        for(int i = 0; i < D2SkillTrees.NUM_SKILLS; i++) {
+            boolean points = skills[i] < 0 || skills[i] > D2SkillTrees.MAX_POINTS;
+            int missing = skills[i] > 0 ? D2SkillTrees.getMissing(classNum, i, allocated) : 0;
+            if(!points && (unavailable & 1 << i) == 0 && missing == 0)
+                continue;
+
+            JsonObject error = new JsonObject();
+            error.add("skill", new JsonPrimitive(i));
+            error.add("id", new JsonPrimitive(D2SkillTrees.getSkillId(classNum, i)));
+            if(points)
+                error.add("points", new JsonPrimitive(skills[i]));
+            if((unavailable & 1 << i) != 0)
+                error.add("level", new JsonPrimitive(D2SkillTrees.getRequiredLevel(classNum, i)));
+            if(missing != 0) {
+                JsonArray deps = new JsonArray();
+                for(int bits = missing; bits != 0; bits &= bits - 1)
+                    deps.add(D2SkillTrees.getSkillId(classNum, Integer.numberOfTrailingZeros(bits)));
+                error.add("missing", deps);
+            }
+            errors.add(error);
+        }
+        return errors;
+    }
+
     /**
      * Map download URLs to a corresponding file if it exists, and generate the save file to be downloaded.
      * Otherwise send a 404 error.
      */
     @GetMapping("/download/{file_name}.d2s")
-    public ResponseEntity<byte[]> getFile(@PathVariable("file_name") String fileName) {
+    public ResponseEntity<byte[]> getFile(@PathVariable("file_name") String fileName, HttpServletRequest request) {
         if(fileExists(fileName)) {
+            D2Save save = cache.get(fileName);
             D2sWriter writer = new D2sWriter(new ByteArrayOutputStream());
-            writer.write(cache.get(fileName));
+            writer.write(save);
+            audit.download(rateLimitInterceptor.getClientKey(request), save, writer.size());
 
             HttpHeaders header = new HttpHeaders();
             header.setContentType(MediaType.APPLICATION_OCTET_STREAM);
@@ -69,7 +181,38 @@ public class D2sController {
             throw new ResourceNotFoundException();
     }
 
+    /**
+     * Stream a ZIP with a save for every combination of the given classes, levels, difficulties and acts.
+     * The remaining query parameters are bound to a template save, whose name is used as the name prefix.
+     * Returns 400 for values outside the game's classes, levels, difficulties and acts, or more combinations than
+     * the full matrix has.
+     */
+    @GetMapping("/sweep.zip")
+    public ResponseEntity<StreamingResponseBody> getSweep(@ModelAttribute D2Save template,
+                                                          @RequestParam(defaultValue = "0-6") String classes,
+                                                          @RequestParam(defaultValue = "1-99") String levels,
+                                                          @RequestParam(defaultValue = "0,5,10") String difficulties,
+                                                          @RequestParam(defaultValue = "0-4") String acts) {
+        D2sSweep sweep;
+        try {
+            sweep = new D2sSweep.Builder(template)
+                .setClasses(D2sSweep.parseValues(classes, 0, D2sSweep.MAX_CLASS))
+                .setLevels(D2sSweep.parseValues(levels, D2sSweep.MIN_LEVEL, D2sSweep.MAX_LEVEL))
+                .setDifficulties(D2sSweep.parseValues(difficulties, 0, 10))
+                .setActs(D2sSweep.parseValues(acts, 0, D2sSweep.MAX_ACT))
+                .build();
+        } catch(IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        HttpHeaders header = new HttpHeaders();
+        header.setContentType(MediaType.parseMediaType("application/zip"));
+        header.setContentDispositionFormData("attachment", "sweep.zip");
+
+        return new ResponseEntity<>(sweep::writeToZip, header, HttpStatus.OK);
+    }
+
     private boolean fileExists(String fileName) {
-        return cache.containsKey(fileName);
+        return cache.contains(fileName);
     }
 }
@@ -0,0 +1,224 @@
+package com.iamtechknow.d2sbackend;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Edit state for a user that keeps every encoded section of the save between form changes.
+ * On each change only the sections whose inputs differ from the previous change are encoded again,
+ * then the sections are gathered and checksummed. Stored in the HTTP session.
+ */
+public class D2sEditSession implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final D2sWriter.Section[] SECTIONS = D2sWriter.Section.values();
+    private static final D2Placement.Storage[] STORAGES = D2Placement.Storage.values();
+    // Values of a stored item that its encoding depends on
+    private static final int ITEM_INPUTS = 10, HIRELING_INPUTS = 6;
+    // Largest save whose sections are kept. Storages bound a valid save to a few kilobytes, well under this, so it
+    // only limits what a session can hold if saves grow, such as through larger storages in the game data
+    static final int MAX_KEPT_SIZE = 64 * 1024;
+
+    // Encoded sections and the inputs they were encoded from, indexed by section ordinal
+    private final byte[][] sections = new byte[SECTIONS.length][];
+    private final int[][] inputs = new int[SECTIONS.length][];
+
+    private byte[] file;
+    private int size;
+    private boolean valid;
+
+    // Version of the encoded sections and generation of the game data they were encoded with. Every section
+    // depends on them, so a change encodes them all again.
+    private int version, dataGeneration;
+
+    /**
+     * Validate the save, and if valid re-encode the sections affected by the change.
+     * @return the number of sections that were encoded
+     */
+    public synchronized int update(D2Save save) {
+        valid = save.checkValid();
+        if(!valid)
+            return 0;
+
+        int generation = D2GameData.current().getGeneration();
+        if(save.getVersion() != version || generation != dataGeneration) {
+            Arrays.fill(sections, null);
+            version = save.getVersion();
+            dataGeneration = generation;
+        }
+
+        int encoded = 0;
+        for(D2sWriter.Section section : SECTIONS) {
+            int idx = section.ordinal();
+            int[] curr = getInputs(section, save);
+            if(sections[idx] == null || curr == null || !Arrays.equals(curr, inputs[idx])) {
+                sections[idx] = D2sWriter.encodeSection(section, save);
+                inputs[idx] = curr;
+                encoded++;
+            }
+        }
+
+        file = D2sWriter.gather(sections);
+        size = file.length;
+        if(size > MAX_KEPT_SIZE) {
+            Arrays.fill(sections, null);
+            Arrays.fill(inputs, null);
+            file = null;
+        }
+        return encoded;
+    }
+
+    public synchronized boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * @return size of the save from the last valid update, or 0 if there is none
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the save from the last valid update, or null if there is none or it was too large to keep
+     */
+    public synchronized byte[] toByteArray() {
+        return file;
+    }
+
+    /**
+     * Collect every value of the save model that a section is encoded from.
+     * Two saves with equal inputs for a section encode that section to the same bytes.
+     * @return the inputs, or null if the section must always be encoded again
+     */
+    private int[] getInputs(D2sWriter.Section section, D2Save save) {
+        switch(section) {
+            case HEADER:
+                int[] arr = new int[save.getName().length() + 6 + HIRELING_INPUTS];
+                for(int i = 0; i < save.getName().length(); i++)
+                    arr[i] = save.getName().charAt(i);
+                int idx = save.getName().length();
+                arr[idx++] = save.isHardcore() ? 1 : 0;
+                arr[idx++] = save.isExpansion() ? 1 : 0;
+                arr[idx++] = save.getDifficulty();
+                arr[idx++] = save.getClassNum();
+                arr[idx++] = save.getLevel();
+                arr[idx++] = save.getStartingAct();
+                addHirelingInputs(arr, idx, save.isExpansion() ? save.getHireling() : null);
+                return arr;
+            case QUESTS:
+                if(save.getProgress() != null)
+                    return save.getProgress().toInts(true);
+                return new int[]{save.getDifficulty(), save.getStartingAct(), save.isExpansion() ? 1 : 0,
+                    save.getRewards().toBits()};
+            case WAYPOINTS:
+                if(save.getProgress() != null)
+                    return save.getProgress().toInts(false);
+                return new int[]{save.getDifficulty(), save.getStartingAct()};
+            case ATTRIBUTES:
+                return new int[]{save.getClassNum(), save.getLevel(), save.getStr(), save.getDex(), save.getVit(),
+                    save.getNrg(), save.getGold(), save.getStashGold(), save.getDifficulty(), save.getStartingAct(),
+                    save.isExpansion() ? 1 : 0, save.getEarnedRewards().toBits(), Arrays.stream(save.getSkills()).sum(),
+                    getTimesDone(save, D2Progress.LAM_ESEN), getTimesDone(save, D2Progress.SKILL_BOOK)};
+            case SKILLS:
+                return save.getSkills().clone();
+            case ITEMS:
+                return getItemInputs(save);
+            case HIRELING:
+                return getHirelingInputs(save);
+            case CORPSE:
+                return getCorpseInputs(save);
+            case GOLEM:
+                int[] golem = new int[2 + ITEM_INPUTS];
+                golem[0] = save.isExpansion() ? 1 : 0;
+                golem[1] = save.getGolem() != null ? 1 : 0;
+                return addItemInputs(golem, 2, save.getGolem()) < 0 ? null : golem;
+            default: // Sections that never change
+                return new int[0];
+        }
+    }
+
+    // The rejuv flag and the size of each storage, then every value each stored item is built from once placed
+    private static int[] getItemInputs(D2Save save) {
+        int count = 0;
+        for(D2Placement.Storage storage : STORAGES)
+            count += save.getItems(storage).size();
+
+        int[] arr = new int[1 + STORAGES.length + count * ITEM_INPUTS];
+        int idx = 0;
+        arr[idx++] = save.isRejuv() ? 1 : 0;
+        for(D2Placement.Storage storage : STORAGES)
+            arr[idx++] = save.getItems(storage).size();
+
+        for(D2Placement.Storage storage : STORAGES)
+            for(D2ItemForm item : save.getItems(storage))
+                if((idx = addItemInputs(arr, idx, item)) < 0)
+                    return null;
+        return arr;
+    }
+
+    // Difficulties the progress has a quest done in, which its attribute bonuses depend on, or -1 without progress
+    private static int getTimesDone(D2Save save, int quest) {
+        D2Progress progress = save.getProgress();
+        return progress != null && progress.checkValid() ? progress.countDone(quest, save.getDifficulty()) : -1;
+    }
+
+    // The number of corpse items, then the values of each
+    private static int[] getCorpseInputs(D2Save save) {
+        int[] arr = new int[1 + save.getCorpse().size() * ITEM_INPUTS];
+        arr[0] = save.getCorpse().size();
+        int idx = 1;
+        for(D2ItemForm item : save.getCorpse())
+            if((idx = addItemInputs(arr, idx, item)) < 0)
+                return null;
+        return arr;
+    }
+
+    // The expansion flag, the mercenary, then the item in each of its slots
+    private static int[] getHirelingInputs(D2Save save) {
+        D2Hireling hireling = save.isExpansion() ? save.getHireling() : null;
+        int[] arr = new int[1 + HIRELING_INPUTS + 4 * ITEM_INPUTS];
+        arr[0] = save.isExpansion() ? 1 : 0;
+        int idx = addHirelingInputs(arr, 1, hireling);
+        if(hireling != null)
+            for(D2ItemForm item : new D2ItemForm[]{hireling.getHead(), hireling.getTorso(), hireling.getWeapon(), hireling.getShield()})
+                if((idx = addItemInputs(arr, idx, item)) < 0)
+                    return null;
+        return arr;
+    }
+
+    private static int addHirelingInputs(int[] arr, int idx, D2Hireling hireling) {
+        if(hireling == null)
+            return idx + HIRELING_INPUTS;
+        arr[idx++] = 1;
+        arr[idx++] = hireling.getType();
+        arr[idx++] = hireling.getNameId();
+        arr[idx++] = hireling.getLevel();
+        arr[idx++] = hireling.getIdentifier();
+        arr[idx++] = hireling.isDead() ? 1 : 0;
+        return idx;
+    }
+
+    /**
+     * Add the values an item is built from. An empty slot leaves its values 0, which no item has as its type.
+     * @return the index after the values, or -1 if the item was read from a save and has no form values to compare
+     */
+    private static int addItemInputs(int[] arr, int idx, D2ItemForm item) {
+        if(item == null)
+            return idx + ITEM_INPUTS;
+        if(item.getItem() != null)
+            return -1;
+
+        String type = item.getType();
+        arr[idx++] = type.charAt(0) | type.charAt(1) << 8 | type.charAt(2) << 16;
+        arr[idx++] = item.getQuality();
+        arr[idx++] = item.getiLvl();
+        arr[idx++] = item.hasPosition() ? item.getX() : 0;
+        arr[idx++] = item.hasPosition() ? item.getY() : 0;
+        arr[idx++] = item.isEthereal() ? 1 : 0;
+        arr[idx++] = item.getDefense();
+        arr[idx++] = item.getDurability();
+        arr[idx++] = item.getQuantity();
+        arr[idx++] = item.getIdentifier();
+        return idx;
+    }
+}
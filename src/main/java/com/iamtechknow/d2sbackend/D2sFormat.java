@@ -0,0 +1,337 @@
+package com.iamtechknow.d2sbackend;
+
+import java.util.Arrays;
+
+/**
+ * Layout of one version of the save format: header field offsets, section markers, and the bit widths of item
+ * and attribute fields. The writer and reader look the layout up once per save, so encoding never checks the version.
+ *
+ * Each layout precompiles the constant parts of the character header into a template, which the writer copies
+ * before setting the fields of the save.
+ */
+public class D2sFormat {
+    public static final D2sFormat V1_10 = new Builder(0x60).build();
+
+    // Versions that saves may be written and read in. Other versions need their own item and attribute layouts,
+    // not just another version number.
+    private static final D2sFormat[] FORMATS = {V1_10};
+
+    private final int version;
+
+    // Header offsets
+    private final int nameOffset, nameLength, statusOffset, progressionOffset, classOffset, levelOffset, timestampOffset,
+                    hotkeysOffset, appearanceOffset, difficultyOffset, mercenaryOffset, headerSize;
+
+    // Quest and waypoint data for each difficulty follow their section headers
+    private final byte[] questHeader, waypointHeader, npcHeader;
+    private final int questSize, waypointSize, npcSize;
+
+    private final byte[] attributesMarker, skillsMarker, itemsMarker, hirelingMarker, golemMarker;
+
+    // Bit widths of the attribute values, indexed by attribute ID
+    private final int[] attributeLengths;
+    private final int propertyIdBits, defenseBits, maxDurabilityBits, durabilityBits, socketsBits, quantityBits;
+
+    private final byte[] headerTemplate;
+    private final D2PropertyEncoder attributeEncoder;
+
+    public static class Builder {
+        private int version;
+        private int nameOffset = 20, nameLength = 16, statusOffset = 36, progressionOffset = 37, classOffset = 40,
+                    levelOffset = 43, timestampOffset = 48, hotkeysOffset = 56, appearanceOffset = 136,
+                    difficultyOffset = 168, mercenaryOffset = 177, headerSize = 335;
+        private byte[] questHeader = {0x57, 0x6F, 0x6F, 0x21, 0x6, 0, 0, 0, 0x2A, 0x1},
+                       waypointHeader = {0x57, 0x53, 0x1, 0, 0, 0, 0x50, 0},
+                       npcHeader = {0x1, 0x77, 0x34};
+        private int questSize = 96, waypointSize = 24, npcSize = 52;
+        private byte[] attributesMarker = {0x67, 0x66}, skillsMarker = {0x69, 0x66}, itemsMarker = {0x4A, 0x4D},
+                       hirelingMarker = {0x6A, 0x66}, golemMarker = {0x6B, 0x66};
+        private int[] attributeLengths = {10, 10, 10, 10, 10, 8, 21, 21, 21, 21, 21, 21, 7, 32, 25, 25};
+        private int propertyIdBits = 9, defenseBits = 10, maxDurabilityBits = 8, durabilityBits = 8, socketsBits = 4,
+                    quantityBits = 9;
+
+        public Builder(int version) {
+            this.version = version;
+        }
+
+        // Start from another layout, to describe a version that differs in a few fields
+        public Builder(D2sFormat format) {
+            version = format.version;
+            nameOffset = format.nameOffset; nameLength = format.nameLength; statusOffset = format.statusOffset;
+            progressionOffset = format.progressionOffset; classOffset = format.classOffset; levelOffset = format.levelOffset;
+            timestampOffset = format.timestampOffset; hotkeysOffset = format.hotkeysOffset;
+            appearanceOffset = format.appearanceOffset; difficultyOffset = format.difficultyOffset;
+            mercenaryOffset = format.mercenaryOffset; headerSize = format.headerSize;
+            questHeader = format.questHeader; waypointHeader = format.waypointHeader; npcHeader = format.npcHeader;
+            questSize = format.questSize; waypointSize = format.waypointSize; npcSize = format.npcSize;
+            attributesMarker = format.attributesMarker; skillsMarker = format.skillsMarker; itemsMarker = format.itemsMarker;
+            hirelingMarker = format.hirelingMarker; golemMarker = format.golemMarker;
+            attributeLengths = format.attributeLengths;
+            propertyIdBits = format.propertyIdBits; defenseBits = format.defenseBits;
+            maxDurabilityBits = format.maxDurabilityBits; durabilityBits = format.durabilityBits;
+            socketsBits = format.socketsBits; quantityBits = format.quantityBits;
+        }
+
+        public Builder setVersion(int version) {
+            this.version = version;
+            return this;
+        }
+
+        public Builder setHeaderSize(int headerSize) {
+            this.headerSize = headerSize;
+            return this;
+        }
+
+        public Builder setQuestHeader(byte[] questHeader) {
+            this.questHeader = questHeader;
+            return this;
+        }
+
+        public Builder setWaypointHeader(byte[] waypointHeader) {
+            this.waypointHeader = waypointHeader;
+            return this;
+        }
+
+        public Builder setAttributeLengths(int[] attributeLengths) {
+            this.attributeLengths = attributeLengths;
+            return this;
+        }
+
+        public Builder setDefenseBits(int defenseBits) {
+            this.defenseBits = defenseBits;
+            return this;
+        }
+
+        public Builder setMaxDurabilityBits(int maxDurabilityBits) {
+            this.maxDurabilityBits = maxDurabilityBits;
+            return this;
+        }
+
+        public Builder setDurabilityBits(int durabilityBits) {
+            this.durabilityBits = durabilityBits;
+            return this;
+        }
+
+        public Builder setQuantityBits(int quantityBits) {
+            this.quantityBits = quantityBits;
+            return this;
+        }
+
+        public D2sFormat build() {
+            return new D2sFormat(this);
+        }
+    }
+
+    private D2sFormat(Builder builder) {
+        version = builder.version;
+        nameOffset = builder.nameOffset; nameLength = builder.nameLength; statusOffset = builder.statusOffset;
+        progressionOffset = builder.progressionOffset; classOffset = builder.classOffset; levelOffset = builder.levelOffset;
+        timestampOffset = builder.timestampOffset; hotkeysOffset = builder.hotkeysOffset;
+        appearanceOffset = builder.appearanceOffset; difficultyOffset = builder.difficultyOffset;
+        mercenaryOffset = builder.mercenaryOffset; headerSize = builder.headerSize;
+        questHeader = builder.questHeader; waypointHeader = builder.waypointHeader; npcHeader = builder.npcHeader;
+        questSize = builder.questSize; waypointSize = builder.waypointSize; npcSize = builder.npcSize;
+        attributesMarker = builder.attributesMarker; skillsMarker = builder.skillsMarker; itemsMarker = builder.itemsMarker;
+        hirelingMarker = builder.hirelingMarker; golemMarker = builder.golemMarker;
+        attributeLengths = builder.attributeLengths;
+        propertyIdBits = builder.propertyIdBits; defenseBits = builder.defenseBits;
+        maxDurabilityBits = builder.maxDurabilityBits; durabilityBits = builder.durabilityBits;
+        socketsBits = builder.socketsBits; quantityBits = builder.quantityBits;
+        headerTemplate = buildHeaderTemplate();
+
+        // Attributes are property lists with one unbiased value each
+        D2PropertyDescriptor[] attributes = new D2PropertyDescriptor[attributeLengths.length];
+        for(int id = 0; id < attributes.length; id++)
+            attributes[id] = new D2PropertyDescriptor(id, attributeLengths[id], 0);
+        attributeEncoder = new D2PropertyEncoder(attributes, propertyIdBits);
+    }
+
+    /**
+     * Fill in the header fields that are the same for every save. Length, checksum and the fields
+     * of the character are left 0.
+     */
+    private byte[] buildHeaderTemplate() {
+        byte[] header = new byte[headerSize];
+        writeInt(header, 0, D2sWriter.MAGIC_NUMBER);
+        writeInt(header, 4, version);
+
+        // Unknown bytes after the class, and after the level
+        header[classOffset + 1] = 0x10;
+        header[classOffset + 2] = 0x1E;
+        writeInt(header, timestampOffset + 4, 0xFFFFFFFF);
+
+        // Hotkeyed skills for 16 keys - 0xFFFF means no skill. The 4 mouse keys are 0.
+        for(int i = 0; i < 16; i++)
+            writeInt(header, hotkeysOffset + i * 4, 0x0000FFFF);
+
+        // Character appearance, set so nothing is equipped
+        Arrays.fill(header, appearanceOffset, difficultyOffset, (byte) 0xFF);
+        return header;
+    }
+
+    static void writeInt(byte[] arr, int offset, int i) {
+        arr[offset] = (byte) i;
+        arr[offset + 1] = (byte) (i >> 8);
+        arr[offset + 2] = (byte) (i >> 16);
+        arr[offset + 3] = (byte) (i >> 24);
+    }
+
+    /**
+     * @return the layout of the version, or null if the version is not supported
+     */
+    public static D2sFormat forVersion(int version) {
+        for(D2sFormat format : FORMATS)
+            if(format.version == version)
+                return format;
+        return null;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public int getNameOffset() {
+        return nameOffset;
+    }
+
+    public int getNameLength() {
+        return nameLength;
+    }
+
+    public int getStatusOffset() {
+        return statusOffset;
+    }
+
+    public int getProgressionOffset() {
+        return progressionOffset;
+    }
+
+    public int getClassOffset() {
+        return classOffset;
+    }
+
+    public int getLevelOffset() {
+        return levelOffset;
+    }
+
+    public int getTimestampOffset() {
+        return timestampOffset;
+    }
+
+    public int getDifficultyOffset() {
+        return difficultyOffset;
+    }
+
+    // Size of the character header, which ends where the quest section starts
+    public int getHeaderSize() {
+        return headerSize;
+    }
+
+    // Header template to copy, which must not be modified
+    byte[] getHeaderTemplate() {
+        return headerTemplate;
+    }
+
+    byte[] getQuestHeader() {
+        return questHeader;
+    }
+
+    public int getQuestSize() {
+        return questSize;
+    }
+
+    byte[] getWaypointHeader() {
+        return waypointHeader;
+    }
+
+    public int getWaypointSize() {
+        return waypointSize;
+    }
+
+    byte[] getNpcHeader() {
+        return npcHeader;
+    }
+
+    public int getNpcSize() {
+        return npcSize;
+    }
+
+    // Mercenary fields: dead flag (2 bytes), ID (4), name ID (2), type (2) and experience (4)
+    public int getMercenaryOffset() {
+        return mercenaryOffset;
+    }
+
+    public int getQuestOffset() {
+        return headerSize;
+    }
+
+    public int getWaypointOffset() {
+        return getQuestOffset() + questHeader.length + 3 * questSize;
+    }
+
+    public int getNpcOffset() {
+        return getWaypointOffset() + waypointHeader.length + 3 * waypointSize;
+    }
+
+    // Where the variable length sections start, after the NPC data
+    public int getFixedSize() {
+        return getNpcOffset() + npcSize;
+    }
+
+    byte[] getAttributesMarker() {
+        return attributesMarker;
+    }
+
+    byte[] getSkillsMarker() {
+        return skillsMarker;
+    }
+
+    byte[] getItemsMarker() {
+        return itemsMarker;
+    }
+
+    byte[] getHirelingMarker() {
+        return hirelingMarker;
+    }
+
+    byte[] getGolemMarker() {
+        return golemMarker;
+    }
+
+    int[] getAttributeLengths() {
+        return attributeLengths;
+    }
+
+    public D2PropertyEncoder getAttributeEncoder() {
+        return attributeEncoder;
+    }
+
+    // Encoder of the magical properties of items, from the current game data
+    public D2PropertyEncoder getPropertyEncoder() {
+        return D2GameData.current().getPropertyEncoder(this);
+    }
+
+    public int getPropertyIdBits() {
+        return propertyIdBits;
+    }
+
+    public int getDefenseBits() {
+        return defenseBits;
+    }
+
+    public int getMaxDurabilityBits() {
+        return maxDurabilityBits;
+    }
+
+    public int getDurabilityBits() {
+        return durabilityBits;
+    }
+
+    public int getSocketsBits() {
+        return socketsBits;
+    }
+
+    public int getQuantityBits() {
+        return quantityBits;
+    }
+}
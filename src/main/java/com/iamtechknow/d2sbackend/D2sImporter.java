@@ -0,0 +1,307 @@
+package com.iamtechknow.d2sbackend;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Imports the saves in a directory tree or a ZIP into the store used by the controller.
+ *
+ * One thread reads files in batches into a bounded queue, and worker threads parse each batch and commit it
+ * to the store with a single putAll. Memory use depends on the batch size and thread count, not the number of files.
+ *
+ * Progress is written to a checkpoint file as the number of entries, in source order, whose batches have all been
+ * committed. A run with the same checkpoint and source skips those entries. Saves are keyed by name, so entries
+ * imported again after a crash just replace themselves. The checkpoint is deleted when a run completes.
+ *
+ * A batch that fails to commit is counted as failed and passed over, so the checkpoint keeps advancing. If every
+ * worker stops, the reader gives up rather than waiting on a queue nothing takes from.
+ */
+public class D2sImporter {
+    private static final int BATCH_SIZE = 256, MAX_FILE_SIZE = 1 << 16, MAX_ERRORS = 100;
+    private static final long CHECKPOINT_INTERVAL = TimeUnit.SECONDS.toNanos(1), QUEUE_WAIT_MILLIS = 100;
+    private static final Batch END = new Batch(-1, 0);
+
+    private final D2SaveStore store;
+    private final Path checkpoint;
+    private final int threads;
+
+    private final LongAdder read = new LongAdder(), imported = new LongAdder(), failed = new LongAdder();
+    private final AtomicInteger liveWorkers = new AtomicInteger();
+    private final List<String> errors = new ArrayList<>();
+    private volatile String source;
+    private volatile long skipped, start, end;
+
+    // Batches committed out of order, by sequence number, with the entry index they end at
+    private final TreeMap<Long, Long> completed = new TreeMap<>();
+    private long nextSeq, committed, lastCheckpoint;
+
+    private static class Batch {
+        private final long seq;
+        private final String[] names;
+        private final byte[][] data;
+        private int size;
+        private long end;
+
+        private Batch(long seq, int capacity) {
+            this.seq = seq;
+            names = new String[capacity];
+            data = new byte[capacity][];
+        }
+    }
+
+    /**
+     * @param store store to put imported saves into
+     * @param checkpoint file to keep progress in, or null to not resume
+     * @param threads number of threads parsing saves
+     */
+    public D2sImporter(D2SaveStore store, Path checkpoint, int threads) {
+        this.store = store;
+        this.checkpoint = checkpoint;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Import every .d2s file in a directory tree, or every .d2s entry in a ZIP. Blocks until done.
+     * Directory listings must be in the same order between runs for a checkpoint to be used.
+     */
+    public void run(Path source) throws IOException, InterruptedException {
+        this.source = source.toString();
+        start = System.nanoTime();
+        skipped = committed = readCheckpoint();
+        lastCheckpoint = start;
+
+        BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(threads * 2);
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        liveWorkers.set(threads);
+        for(int i = 0; i < threads; i++)
+            workers.submit(() -> parse(queue));
+
+        try {
+            if(Files.isDirectory(source))
+                readDirectory(source, queue);
+            else
+                readZip(source, queue);
+        } catch(IOException | RuntimeException e) {
+            // Files.walk reports errors listing a directory unchecked
+            fail(source.toString(), (e instanceof UncheckedIOException ? e.getCause() : e).toString());
+            throw e;
+        } finally {
+            for(int i = 0; i < threads; i++)
+                while(liveWorkers.get() > 0 && !queue.offer(END, QUEUE_WAIT_MILLIS, TimeUnit.MILLISECONDS));
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            end = System.nanoTime();
+            if(checkpoint != null)
+                writeCheckpoint(committed);
+        }
+
+        if(checkpoint != null)
+            Files.deleteIfExists(checkpoint);
+    }
+
+    private void readDirectory(Path dir, BlockingQueue<Batch> queue) throws IOException, InterruptedException {
+        long index = 0;
+        Batch batch = new Batch(0, BATCH_SIZE);
+        try(Stream<Path> paths = Files.walk(dir)) {
+            Iterator<Path> it = paths.filter(this::isSave).iterator();
+            while(it.hasNext()) {
+                Path path = it.next();
+                if(index++ < skipped)
+                    continue;
+
+                try(InputStream in = Files.newInputStream(path)) {
+                    batch = add(batch, path.toString(), in, index, queue);
+                } catch(IOException e) {
+                    fail(path.toString(), e.toString());
+                }
+            }
+        }
+        flush(batch, index, queue);
+    }
+
+    private void readZip(Path zip, BlockingQueue<Batch> queue) throws IOException, InterruptedException {
+        long index = 0;
+        Batch batch = new Batch(0, BATCH_SIZE);
+        try(ZipInputStream in = new ZipInputStream(new BufferedInputStream(Files.newInputStream(zip)))) {
+            for(ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                if(entry.isDirectory() || !entry.getName().toLowerCase().endsWith(".d2s") || index++ < skipped)
+                    continue;
+                batch = add(batch, entry.getName(), in, index, queue);
+            }
+        }
+        flush(batch, index, queue);
+    }
+
+    private boolean isSave(Path path) {
+        return path.toString().toLowerCase().endsWith(".d2s") && Files.isRegularFile(path);
+    }
+
+    // Read one file into the batch, and queue the batch once it is full
+    private Batch add(Batch batch, String name, InputStream in, long index, BlockingQueue<Batch> queue) throws IOException, InterruptedException {
+        read.increment();
+        byte[] data = in.readNBytes(MAX_FILE_SIZE + 1);
+        if(data.length > MAX_FILE_SIZE)
+            fail(name, "File is too large");
+        else {
+            batch.names[batch.size] = name;
+            batch.data[batch.size++] = data;
+        }
+
+        if(batch.size == BATCH_SIZE) {
+            flush(batch, index, queue);
+            batch = new Batch(batch.seq + 1, BATCH_SIZE);
+        }
+        return batch;
+    }
+
+    // Queue a batch, giving up if there are no workers left to take it
+    private void flush(Batch batch, long index, BlockingQueue<Batch> queue) throws InterruptedException {
+        batch.end = index;
+        while(!queue.offer(batch, QUEUE_WAIT_MILLIS, TimeUnit.MILLISECONDS))
+            if(liveWorkers.get() == 0)
+                throw new IllegalStateException("Every parser thread stopped");
+    }
+
+    // Worker loop: parse a batch, then commit it to the store at once. Each batch is completed even if it fails
+    private void parse(BlockingQueue<Batch> queue) {
+        try {
+            for(Batch batch = queue.take(); batch != END; batch = queue.take()) {
+                try {
+                    commit(batch);
+                } catch(RuntimeException e) {
+                    fail(batch.size > 0 ? batch.names[0] : source, e.toString());
+                } finally {
+                    complete(batch);
+                }
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch(Error e) {
+            fail(Thread.currentThread().getName(), e.toString());
+            throw e;
+        } finally {
+            liveWorkers.decrementAndGet();
+        }
+    }
+
+    private void commit(Batch batch) {
+        Map<String, D2Save> saves = new HashMap<>(batch.size * 2);
+        for(int i = 0; i < batch.size; i++) {
+            try {
+                D2Save save = D2sReader.readSave(batch.data[i]);
+                if(save.checkValid())
+                    saves.put(save.getName(), save);
+                else
+                    fail(batch.names[i], "Save is not valid");
+            } catch(RuntimeException e) {
+                fail(batch.names[i], e.toString());
+            }
+        }
+
+        try {
+            store.putAll(saves);
+        } catch(RuntimeException e) {
+            // Some of the batch may be in the store, but it is counted as failed and not imported again
+            fail(batch.names[0], "Batch of " + saves.size() + " saves failed to commit: " + e, saves.size());
+            return;
+        }
+        imported.add(saves.size());
+    }
+
+    // Advance the committed entry count past every batch committed in order, and save it now and then
+    private synchronized void complete(Batch batch) {
+        completed.put(batch.seq, batch.end);
+        while(!completed.isEmpty() && completed.firstKey() == nextSeq) {
+            committed = completed.pollFirstEntry().getValue();
+            nextSeq++;
+        }
+
+        long now = System.nanoTime();
+        if(checkpoint != null && now - lastCheckpoint >= CHECKPOINT_INTERVAL) {
+            lastCheckpoint = now;
+            writeCheckpoint(committed);
+        }
+    }
+
+    private void fail(String name, String reason) {
+        fail(name, reason, 1);
+    }
+
+    // Count entries as failed, with one error for all of them
+    private void fail(String name, String reason, int entries) {
+        failed.add(entries);
+        synchronized(errors) {
+            if(errors.size() < MAX_ERRORS)
+                errors.add(name + ": " + reason);
+        }
+    }
+
+    // The checkpoint is the source and the number of committed entries, separated by a tab
+    private long readCheckpoint() throws IOException {
+        if(checkpoint == null || !Files.exists(checkpoint))
+            return 0;
+
+        String[] fields = new String(Files.readAllBytes(checkpoint), StandardCharsets.UTF_8).trim().split("\t");
+        return fields.length == 2 && fields[0].equals(source) ? Long.parseLong(fields[1]) : 0;
+    }
+
+    // Replace the checkpoint atomically, so a crash while writing leaves the previous one
+    private void writeCheckpoint(long entries) {
+        try {
+            Path tmp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+            Files.write(tmp, (source + "\t" + entries).getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch(IOException e) {
+            fail(checkpoint.toString(), e.toString());
+        }
+    }
+
+    /**
+     * Progress of the import, with up to 100 errors.
+     */
+    public JsonObject getProgress() {
+        long elapsed = (end != 0 ? end : System.nanoTime()) - start, count = read.sum();
+        JsonObject result = new JsonObject();
+        if(source != null)
+            result.add("source", new JsonPrimitive(source));
+        result.add("running", new JsonPrimitive(start != 0 && end == 0));
+        result.add("skipped", new JsonPrimitive(skipped));
+        result.add("read", new JsonPrimitive(count));
+        result.add("imported", new JsonPrimitive(imported.sum()));
+        result.add("failed", new JsonPrimitive(failed.sum()));
+        result.add("filesPerSecond", new JsonPrimitive(start == 0 ? 0 : count * 1_000_000_000L / Math.max(elapsed, 1)));
+
+        JsonArray list = new JsonArray();
+        synchronized(errors) {
+            errors.forEach(list::add);
+        }
+        result.add("errors", list);
+        return result;
+    }
+}
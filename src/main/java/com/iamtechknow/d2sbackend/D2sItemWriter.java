@@ -1,219 +1,296 @@
 package com.iamtechknow.d2sbackend;
 
 import java.io.ByteArrayOutputStream;
+import java.lang.invoke.MethodHandle;
+import java.util.Arrays;
 
 import static com.iamtechknow.d2sbackend.D2ExtendedItem.*;
 
 // Helper class that assists the main Writer in writing items to the byte stream.
 public class D2sItemWriter {
+    private static final int[] LIST_MAP = {0, 1, 3, 7, 15, 31};
+
+    // Items have at most 6 sockets, but the number written has 3 bits
+    private static final int MAX_SOCKETS = 7;
+
+    // Encoder of the default layout and built-in tables, compiled once
+    private static final MethodHandle DEFAULT_ENCODER = D2GameData.builtIn().getItemEncoder(D2sFormat.V1_10);
+
     private ByteArrayOutputStream writerStream;
     private BitWriter bitWriter;
+    private D2sFormat format;
+
+    // Tables every item of this writer is encoded with, even if others are loaded meanwhile
+    private D2GameData data;
+    private MethodHandle encoder;
+    private boolean isDefault;
+
+    // Trace of the bit writer, with the items named by the order they are written in
+    private D2BitTrace trace;
+    private int traced;
+
+    // Items waiting to be written, the next one last
+    private D2Item[] pending = new D2Item[MAX_SOCKETS + 1];
 
     public D2sItemWriter(ByteArrayOutputStream stream, BitWriter writer) {
+        this(stream, writer, D2sFormat.V1_10);
+    }
+
+    public D2sItemWriter(ByteArrayOutputStream stream, BitWriter writer, D2sFormat format) {
+        this(stream, writer, format, D2GameData.current());
+    }
+
+    public D2sItemWriter(ByteArrayOutputStream stream, BitWriter writer, D2sFormat format, D2GameData data) {
         writerStream = stream;
         bitWriter = writer;
+        this.format = format;
+        this.data = data;
+        trace = writer.getTrace();
+        isDefault = trace == null && format == D2sFormat.V1_10 && data == D2GameData.builtIn();
+        if(trace != null)
+            encoder = data.getTracedItemEncoder(format);
+        else
+            encoder = isDefault ? DEFAULT_ENCODER : data.getItemEncoder(format);
     }
 
-    // Write the simple and if it exists, the extended item data
-    // If an item has socketed items it will recursively write them
+    // Write the simple and if it exists, the extended item data, as described by the item layout.
+    // Socketed items immediately follow their parent item. They are written from a stack of pending items rather than
+    // by recursion, so the parent and its children go into the stream in one pass.
     // A bit writer is used to keep track of intermediate bits.
     // Bits are reversed twice and then written to the bit stream.
     public void writeItem(D2Item item) {
-        // Either use it or write 8 bits at a time and update the buffer
-        bitWriter.writeBits(0x4A, 8, false);
-        bitWriter.writeBits(0x4D, 8, false);
-
-        // Write the next 16 bits (16 - 32): Item is IDed (bit 4), socketed (bit 11)
-        short vec1 = 0;
-        vec1 |= boolToInt(item.isIdentified()) << 4;
-        vec1 |= boolToInt(item.isSocketed()) << 11;
-        writeReversed(vec1, 16);
-
-        // Player ear to unknown 15 bits: Item is simple (bit 5), ethereal (bit 6), personalized (bit 8), RW (bit 10)
-        int vec2 = 0;
-        vec2 |= boolToInt(item.isSimple()) << 5;
-        vec2 |= boolToInt(item.isEthereal()) << 6;
-        vec2 |= 1 << 7; // always set to 1
-        vec2 |= boolToInt(item.isPersonalized()) << 8;
-        vec2 |= boolToInt(item.isHasRW()) << 10;
-        writeReversed(vec2, 26);
-
-        // item location, equipped position, coordinates, item store (bits 58 - 76)
-        vec2 = 0;
-        vec2 |= item.getItemLocation();
-        vec2 |= item.getEquippedLoc() << 3;
-        vec2 |= item.getX() << 7;
-        vec2 |= item.getY() << 11;
-        vec2 |= item.getItemStore() << 15; // bit 16 is ignored
-        writeReversed(vec2, 18);
-        
-        // Write item type. Not byte aligned, but that's ok!
-        vec2 = 0;
-        for(int i = 0; i < item.getItemType().length(); i++)
-            vec2 |= item.getItemType().charAt(i) << (i * 8);
-        writeReversed(vec2, 32);
-
-        // Number of socketed items, then write extended info if applicable, finally flush bits.
-        writeReversed(item.getNumSocketed(), 3);
-
-        if(!item.isSimple()) {
-            D2ExtendedItem xItem = item.getExtendedData();
+        // Traced items are always encoded, so their fields are recorded
+        byte[] cached = trace == null ? item.getEncoding(format, data) : null;
+        if(cached != null) {
+            writerStream.write(cached, 0, cached.length);
+            return;
+        }
 
+        int size = 0;
+        pending[size++] = item;
+        while(size > 0) {
+            D2Item next = pending[--size];
+            pending[size] = null;
+            if(trace != null)
+                traceItem(next);
+            else
+                encode(next);
+
+            // Push the socketed items last to first, so the first is written next
+            int numSocketed = next.getNumSocketed();
+            if(numSocketed > 0) {
+                if(size + numSocketed > pending.length)
+                    pending = Arrays.copyOf(pending, Math.max(pending.length * 2, size + numSocketed));
+                D2Item[] sockets = next.getSocketedItems();
+                for(int i = numSocketed - 1; i >= 0; i--)
+                    pending[size++] = sockets[i];
+            }
+        }
+    }
+
+    /**
+     * Write an item, encoding it once and keeping the bytes with the item. Used for items that are written to many
+     * saves, which then cost a copy of their bytes.
+     */
+    public void writeCached(D2Item item) {
+        if(trace != null) {
+            writeItem(item);
+            return;
+        }
+
+        byte[] bytes = item.getEncoding(format, data);
+        if(bytes == null) {
+            bytes = encode(item, format, data);
+            item.setEncoding(format, data, bytes);
+        }
+        writerStream.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Encode an item and its socketed items on their own.
+     */
+    public static byte[] encode(D2Item item, D2sFormat format) {
+        return encode(item, format, D2GameData.current());
+    }
+
+    private static byte[] encode(D2Item item, D2sFormat format, D2GameData data) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        new D2sItemWriter(stream, new BitWriter(stream), format, data).writeItem(item);
+        return stream.toByteArray();
+    }
+
+    private void encode(D2Item item) {
+        try {
+            // The default layout is a constant the JIT can inline, others go through the handle compiled for them
+            if(isDefault)
+                DEFAULT_ENCODER.invokeExact(bitWriter, (Object) item);
+            else
+                encoder.invokeExact(bitWriter, (Object) item);
+        } catch(RuntimeException | Error e) {
+            throw e;
+        } catch(Throwable t) {
+            throw new IllegalStateException(t);
+        }
+
+        bitWriter.pad();
+    }
+
+    private void traceItem(D2Item item) {
+        String name = "item" + traced++;
+        int span = trace.begin(name, bitWriter.getBitPosition());
+        String outer = trace.enter(name);
+        encode(item);
+        trace.restore(outer);
+        trace.end(span, bitWriter.getBitPosition());
+    }
+
+    /**
+     * Bit layout of an item in a format, up to the padding at its end, with the item kinds and properties of the tables.
+     */
+    static D2BitLayout<D2Item> itemLayout(D2sFormat format, D2GameData data) {
+        int idBits = format.getPropertyIdBits();
+        D2PropertyEncoder encoder = data.getPropertyEncoder(format);
+
+        D2BitLayout<D2Item> rare = new D2BitLayout<D2Item>()
+            .field("firstWord", 8, item -> item.getExtendedData().getFirstWordId())
+            .field("secondWord", 8, item -> item.getExtendedData().getSecondWordId());
+
+        // Depending on the size of the prefix and suffix IDs, write a 1 or 0 then the id
+        for(int i = 0; i < 3; i++) {
+            int index = i;
+            rare.flag("hasPrefix" + index, item -> index < item.getExtendedData().getPrefixIds().length)
+                .when(item -> index < item.getExtendedData().getPrefixIds().length, new D2BitLayout<D2Item>()
+                    .field("prefix" + index, 11, item -> item.getExtendedData().getPrefixIds()[index]))
+                .flag("hasSuffix" + index, item -> index < item.getExtendedData().getSuffixIds().length)
+                .when(item -> index < item.getExtendedData().getSuffixIds().length, new D2BitLayout<D2Item>()
+                    .field("suffix" + index, 11, item -> item.getExtendedData().getSuffixIds()[index]));
+        }
+
+        D2BitLayout<D2Item> extended = new D2BitLayout<D2Item>()
             // Unique ID, iLvl, quality
-            writeReversed(xItem.getIdentifier(), 32);
-            writeReversed(xItem.getiLvl(), 7);
-            writeReversed(xItem.getQuality(), 4);
+            .field("identifier", 32, item -> item.getExtendedData().getIdentifier())
+            .field("iLvl", 7, item -> item.getExtendedData().getiLvl())
+            .field("quality", 4, item -> item.getExtendedData().getQuality())
 
             // Image type for jewelery, jewels, charms
-            writeReversed(boolToInt(xItem.isGenericMagicItem()), 1);
-            if(xItem.isGenericMagicItem()) {
-                writeReversed(xItem.getImgType(), 3);
-            }
+            .flag("hasImgType", item -> item.getExtendedData().isGenericMagicItem())
+            .when(item -> item.getExtendedData().isGenericMagicItem(), new D2BitLayout<D2Item>()
+                .field("imgType", 3, item -> item.getExtendedData().getImgType()))
 
             // Expansion items
-            writeReversed(boolToInt(xItem.isExpansionItem()), 1);
-            if(xItem.isExpansionItem()) {
-                writeReversed(xItem.getExpansionMagicProperty(), 11);
-            }
+            .flag("hasClassData", item -> item.getExtendedData().isExpansionItem())
+            .when(item -> item.getExtendedData().isExpansionItem(), new D2BitLayout<D2Item>()
+                .field("classData", 11, item -> item.getExtendedData().getExpansionMagicProperty()))
 
             // Low quality
-            writeReversed(boolToInt(xItem.isLowQuality()), 1);
-            if(xItem.isLowQuality()) {
-                writeReversed(xItem.getQualityData(), 11);
-            }
+            .flag("hasQualityData", item -> item.getExtendedData().isLowQuality())
+            .when(item -> item.getExtendedData().isLowQuality(), new D2BitLayout<D2Item>()
+                .field("qualityData", 11, item -> item.getExtendedData().getQualityData()))
 
             // Handle non-white items
-            switch(xItem.getQuality()) {
-                case SET:
-                    writeReversed(xItem.getSetId(), 12);
-                    break;
-                case UNIQUE:
-                    writeReversed(xItem.getUniqueId(), 12);
-                    break;
-                case RARE:
-                case CRAFTED:
-                    writeReversed(xItem.getFirstWordId(), 8);
-                    writeReversed(xItem.getSecondWordId(), 8);
-
-                    // Depending on the size of the prefix and suffix IDs,
-                    // write a 1 or 0 then the id
-                    for(int i = 0; i < 3; i++) {
-                        boolean hasIthPrefix = i < xItem.getPrefixIds().length,
-                                hasIthSuffix = i < xItem.getSuffixIds().length;
-
-                        writeReversed(boolToInt(hasIthPrefix), 1);
-                        if(hasIthPrefix)
-                            writeReversed(xItem.getPrefixIds()[i], 11);
-
-                        writeReversed(boolToInt(hasIthSuffix), 1);
-                        if(hasIthSuffix)
-                            writeReversed(xItem.getSuffixIds()[i], 11);
-                    }
-                    break;
-                default: // Magical
-                    writeReversed(xItem.getPrefixId(), 11);
-                    writeReversed(xItem.getSuffixId(), 11);
-            }
-
-            if(item.isHasRW()) // 12 bit ID and 5 in 4-bit vector
-                writeReversed( (xItem.getRwId() << 4) | 5 , 16);
+            .when(item -> quality(item) == SET, new D2BitLayout<D2Item>()
+                .field("setId", 12, item -> item.getExtendedData().getSetId()))
+            .when(item -> quality(item) == UNIQUE, new D2BitLayout<D2Item>()
+                .field("uniqueId", 12, item -> item.getExtendedData().getUniqueId()))
+            .when(item -> quality(item) == RARE || quality(item) == CRAFTED, rare)
+            .when(item -> quality(item) != SET && quality(item) != UNIQUE && quality(item) != RARE && quality(item) != CRAFTED,
+                new D2BitLayout<D2Item>() // Magical
+                    .field("prefix", 11, item -> item.getExtendedData().getPrefixId())
+                    .field("suffix", 11, item -> item.getExtendedData().getSuffixId()))
+
+            // 12 bit ID and 5 in 4-bit vector
+            .when(D2Item::isHasRW, new D2BitLayout<D2Item>()
+                .field("runeword", 16, item -> item.getExtendedData().getRwId() << 4 | 5))
 
             // Write the item's owner then add a zero
-            if(item.isPersonalized()) {
-                for(char c : xItem.getOwner().toCharArray())
-                    writeReversed(c, 7);
-                bitWriter.writeBits(0, 7, false);
-            }
+            .when(D2Item::isPersonalized, new D2BitLayout<D2Item>()
+                .custom("owner", (writer, item) -> {
+                    for(char c : item.getExtendedData().getOwner().toCharArray())
+                        writer.writeReversed(c, 7);
+                })
+                .constant("ownerEnd", 7, 0))
 
-            bitWriter.writeBits(boolToInt(xItem.isIdTome()), 1);
+            .flag("idTome", item -> item.getExtendedData().isIdTome())
 
             // Item specific data
-            D2ItemData itemData = xItem.getData();
-
-            if(D2ItemTypes.isArmor(item.getItemType()) || D2ItemTypes.isShield(item.getItemType()))
-                writeReversed(itemData.getDefense(), 10);
+            .when(item -> data.isArmor(item.getTypeCode()) || data.isShield(item.getTypeCode()), new D2BitLayout<D2Item>()
+                .field("defense", format.getDefenseBits(), item -> item.getExtendedData().getData().getDefense()))
 
             // Account for indestructibility by checking for 0 max durability
-            if(D2ItemTypes.isNonMisc(item.getItemType())) {
-                writeReversed(itemData.getMaxDur(), 8);
-                if(itemData.getMaxDur() > 0)
-                    writeReversed(itemData.getCurDur(), 8);
-            }
+            .when(item -> data.isNonMisc(item.getTypeCode()), new D2BitLayout<D2Item>()
+                .field("maxDurability", format.getMaxDurabilityBits(), item -> item.getExtendedData().getData().getMaxDur())
+                .when(item -> item.getExtendedData().getData().getMaxDur() > 0, new D2BitLayout<D2Item>()
+                    .field("durability", format.getDurabilityBits(), item -> item.getExtendedData().getData().getCurDur())))
 
-            if(item.isSocketed())
-                writeReversed(itemData.getSockets(), 4);
+            .when(D2Item::isSocketed, new D2BitLayout<D2Item>()
+                .field("sockets", format.getSocketsBits(), item -> item.getExtendedData().getData().getSockets()))
 
-            if(D2ItemTypes.isTome(item.getItemType()))
-                bitWriter.writeBits(0, 5, false);
+            .when(item -> data.isTome(item.getTypeCode()), new D2BitLayout<D2Item>()
+                .constant("tomeData", 5, 0))
 
-            if(D2ItemTypes.hasQuantity(item.getItemType()))
-                writeReversed(itemData.getQuantity(), 9);
+            .when(item -> data.hasQuantity(item.getTypeCode()), new D2BitLayout<D2Item>()
+                .field("quantity", format.getQuantityBits(), item -> item.getExtendedData().getData().getQuantity()))
 
             // Fill a bit vector that represents how many lists of properties
             // exist for this item (bonuses for 2 or more set items equipped)
-            if(xItem.getQuality() == SET) {
-                int[] listMap = {0, 1, 3, 7, 15, 31};
-                writeReversed(listMap[itemData.getPropertyLists()], 5);
-            }
-
-            // Write the variable length fields for the item's magical properties
-            // TODO: handle magical properties with more than 2 property values
+            .when(item -> quality(item) == SET, new D2BitLayout<D2Item>()
+                .field("setLists", 5, item -> LIST_MAP[item.getExtendedData().getData().getPropertyLists()]))
 
-            // Runeword properties start with 0x1FF
-            if(item.isHasRW())
-                writeReversed(0x01FF, 9);
+            // Write the variable length fields for the item's magical properties.
+            // Runeword properties start with an end of properties ID, 0x1FF
+            .when(D2Item::isHasRW, new D2BitLayout<D2Item>()
+                .constant("runewordListStart", idBits, encoder.getEnd()))
 
-            if(xItem.getQuality() >= MAGICAL || item.isHasRW()) {
-                int[] ids = itemData.getPropertyIds();
-                long[] values = itemData.getPropertyValues();
-                writeVariableData(ids, values, D2MagicProperties.getLengthMap(), D2MagicProperties.getBiasMap(), 254);
-            }
+            .when(item -> quality(item) >= MAGICAL || item.isHasRW(), new D2BitLayout<D2Item>()
+                .custom("properties", (writer, item) -> {
+                    D2ItemData itemData = item.getExtendedData().getData();
+                    encoder.writeList(writer, itemData.getPropertyIds(), itemData.getPropertyValues(), 0);
+                }))
 
             // Write the partial set properties inherent to this item, each in their own list
             // (No set item has 2 properties for wearing another item, even if possible)
-            if(xItem.getQuality() == SET) {
-                int[] ids = itemData.getSetBonusIds();
-                long[] vals = itemData.getSetBonusValues();
-                for(int i = 0; i < itemData.getPropertyLists(); i++)
-                    writeVariableData(new int[]{ids[i]}, new long[]{vals[i]}, D2MagicProperties.getLengthMap(), D2MagicProperties.getBiasMap(), 254);
-            }
-        }
-
-        writerStream.write((int) bitWriter.flush());
-
-        // Socketed items immediately follow their parent item
-        if(item.getNumSocketed() > 0)
-            for(D2Item socket : item.getSocketedItems())
-                writeItem(socket);
+            .when(item -> quality(item) == SET, new D2BitLayout<D2Item>()
+                .custom("setProperties", (writer, item) -> {
+                    D2ItemData itemData = item.getExtendedData().getData();
+                    int[] ids = itemData.getSetBonusIds();
+                    long[] vals = itemData.getSetBonusValues();
+                    for(int i = 0, offset = 0; i < itemData.getPropertyLists(); i++)
+                        offset = encoder.writeList(writer, ids, i, i + 1, vals, offset);
+                }));
+
+        return new D2BitLayout<D2Item>()
+            .bytes("marker", 0x4A, 0x4D)
+
+            // Next 16 bits (16 - 32): Item is IDed (bit 4), socketed (bit 11)
+            .field("flags", 16, item -> boolToInt(item.isIdentified()) << 4 | boolToInt(item.isSocketed()) << 11)
+
+            // Player ear to unknown 15 bits: Item is simple (bit 5), ethereal (bit 6), personalized (bit 8), RW (bit 10)
+            .field("flags2", 26, item -> boolToInt(item.isSimple()) << 5 | boolToInt(item.isEthereal()) << 6 | 1 << 7
+                | boolToInt(item.isPersonalized()) << 8 | boolToInt(item.isHasRW()) << 10)
+
+            // item location, equipped position, coordinates, item store (bits 58 - 76), bit 16 is ignored
+            .field("location", 18, item -> item.getItemLocation() | item.getEquippedLoc() << 3 | item.getX() << 7 | item.getY() << 11
+                | item.getItemStore() << 15)
+
+            // Write item type. Not byte aligned, but that's ok!
+            .field("type", 32, item -> {
+                int type = 0;
+                for(int i = 0; i < item.getItemType().length(); i++)
+                    type |= item.getItemType().charAt(i) << (i * 8);
+                return type;
+            })
+
+            // Number of socketed items, then write extended info if applicable
+            .field("numSocketed", 3, D2Item::getNumSocketed)
+            .when(item -> !item.isSimple(), extended);
     }
 
-    // Write n bits to the byte stream, after reversing the entire bit vector
-    // and then reversing 8 bits at a time.
-    private void writeReversed(long vec, int n) {
-        bitWriter.writeBits(bitWriter.reverseBits(vec, n), n);
+    private static int quality(D2Item item) {
+        return item.getExtendedData().getQuality();
     }
 
     // Converts a boolean to its C equivalent
-    private int boolToInt(boolean b) {
+    private static int boolToInt(boolean b) {
         return b ? 1 : 0;
     }
-
-    private void writeVariableData(int[] ids, long[] values, int[] lengths_map, int[] bias, int maxId) {
-        for(int i = 0; i < ids.length; i++) {
-            if(ids[i] < 0 || ids[i] > maxId)
-                throw new IllegalArgumentException("Variable ID " + ids[i] + " does not exist");
-
-            // Put ID into integer, reverse the last 9 bits, write the 9 bits in reverse order.
-            // Repeat for the value itself
-            long id = ids[i], val = values[i] + bias[ids[i]];
-            id = bitWriter.reverseBits(id, 9);
-            bitWriter.writeBits(id, 9);
-
-            val = bitWriter.reverseBits(val, lengths_map[ids[i]]);
-            bitWriter.writeBits(val, lengths_map[ids[i]]);
-        }
-
-        // Write 0x01FF id, end of attributes
-        writeReversed(0x01FF, 9);
-    }
 }
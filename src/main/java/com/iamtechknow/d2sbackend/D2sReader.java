@@ -0,0 +1,774 @@
+package com.iamtechknow.d2sbackend;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.iamtechknow.d2sbackend.D2ExtendedItem.*;
+
+/**
+ * Decodes a save written by D2sWriter in a single forward pass.
+ *
+ * Sections are reported to a Visitor as they are read. Nothing is allocated per item: items are decoded into one
+ * reusable ItemView, which may be turned into a D2Item by the visitor if it needs one. The visitor chooses which
+ * sections it wants, and reading stops after the last wanted section.
+ */
+public class D2sReader {
+    // Header offsets shared by every version, the rest come from the version's layout
+    static final int VERSION = 4, LENGTH = 8, CHECKSUM = 12;
+
+    private static final int NUM_SKILLS = 30,
+                            STATUS_HARDCORE = 1 << 2, STATUS_EXPANSION = 1 << 5;
+
+    // Counts of set property lists, indexed by the 5-bit list vector written by the item writer
+    private static final int[] LIST_COUNTS = new int[32];
+    static {
+        LIST_COUNTS[1] = 1; LIST_COUNTS[3] = 2; LIST_COUNTS[7] = 3; LIST_COUNTS[15] = 4; LIST_COUNTS[31] = 5;
+    }
+
+    /**
+     * Receives the sections of a save. All methods do nothing by default.
+     */
+    public interface Visitor {
+        // Whether the section should be reported. Sections after the last wanted one are not read at all.
+        default boolean wants(D2sWriter.Section section) {
+            return true;
+        }
+
+        default void visitHeader(Header header) {}
+
+        // Quest data for all three difficulties, after the quest section header
+        default void visitQuests(byte[] data, int offset) {}
+
+        default void visitWaypoints(byte[] data, int offset) {}
+
+        default void visitAttribute(int id, long value) {}
+
+        // One byte per skill
+        default void visitSkills(byte[] data, int offset) {}
+
+        // The view is reused for the next item. Socketed items follow their parent.
+        default void visitItem(D2sWriter.Section section, ItemView item) {}
+    }
+
+    private final byte[] data;
+    private final D2sFormat format;
+    // Tables the items are read with, even if others are loaded meanwhile
+    private final D2GameData gameData = D2GameData.current();
+    private final Header header;
+    private final ItemView itemView = new ItemView();
+    // Repositioned at each item rather than allocated per item
+    private final BitReader itemReader;
+
+    public D2sReader(byte[] data) {
+        if(data.length < CHECKSUM + 4 || readInt(data, 0) != D2sWriter.MAGIC_NUMBER)
+            throw new IllegalArgumentException("Not a save file");
+
+        format = D2sFormat.forVersion(readInt(data, VERSION));
+        if(format == null)
+            throw new IllegalArgumentException("Unsupported save version " + readInt(data, VERSION));
+        if(data.length < format.getFixedSize())
+            throw new IllegalArgumentException("Save file is too short");
+
+        this.data = data;
+        header = new Header(data, format);
+        itemReader = new BitReader(data, 0);
+    }
+
+    public Header getHeader() {
+        return header;
+    }
+
+    /**
+     * Read the save, reporting the sections the visitor wants.
+     */
+    public void read(Visitor visitor) {
+        D2sWriter.Section[] sections = D2sWriter.Section.values();
+        int last = -1;
+        for(D2sWriter.Section section : sections)
+            if(visitor.wants(section))
+                last = section.ordinal();
+
+        int offset = format.getFixedSize();
+        for(int i = 0; i <= last; i++) {
+            D2sWriter.Section section = sections[i];
+            boolean wanted = visitor.wants(section);
+            switch(section) {
+                case HEADER:
+                    if(wanted)
+                        visitor.visitHeader(header);
+                    break;
+                case QUESTS:
+                    if(wanted)
+                        visitor.visitQuests(data, format.getQuestOffset() + format.getQuestHeader().length);
+                    break;
+                case WAYPOINTS:
+                    if(wanted)
+                        visitor.visitWaypoints(data, format.getWaypointOffset());
+                    break;
+                case NPCS:
+                    break;
+                case ATTRIBUTES:
+                    offset = readAttributes(offset, wanted ? visitor : null);
+                    break;
+                case SKILLS:
+                    offset = expectMarker(offset, format.getSkillsMarker());
+                    checkLength(offset, NUM_SKILLS);
+                    if(wanted)
+                        visitor.visitSkills(data, offset);
+                    offset += NUM_SKILLS;
+                    break;
+                case ITEMS:
+                    offset = readItemList(offset, section, wanted ? visitor : null);
+                    break;
+                case CORPSE:
+                    offset = readCorpses(offset, wanted ? visitor : null);
+                    break;
+                case HIRELING:
+                    if(header.isExpansion()) {
+                        offset = expectMarker(offset, format.getHirelingMarker());
+                        if(header.hasMercenary())
+                            offset = readItemList(offset, section, wanted ? visitor : null);
+                    }
+                    break;
+                case GOLEM:
+                    if(header.isExpansion()) {
+                        offset = expectMarker(offset, format.getGolemMarker());
+                        checkLength(offset, 1);
+                        if(data[offset++] != 0)
+                            offset = readItemTree(offset, section, wanted ? visitor : null);
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Read an item list starting at its "JM" marker, followed by a 16-bit count of items not in sockets.
+     * @param visitor receives the items, or null to only skip over them
+     * @return offset after the list
+     */
+    public int readItemList(int offset, D2sWriter.Section section, Visitor visitor) {
+        offset = expectMarker(offset, format.getItemsMarker());
+        checkLength(offset, 2);
+        int count = (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8;
+        offset += 2;
+
+        for(int i = 0; i < count; i++)
+            offset = readItemTree(offset, section, visitor);
+        return offset;
+    }
+
+    /**
+     * Read the corpse list: a "JM" marker and a 16-bit count of corpses, then for each corpse 12 bytes of
+     * unknown data and position, and the item list of the corpse.
+     * @return offset after the list
+     */
+    private int readCorpses(int offset, Visitor visitor) {
+        offset = expectMarker(offset, format.getItemsMarker());
+        checkLength(offset, 2);
+        int count = (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8;
+        offset += 2;
+
+        for(int i = 0; i < count; i++)
+            offset = readItemList(offset + D2sWriter.CORPSE_DATA_SIZE, D2sWriter.Section.CORPSE, visitor);
+        return offset;
+    }
+
+    // Read an item, then the items in its sockets
+    private int readItemTree(int offset, D2sWriter.Section section, Visitor visitor) {
+        offset = readItem(offset, section, visitor);
+        for(int socket = itemView.numSocketed; socket > 0; socket--)
+            offset = readItem(offset, section, visitor);
+        return offset;
+    }
+
+    // Mirrors D2sItemWriter.writeItem
+    private int readItem(int offset, D2sWriter.Section section, Visitor visitor) {
+        BitReader reader = itemReader;
+        reader.reset(expectMarker(offset, format.getItemsMarker()));
+        ItemView item = itemView;
+        item.reset();
+
+        long bits = reader.readBits(16);
+        item.identified = (bits >> 4 & 1) != 0;
+        item.socketed = (bits >> 11 & 1) != 0;
+
+        bits = reader.readBits(26);
+        item.simple = (bits >> 5 & 1) != 0;
+        item.ethereal = (bits >> 6 & 1) != 0;
+        item.personalized = (bits >> 8 & 1) != 0;
+        item.hasRW = (bits >> 10 & 1) != 0;
+
+        bits = reader.readBits(18);
+        item.itemLocation = (int) (bits & 0x7);
+        item.equippedLoc = (int) (bits >> 3 & 0xF);
+        item.x = (int) (bits >> 7 & 0xF);
+        item.y = (int) (bits >> 11 & 0xF);
+        item.itemStore = (int) (bits >> 15 & 0x7);
+
+        item.typeBits = (int) reader.readBits(32);
+        item.numSocketed = (int) reader.readBits(3);
+
+        if(!item.simple)
+            readExtendedItem(reader, item);
+
+        if(visitor != null)
+            visitor.visitItem(section, item);
+        return reader.getBytePosition();
+    }
+
+    private void readExtendedItem(BitReader reader, ItemView item) {
+        item.identifier = (int) reader.readBits(32);
+        item.iLvl = (int) reader.readBits(7);
+        item.quality = (int) reader.readBits(4);
+
+        item.genericMagicItem = reader.readBits(1) != 0;
+        if(item.genericMagicItem)
+            item.imgType = (int) reader.readBits(3);
+
+        item.expansionItem = reader.readBits(1) != 0;
+        if(item.expansionItem)
+            item.expansionMagicProperty = (int) reader.readBits(11);
+
+        if(reader.readBits(1) != 0)
+            item.qualityData = (int) reader.readBits(11);
+
+        switch(item.quality) {
+            case SET:
+                item.setId = (int) reader.readBits(12);
+                break;
+            case UNIQUE:
+                item.uniqueId = (int) reader.readBits(12);
+                break;
+            case RARE:
+            case CRAFTED:
+                item.firstWordId = (int) reader.readBits(8);
+                item.secondWordId = (int) reader.readBits(8);
+                for(int i = 0; i < 3; i++) {
+                    if(reader.readBits(1) != 0)
+                        item.prefixIds[item.numPrefixes++] = (int) reader.readBits(11);
+                    if(reader.readBits(1) != 0)
+                        item.suffixIds[item.numSuffixes++] = (int) reader.readBits(11);
+                }
+                break;
+            default: // Magical
+                item.prefixId = (int) reader.readBits(11);
+                item.suffixId = (int) reader.readBits(11);
+        }
+
+        if(item.hasRW)
+            item.rwId = (int) (reader.readBits(16) >> 4);
+
+        if(item.personalized) {
+            StringBuilder owner = new StringBuilder();
+            for(int c = (int) reader.readBits(7); c != 0; c = (int) reader.readBits(7))
+                owner.append((char) c);
+            item.owner = owner.toString();
+        }
+
+        item.idTome = reader.readBits(1) != 0;
+
+        String type = item.getTypeCode();
+        if(gameData.isArmor(type) || gameData.isShield(type))
+            item.defense = (int) reader.readBits(format.getDefenseBits());
+
+        if(gameData.isNonMisc(type)) {
+            item.maxDur = (int) reader.readBits(format.getMaxDurabilityBits());
+            if(item.maxDur > 0)
+                item.curDur = (int) reader.readBits(format.getDurabilityBits());
+        }
+
+        if(item.socketed)
+            item.sockets = (int) reader.readBits(format.getSocketsBits());
+
+        if(gameData.isTome(type))
+            reader.readBits(5);
+
+        if(gameData.hasQuantity(type))
+            item.quantity = (int) reader.readBits(format.getQuantityBits());
+
+        if(item.quality == SET)
+            item.propertyLists = LIST_COUNTS[(int) reader.readBits(5)];
+
+        // Runeword properties follow an empty property list
+        if(item.hasRW)
+            reader.readBits(format.getPropertyIdBits());
+
+        if(item.quality >= MAGICAL || item.hasRW)
+            readProperties(reader, item, false);
+
+        if(item.quality == SET)
+            for(int i = 0; i < item.propertyLists; i++)
+                readProperties(reader, item, true);
+    }
+
+    // Read one property list up to its end marker, into the item's properties or set bonuses
+    private void readProperties(BitReader reader, ItemView item, boolean setBonus) {
+        D2PropertyEncoder encoder = gameData.getPropertyEncoder(format);
+        int idBits = format.getPropertyIdBits();
+        for(int id = (int) reader.readBits(idBits); id != encoder.getEnd(); id = (int) reader.readBits(idBits)) {
+            if(!encoder.isDefined(id))
+                throw new IllegalArgumentException(String.format("Variable ID %d does not exist, at bit %d",
+                    id, reader.getBitPosition() - idBits));
+
+            D2PropertyDescriptor descriptor = encoder.getDescriptor(id);
+            item.addProperty(id, setBonus);
+            for(int i = 0; i < descriptor.getParams(); i++)
+                item.addValue(reader.readBits(descriptor.getWidth(i)) - descriptor.getBias(i), setBonus);
+        }
+    }
+
+    // Mirrors D2sWriter.writeAttributes
+    private int readAttributes(int offset, Visitor visitor) {
+        BitReader reader = new BitReader(data, expectMarker(offset, format.getAttributesMarker()));
+        int[] lengths = format.getAttributeLengths();
+        int idBits = format.getPropertyIdBits(), end = (1 << idBits) - 1;
+        for(int id = (int) reader.readBits(idBits); id != end; id = (int) reader.readBits(idBits)) {
+            if(id >= lengths.length)
+                throw new IllegalArgumentException("Variable ID " + id + " does not exist");
+
+            long value = reader.readBits(lengths[id]);
+            if(visitor != null)
+                visitor.visitAttribute(id, value);
+        }
+        return reader.getBytePosition();
+    }
+
+    // Check for a section marker
+    // @return offset after the marker
+    private int expectMarker(int offset, byte[] marker) {
+        for(int i = 0; i < marker.length; i++)
+            if(offset + i >= data.length || data[offset + i] != marker[i])
+                throw new IllegalArgumentException(String.format("Expected \"%s\" at offset %d",
+                    new String(marker, StandardCharsets.US_ASCII), offset));
+        return offset + marker.length;
+    }
+
+    // Check that a field of the given size starting at the offset is in the data
+    private void checkLength(int offset, int length) {
+        if(offset + length > data.length)
+            throw new IllegalArgumentException("Save file is truncated at byte " + data.length);
+    }
+
+    static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8 | (data[offset + 2] & 0xFF) << 16 | (data[offset + 3] & 0xFF) << 24;
+    }
+
+    /**
+     * Read the save into the model used to write it. Attributes are stored as the points allocated on top of
+     * the class defaults, and quest rewards are taken from the quest data of each difficulty.
+     */
+    public static D2Save readSave(byte[] data) {
+        D2sReader reader = new D2sReader(data);
+        Header header = reader.getHeader();
+
+        D2Save save = new D2Save();
+        save.setVersion(header.getVersion());
+        save.setName(header.getName());
+        save.setClassNum(header.getClassNum());
+        save.setLevel(header.getLevel());
+        save.setDifficulty(header.getProgression());
+        save.setStartingAct(header.getStartingAct());
+        save.setHardcore(header.isHardcore());
+        save.setExpansion(header.isExpansion());
+
+        int[] defaults = D2CharacterAttributes.getDefaultAttributes(header.getClassNum());
+        ItemCollector items = new ItemCollector(D2sWriter.Section.ITEMS),
+                      corpseItems = new ItemCollector(D2sWriter.Section.CORPSE),
+                      mercItems = new ItemCollector(D2sWriter.Section.HIRELING),
+                      golemItems = new ItemCollector(D2sWriter.Section.GOLEM);
+        ItemCollector[] collectors = {items, corpseItems, mercItems, golemItems};
+        reader.read(new Visitor() {
+            @Override
+            public void visitQuests(byte[] data, int offset) {
+                save.setRewards(readRewards(data, offset, header.getProgression(), reader.format.getQuestSize()));
+            }
+
+            @Override
+            public void visitAttribute(int id, long value) {
+                switch(id) {
+                    case 0: save.setStr((int) value - defaults[0]); break;
+                    case 1: save.setNrg((int) value - defaults[3]); break;
+                    case 2: save.setDex((int) value - defaults[1]); break;
+                    case 3: save.setVit((int) value - defaults[2]); break;
+                    case 14: save.setGold((int) value); break;
+                    case 15: save.setStashGold((int) value); break;
+                }
+            }
+
+            @Override
+            public void visitSkills(byte[] data, int offset) {
+                for(int i = 0; i < NUM_SKILLS; i++)
+                    save.getSkills()[i] = data[offset + i] & 0xFF;
+            }
+
+            @Override
+            public void visitItem(D2sWriter.Section section, ItemView item) {
+                for(ItemCollector collector : collectors)
+                    if(collector.wants(section))
+                        collector.visitItem(section, item);
+            }
+
+            @Override
+            public boolean wants(D2sWriter.Section section) {
+                return true;
+            }
+        });
+
+        // Belt rejuvs are a flag of the model, items in the storages are kept as they are
+        int rejuvs = 0;
+        for(D2Item item : items.getItems()) {
+            if(item.getItemLocation() == D2Item.BELT && item.getTypeCode().equals("rvl"))
+                rejuvs++;
+            else if(item.getItemLocation() == D2Item.STORED)
+                for(D2Placement.Storage storage : D2Placement.Storage.values())
+                    if(storage.getStore() == item.getItemStore())
+                        save.getItems(storage).add(new D2ItemForm(item));
+        }
+        save.setRejuvs(rejuvs >= 4);
+        for(D2Item item : corpseItems.getItems())
+            save.getCorpse().add(new D2ItemForm(item));
+        if(!golemItems.getItems().isEmpty())
+            save.setGolem(new D2ItemForm(golemItems.getItems().get(0)));
+        if(header.isExpansion() && header.hasMercenary())
+            save.setHireling(readHireling(header, mercItems.getItems()));
+        return save;
+    }
+
+    // The mercenary's level is the highest one its experience reaches
+    private static D2Hireling readHireling(Header header, List<D2Item> items) {
+        D2Hireling hireling = new D2Hireling();
+        hireling.setType(header.getMercenaryType());
+        hireling.setNameId(header.getMercenaryNameId());
+        hireling.setIdentifier(header.getMercenaryId());
+        hireling.setDead(header.isMercenaryDead());
+        if(D2Mercenaries.isType(hireling.getType()))
+            hireling.setLevel(D2Mercenaries.getLevel(hireling.getType(), header.getMercenaryExperience()));
+
+        for(D2Item item : items) {
+            D2ItemForm form = new D2ItemForm(item);
+            switch(item.getEquippedLoc()) {
+                case D2Hireling.HEAD: hireling.setHead(form); break;
+                case D2Hireling.TORSO: hireling.setTorso(form); break;
+                case D2Hireling.RIGHT_HAND: hireling.setWeapon(form); break;
+                case D2Hireling.LEFT_HAND: hireling.setShield(form); break;
+            }
+        }
+        return hireling;
+    }
+
+    // Rewards are set if the quest has any progress in a difficulty up to the current one
+    private static D2QuestRewards readRewards(byte[] data, int offset, int progression, int questSize) {
+        D2QuestRewards rewards = new D2QuestRewards();
+        for(int diff = 0; diff < 3 && diff * 5 <= progression; diff++) {
+            int base = offset + diff * questSize;
+            rewards.setDen(rewards.isDen() || data[base + 2] != 0);
+            rewards.setImbue(rewards.isImbue() || data[base + 6] != 0);
+            rewards.setSkillBook(rewards.isSkillBook() || data[base + 18] != 0);
+            rewards.setLamEsen(rewards.isLamEsen() || data[base + 34] != 0);
+            rewards.setPotion(rewards.isPotion() || data[base + 40] != 0);
+            rewards.setIzual(rewards.isIzual() || data[base + 50] != 0);
+            rewards.setSocket(rewards.isSocket() || data[base + 70] != 0);
+            rewards.setScroll(rewards.isScroll() || data[base + 74] != 0);
+
+            boolean ancients = data[base + 78] != 0;
+            if(diff == 0)
+                rewards.setnAncients(ancients);
+            else if(diff == 1)
+                rewards.setNmAncients(ancients);
+            else
+                rewards.sethAncients(ancients);
+        }
+        return rewards;
+    }
+
+    /**
+     * Fields of the fixed size header, read directly from the save's bytes.
+     */
+    public static class Header {
+        private final byte[] data;
+        private final D2sFormat format;
+
+        private Header(byte[] data, D2sFormat format) {
+            this.data = data;
+            this.format = format;
+        }
+
+        public int getVersion() {
+            return readInt(data, VERSION);
+        }
+
+        public int getLength() {
+            return readInt(data, LENGTH);
+        }
+
+        public int getChecksum() {
+            return readInt(data, CHECKSUM);
+        }
+
+        public String getName() {
+            int len = 0;
+            while(len < format.getNameLength() && data[format.getNameOffset() + len] != 0)
+                len++;
+            return new String(data, format.getNameOffset(), len, StandardCharsets.US_ASCII);
+        }
+
+        public int getStatus() {
+            return data[format.getStatusOffset()] & 0xFF;
+        }
+
+        public boolean isHardcore() {
+            return (getStatus() & STATUS_HARDCORE) != 0;
+        }
+
+        public boolean isExpansion() {
+            return (getStatus() & STATUS_EXPANSION) != 0;
+        }
+
+        public int getProgression() {
+            return data[format.getProgressionOffset()] & 0xFF;
+        }
+
+        public int getClassNum() {
+            return data[format.getClassOffset()] & 0xFF;
+        }
+
+        public int getLevel() {
+            return data[format.getLevelOffset()] & 0xFF;
+        }
+
+        public long getTimestamp() {
+            return readInt(data, format.getTimestampOffset()) & 0xFFFFFFFFL;
+        }
+
+        // The active difficulty has its high bit set, and the act in its low bits
+        public int getStartingAct() {
+            int offset = format.getDifficultyOffset();
+            for(int i = 0; i < 3; i++)
+                if((data[offset + i] & 0x80) != 0)
+                    return data[offset + i] & 0x7;
+            return 0;
+        }
+
+        // A mercenary is hired if its ID isn't 0
+        public boolean hasMercenary() {
+            return getMercenaryId() != 0;
+        }
+
+        public boolean isMercenaryDead() {
+            return readShort(format.getMercenaryOffset()) != 0;
+        }
+
+        public int getMercenaryId() {
+            return readInt(data, format.getMercenaryOffset() + 2);
+        }
+
+        public int getMercenaryNameId() {
+            return readShort(format.getMercenaryOffset() + 6);
+        }
+
+        public int getMercenaryType() {
+            return readShort(format.getMercenaryOffset() + 8);
+        }
+
+        public long getMercenaryExperience() {
+            return readInt(data, format.getMercenaryOffset() + 10) & 0xFFFFFFFFL;
+        }
+
+        private int readShort(int offset) {
+            return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8;
+        }
+    }
+
+    /**
+     * A decoded item. The same instance is reused for every item read, so visitors must copy what they keep.
+     */
+    public static class ItemView {
+        private boolean identified, socketed, simple, ethereal, personalized, hasRW;
+        private int itemLocation, itemStore, equippedLoc, x, y, typeBits, numSocketed;
+
+        private int identifier, iLvl, quality, imgType, expansionMagicProperty, qualityData;
+        private boolean genericMagicItem, expansionItem, idTome;
+        private int prefixId, suffixId, setId, uniqueId, rwId, firstWordId, secondWordId, numPrefixes, numSuffixes;
+        private final int[] prefixIds = new int[3], suffixIds = new int[3];
+        private String owner;
+
+        private int defense, maxDur, curDur, sockets, quantity, propertyLists;
+        private int numProperties, numSetBonuses, numValues, numSetBonusValues;
+        private int[] propertyIds = new int[16], setBonusIds = new int[8];
+        private long[] propertyValues = new long[16], setBonusValues = new long[8];
+
+        private void reset() {
+            identified = socketed = simple = ethereal = personalized = hasRW = false;
+            genericMagicItem = expansionItem = idTome = false;
+            identifier = iLvl = quality = imgType = expansionMagicProperty = 0;
+            qualityData = 4; // D2ExtendedItem's value when not low quality
+            prefixId = suffixId = setId = uniqueId = rwId = firstWordId = secondWordId = numPrefixes = numSuffixes = 0;
+            owner = null;
+            defense = maxDur = curDur = sockets = quantity = propertyLists = 0;
+            numProperties = numSetBonuses = numValues = numSetBonusValues = 0;
+        }
+
+        private void addProperty(int id, boolean setBonus) {
+            if(setBonus) {
+                if(numSetBonuses == setBonusIds.length)
+                    setBonusIds = Arrays.copyOf(setBonusIds, numSetBonuses * 2);
+                setBonusIds[numSetBonuses++] = id;
+            } else {
+                if(numProperties == propertyIds.length)
+                    propertyIds = Arrays.copyOf(propertyIds, numProperties * 2);
+                propertyIds[numProperties++] = id;
+            }
+        }
+
+        // Properties with several parameters add a value for each
+        private void addValue(long value, boolean setBonus) {
+            if(setBonus) {
+                if(numSetBonusValues == setBonusValues.length)
+                    setBonusValues = Arrays.copyOf(setBonusValues, numSetBonusValues * 2);
+                setBonusValues[numSetBonusValues++] = value;
+            } else {
+                if(numValues == propertyValues.length)
+                    propertyValues = Arrays.copyOf(propertyValues, numValues * 2);
+                propertyValues[numValues++] = value;
+            }
+        }
+
+        public boolean isSimple() {
+            return simple;
+        }
+
+        public int getItemLocation() {
+            return itemLocation;
+        }
+
+        public int getItemStore() {
+            return itemStore;
+        }
+
+        public int getEquippedLoc() {
+            return equippedLoc;
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        public int getNumSocketed() {
+            return numSocketed;
+        }
+
+        // The 4 type characters packed into an int, the first in the lowest byte
+        public int getTypeBits() {
+            return typeBits;
+        }
+
+        public String getTypeCode() {
+            char[] code = new char[3];
+            for(int i = 0; i < 3; i++)
+                code[i] = (char) (typeBits >> (i * 8) & 0xFF);
+            return new String(code);
+        }
+
+        public int getIdentifier() {
+            return identifier;
+        }
+
+        public int getQuality() {
+            return quality;
+        }
+
+        public int getNumProperties() {
+            return numProperties;
+        }
+
+        public int getPropertyId(int i) {
+            return propertyIds[i];
+        }
+
+        public int getNumValues() {
+            return numValues;
+        }
+
+        // Values are flattened, so a property with several parameters takes that many indexes
+        public long getPropertyValue(int i) {
+            return propertyValues[i];
+        }
+
+        /**
+         * Build the item model for the current item. Socketed items are passed in by the caller,
+         * since they are read after their parent.
+         */
+        public D2Item toItem(D2Item[] socketedItems) {
+            D2Item.Builder builder = new D2Item.Builder(getTypeCode())
+                .setIdentified(identified).setSocketed(socketed).setSimple(simple).setEthereal(ethereal)
+                .setPersonalized(personalized).setHasRW(hasRW).setItemLocation(itemLocation).setItemStore(itemStore)
+                .setEquippedLoc(equippedLoc).setX(x).setY(y).setNumSocketed(numSocketed).setSocketedItems(socketedItems);
+
+            if(!simple) {
+                D2ItemData itemData = new D2ItemData.Builder()
+                    .setDefense(defense).setMaxDur(maxDur).setCurDur(curDur).setSockets(sockets).setQuantity(quantity)
+                    .setPropertyLists(propertyLists)
+                    .setPropertyIds(Arrays.copyOf(propertyIds, numProperties))
+                    .setPropertyValues(Arrays.copyOf(propertyValues, numValues))
+                    .setSetBonusIds(Arrays.copyOf(setBonusIds, numSetBonuses))
+                    .setSetBonusValues(Arrays.copyOf(setBonusValues, numSetBonusValues))
+                    .build();
+
+                builder.setExtendedData(new D2ExtendedItem.Builder(identifier, iLvl, quality)
+                    .setGenericMagicItem(genericMagicItem).setImgType(imgType)
+                    .setExpansionItem(expansionItem).setExpansionMagicProperty(expansionMagicProperty)
+                    .setQualityData(qualityData).setPrefixId(prefixId).setSuffixId(suffixId)
+                    .setSetId(setId).setUniqueId(uniqueId).setRwId(rwId)
+                    .setFirstWordId(firstWordId).setSecondWordId(secondWordId)
+                    .setPrefixIds(Arrays.copyOf(prefixIds, numPrefixes)).setSuffixIds(Arrays.copyOf(suffixIds, numSuffixes))
+                    .setOwner(owner).setIdTome(idTome).setData(itemData)
+                    .build());
+            }
+
+            return builder.build();
+        }
+    }
+
+    /**
+     * Visitor that builds the item models of the wanted item sections, with socketed items attached to their parent.
+     */
+    public static class ItemCollector implements Visitor {
+        private final D2sWriter.Section section;
+        private final List<D2Item> items = new ArrayList<>();
+
+        // Sockets of the last parent item, filled in as they are read
+        private D2Item[] sockets;
+        private int numSockets;
+
+        public ItemCollector(D2sWriter.Section section) {
+            this.section = section;
+        }
+
+        @Override
+        public boolean wants(D2sWriter.Section section) {
+            return section == this.section;
+        }
+
+        @Override
+        public void visitItem(D2sWriter.Section section, ItemView item) {
+            if(sockets != null && numSockets < sockets.length) {
+                sockets[numSockets++] = item.toItem(null);
+            } else {
+                sockets = item.getNumSocketed() > 0 ? new D2Item[item.getNumSocketed()] : null;
+                numSockets = 0;
+                items.add(item.toItem(sockets));
+            }
+        }
+
+        public List<D2Item> getItems() {
+            return items;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.iamtechknow.d2sbackend;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates a save for every combination of class, level, difficulty and act, using a template save for everything else.
+ *
+ * Combinations are visited with difficulty and act in the outer loops, so sections that only depend on them
+ * (quests and waypoints) are encoded once per pair, and sections that don't depend on the swept values at all
+ * (skills, items, NPCs, corpse, hireling) are encoded once per sweep. The golem section only changes between
+ * Necromancers and the other classes. Only the header and the attributes are encoded for every save.
+ * Item forms are copied for each save. When the template has items without identifiers, they are given identifiers
+ * seeded by each save's name, so the item, corpse, hireling and golem sections are then encoded for every save too.
+ *
+ * Character names can't contain digits, so each name is the template name followed by five letters:
+ * class, level (two letters, base 26), difficulty and act, where 'a' is 0.
+ */
+public class D2sSweep {
+    public static final int MAX_CLASS = 6, MIN_LEVEL = 1, MAX_LEVEL = 99, MAX_ACT = 4;
+    // Normal, Nightmare and Hell
+    public static final int[] DIFFICULTIES = {0, 5, 10};
+    // The full matrix, the most saves a sweep may generate
+    public static final int MAX_SAVES = (MAX_CLASS + 1) * MAX_LEVEL * DIFFICULTIES.length * (MAX_ACT + 1);
+
+    private static final int MAX_PREFIX = 10;
+    private static final D2sWriter.Section[] SECTIONS = D2sWriter.Section.values();
+
+    private final D2Save template;
+    private final int[] classes, levels, difficulties, acts;
+    // Whether item identifiers are assigned per save, from its name
+    private final boolean namedIds;
+
+    // Receives each generated save
+    private interface Sink {
+        void accept(String fileName, byte[] data) throws IOException;
+    }
+
+    public static class Builder {
+        private final D2Save template;
+        private int[] classes = range(0, MAX_CLASS), levels = range(MIN_LEVEL, MAX_LEVEL), difficulties = DIFFICULTIES,
+                      acts = range(0, MAX_ACT);
+
+        public Builder(D2Save template) {
+            this.template = template;
+        }
+
+        public Builder setClasses(int[] classes) {
+            this.classes = check(classes, 0, MAX_CLASS, "Class");
+            return this;
+        }
+
+        public Builder setLevels(int[] levels) {
+            this.levels = check(levels, MIN_LEVEL, MAX_LEVEL, "Level");
+            return this;
+        }
+
+        public Builder setDifficulties(int[] difficulties) {
+            for(int diff : difficulties)
+                if(Arrays.stream(DIFFICULTIES).noneMatch(valid -> valid == diff))
+                    throw new IllegalArgumentException("Difficulty " + diff + " is not 0, 5 or 10");
+            this.difficulties = checkDistinct(difficulties, "Difficulty");
+            return this;
+        }
+
+        public Builder setActs(int[] acts) {
+            this.acts = check(acts, 0, MAX_ACT, "Act");
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException if there are more combinations than the full matrix has
+         */
+        public D2sSweep build() {
+            long count = (long) classes.length * levels.length * difficulties.length * acts.length;
+            if(count > MAX_SAVES)
+                throw new IllegalArgumentException(count + " combinations is more than " + MAX_SAVES);
+            return new D2sSweep(this);
+        }
+
+        private static int[] check(int[] values, int min, int max, String name) {
+            for(int value : values)
+                if(value < min || value > max)
+                    throw new IllegalArgumentException(name + " " + value + " is not between " + min + " and " + max);
+            return checkDistinct(values, name);
+        }
+
+        // A value given twice would generate two saves with the same file name
+        private static int[] checkDistinct(int[] values, String name) {
+            int[] sorted = values.clone();
+            Arrays.sort(sorted);
+            for(int i = 1; i < sorted.length; i++)
+                if(sorted[i] == sorted[i - 1])
+                    throw new IllegalArgumentException(name + " " + sorted[i] + " is given more than once");
+            return values;
+        }
+    }
+
+    private D2sSweep(Builder builder) {
+        template = builder.template;
+        classes = builder.classes;
+        levels = builder.levels;
+        difficulties = builder.difficulties;
+        acts = builder.acts;
+        namedIds = needsIdentifiers(template);
+    }
+
+    private static boolean needsIdentifiers(D2Save template) {
+        List<D2ItemForm> forms = new ArrayList<>(template.getCorpse());
+        for(D2Placement.Storage storage : D2Placement.Storage.values())
+            forms.addAll(template.getItems(storage));
+        forms.add(template.getGolem());
+        D2Hireling hireling = template.getHireling();
+        if(hireling != null)
+            forms.addAll(Arrays.asList(hireling.getHead(), hireling.getTorso(), hireling.getWeapon(), hireling.getShield()));
+
+        return forms.stream().anyMatch(form -> form != null && !form.isSimple() && form.getItem() == null &&
+            form.getIdentifier() == 0);
+    }
+
+    /**
+     * Write each save into the given directory, which is created if needed.
+     * @return the number of saves written
+     */
+    public int writeToDirectory(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        return run((fileName, data) -> Files.write(dir.resolve(fileName), data));
+    }
+
+    /**
+     * Write each save as an entry of a ZIP archive. The stream is finished but not closed.
+     * @return the number of saves written
+     */
+    public int writeToZip(OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        int count = run((fileName, data) -> {
+            zip.putNextEntry(new ZipEntry(fileName));
+            zip.write(data);
+            zip.closeEntry();
+        });
+        zip.finish();
+        return count;
+    }
+
+    /**
+     * Parse a list of values, such as "0-6", "0,5,10" or "1-10,20".
+     * @throws IllegalArgumentException if a value is not a number between min and max, which ranges are checked
+     * against before they are expanded
+     */
+    public static int[] parseValues(String values, int min, int max) {
+        return Arrays.stream(values.split(","))
+            .map(String::trim)
+            .flatMapToInt(part -> {
+                int dash = part.indexOf('-');
+                if(dash < 0)
+                    return Arrays.stream(new int[]{checkValue(Integer.parseInt(part), min, max)});
+                int from = checkValue(Integer.parseInt(part.substring(0, dash)), min, max),
+                    to = checkValue(Integer.parseInt(part.substring(dash + 1)), min, max);
+                return Arrays.stream(range(from, to));
+            })
+            .toArray();
+    }
+
+    private static int checkValue(int value, int min, int max) {
+        if(value < min || value > max)
+            throw new IllegalArgumentException(value + " is not between " + min + " and " + max);
+        return value;
+    }
+
+    // Visit all combinations. The cached section for a slot is reused while its key stays the same
+    private int run(Sink sink) throws IOException {
+        byte[][] sections = new byte[SECTIONS.length][];
+        long[] keys = new long[SECTIONS.length];
+        Arrays.fill(keys, -1);
+        int count = 0;
+
+        for(int diff : difficulties)
+            for(int act : acts)
+                for(int classNum : classes)
+                    for(int level : levels) {
+                        D2Save save = newSave(classNum, level, diff, act);
+                        if(!save.checkValid())
+                            continue;
+
+                        for(D2sWriter.Section section : SECTIONS) {
+                            int idx = section.ordinal();
+                            long key = sectionKey(section, classNum, level, diff, act);
+                            if(key < 0 || key != keys[idx]) {
+                                sections[idx] = D2sWriter.encodeSection(section, save);
+                                keys[idx] = key;
+                            }
+                        }
+
+                        sink.accept(save.getName() + ".d2s", D2sWriter.gather(sections));
+                        count++;
+                    }
+
+        return count;
+    }
+
+    /**
+     * Determine which swept values a section depends on.
+     * @return a key that is equal for saves sharing the section, or -1 if the section is never shared
+     */
+    private long sectionKey(D2sWriter.Section section, int classNum, int level, int diff, int act) {
+        switch(section) {
+            case HEADER:
+            case ATTRIBUTES:
+                return -1;
+            case QUESTS:
+            case WAYPOINTS:
+                return (diff << 8) | act;
+            case ITEMS:
+            case CORPSE:
+            case HIRELING:
+                return namedIds ? -1 : 0;
+            case GOLEM: // Only Necromancers get the template's golem
+                return namedIds ? -1 : classNum == D2Save.NECROMANCER ? 1 : 0;
+            default:
+                return 0;
+        }
+    }
+
+    // Copy the template, then apply the swept values
+    private D2Save newSave(int classNum, int level, int diff, int act) {
+        D2Save save = new D2Save();
+        save.setName(getName(classNum, level, diff, act));
+        save.setVersion(template.getVersion());
+        save.setClassNum(classNum);
+        save.setLevel(level);
+        save.setDifficulty(diff);
+        save.setStartingAct(act);
+        save.setExpansion(template.isExpansion());
+        save.setHardcore(template.isHardcore());
+        save.setRejuvs(template.isRejuv());
+        save.setGold(template.getGold());
+        save.setStashGold(template.getStashGold());
+        save.setStr(template.getStr());
+        save.setDex(template.getDex());
+        save.setVit(template.getVit());
+        save.setNrg(template.getNrg());
+        save.setRewards(template.getRewards());
+        save.setProgress(template.getProgress());
+        save.setSkills(template.getSkills());
+        // Checking a save places its items and may assign their identifiers, so each save gets its own forms
+        save.setInventory(copy(template.getInventory()));
+        save.setStash(copy(template.getStash()));
+        save.setCube(copy(template.getCube()));
+        save.setCorpse(copy(template.getCorpse()));
+        if(classNum == D2Save.NECROMANCER && template.getGolem() != null)
+            save.setGolem(new D2ItemForm(template.getGolem()));
+        if(template.getHireling() != null)
+            save.setHireling(new D2Hireling(template.getHireling()));
+        return save;
+    }
+
+    private static List<D2ItemForm> copy(List<D2ItemForm> forms) {
+        List<D2ItemForm> copies = new ArrayList<>(forms.size());
+        for(D2ItemForm form : forms)
+            copies.add(new D2ItemForm(form));
+        return copies;
+    }
+
+    private String getName(int classNum, int level, int diff, int act) {
+        String prefix = template.getName() == null ? "Sweep" : template.getName();
+        if(prefix.length() > MAX_PREFIX)
+            prefix = prefix.substring(0, MAX_PREFIX);
+
+        return prefix + (char) ('a' + classNum) + (char) ('a' + level / 26) + (char) ('a' + level % 26)
+            + (char) ('a' + diff) + (char) ('a' + act);
+    }
+
+    private static int[] range(int from, int to) {
+        int[] arr = new int[Math.max(0, to - from + 1)];
+        for(int i = 0; i < arr.length; i++)
+            arr[i] = from + i;
+        return arr;
+    }
+
+    /**
+     * Write a sweep to a directory from the command line.
+     * Arguments: output directory, then optionally classes, levels, difficulties and acts (e.g. "0-6 1-99 0,5,10 0-4").
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 1) {
+            System.err.println("Usage: D2sSweep <output dir> [classes] [levels] [difficulties] [acts]");
+            System.exit(1);
+        }
+
+        D2sSweep.Builder builder = new D2sSweep.Builder(new D2Save());
+        if(args.length > 1)
+            builder.setClasses(parseValues(args[1], 0, MAX_CLASS));
+        if(args.length > 2)
+            builder.setLevels(parseValues(args[2], MIN_LEVEL, MAX_LEVEL));
+        if(args.length > 3)
+            builder.setDifficulties(parseValues(args[3], 0, DIFFICULTIES[DIFFICULTIES.length - 1]));
+        if(args.length > 4)
+            builder.setActs(parseValues(args[4], 0, MAX_ACT));
+
+        long start = System.nanoTime();
+        int count = builder.build().writeToDirectory(Paths.get(args[0]));
+        System.out.printf("Wrote %d saves in %d ms%n", count, (System.nanoTime() - start) / 1_000_000);
+    }
+}
@@ -0,0 +1,128 @@
+package com.iamtechknow.d2sbackend;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Checks the magic number, supported version, length and checksum of saves, and optionally repairs bad length and checksum fields.
+ *
+ * Each file is memory-mapped, and files are checked in parallel. A file with the wrong magic number or version
+ * is reported but never modified, since it may not be a save this project can write.
+ */
+public class D2sVerifier {
+    private static final int VERSION_OFFSET = 4, LENGTH_OFFSET = 8, CHECKSUM_OFFSET = 12, MIN_SIZE = 16;
+
+    public enum Result { OK, REPAIRED, BAD_MAGIC, BAD_VERSION, BAD_LENGTH, BAD_CHECKSUM, UNREADABLE }
+
+    private final boolean repair;
+    private final LongAdder bytes = new LongAdder();
+
+    public D2sVerifier(boolean repair) {
+        this.repair = repair;
+    }
+
+    /**
+     * Verify one file, rewriting its length and checksum if they are bad and repairs are enabled.
+     */
+    public Result verify(Path file) {
+        StandardOpenOption[] options = repair ? new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE}
+                                              : new StandardOpenOption[]{StandardOpenOption.READ};
+        try(FileChannel channel = FileChannel.open(file, options)) {
+            long size = channel.size();
+            bytes.add(size);
+            if(size < MIN_SIZE || size > Integer.MAX_VALUE)
+                return Result.BAD_LENGTH;
+
+            MappedByteBuffer buffer = channel.map(repair ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if(buffer.getInt(0) != D2sWriter.MAGIC_NUMBER)
+                return Result.BAD_MAGIC;
+            if(D2sFormat.forVersion(buffer.getInt(VERSION_OFFSET)) == null)
+                return Result.BAD_VERSION;
+
+            // The length field is part of the checksum, so it has to be fixed first
+            boolean badLength = buffer.getInt(LENGTH_OFFSET) != size;
+            if(badLength && !repair)
+                return Result.BAD_LENGTH;
+            if(badLength)
+                buffer.putInt(LENGTH_OFFSET, (int) size);
+
+            int checksum = D2sWriter.checksum(buffer);
+            if(!badLength && buffer.getInt(CHECKSUM_OFFSET) == checksum)
+                return Result.OK;
+            if(!repair)
+                return Result.BAD_CHECKSUM;
+
+            buffer.putInt(CHECKSUM_OFFSET, checksum);
+            buffer.force();
+            return Result.REPAIRED;
+        } catch(IOException e) {
+            return Result.UNREADABLE;
+        }
+    }
+
+    /**
+     * Verify files in parallel.
+     * @return files grouped by their result
+     */
+    public Map<Result, List<Path>> verifyAll(List<Path> files) {
+        return files.parallelStream().collect(Collectors.groupingByConcurrent(this::verify));
+    }
+
+    /**
+     * @return total size of the files verified so far
+     */
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * Verify every .d2s file under a directory from the command line, printing the files with problems.
+     * Arguments: directory, then optionally --repair. Exits with 1 if any file is still bad.
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 1 || (args.length > 1 && !args[1].equals("--repair"))) {
+            System.err.println("Usage: D2sVerifier <dir> [--repair]");
+            System.exit(1);
+        }
+
+        List<Path> files;
+        try(Stream<Path> paths = Files.walk(Paths.get(args[0]))) {
+            files = paths.filter(path -> path.toString().toLowerCase().endsWith(".d2s") && Files.isRegularFile(path))
+                .collect(Collectors.toList());
+        }
+
+        D2sVerifier verifier = new D2sVerifier(args.length > 1);
+        long start = System.nanoTime();
+        Map<Result, List<Path>> results = verifier.verifyAll(files);
+        double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+
+        int bad = 0;
+        for(Result result : Result.values()) {
+            List<Path> paths = results.getOrDefault(result, List.of());
+            if(result != Result.OK)
+                paths.stream().sorted().forEach(path -> System.out.println(result + " " + path));
+            if(result != Result.OK && result != Result.REPAIRED)
+                bad += paths.size();
+        }
+
+        for(Result result : Result.values())
+            System.out.printf("%s: %d%n", result, results.getOrDefault(result, List.of()).size());
+        System.out.printf("Checked %d files (%.1f MB) in %.3f s: %.0f files/s, %.1f MB/s%n", files.size(),
+            verifier.getBytes() / 1e6, seconds, files.size() / seconds, verifier.getBytes() / 1e6 / seconds);
+
+        if(bad > 0)
+            System.exit(1);
+    }
+}
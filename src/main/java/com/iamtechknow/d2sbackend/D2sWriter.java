@@ -1,25 +1,71 @@
 package com.iamtechknow.d2sbackend;
 
 import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.time.Instant;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * Primary class to create a byte chunk representing a Diablo 2 1.13c Save
  */
 public class D2sWriter {
-    private static final int MAGIC_NUMBER = 0xaa55aa55, VERSION = 0x0060,
-                        ACT1 = 0, ACT2 = 1, ACT3 = 2, ACT4 = 3, ACT5 = 4;
-    private static final byte[] QUEST_HEADER = new byte[]{0x57, 0x6F, 0x6F, 0x21, 0x6, 0, 0, 0, 0x2A, 0x1},
-                                WAYPOINT_HEADER = new byte[]{0x57, 0x53, 0x1, 0, 0, 0, 0x50, 0};
+    static final int MAGIC_NUMBER = 0xaa55aa55;
+    // Unknown data and position of a corpse, before its items
+    static final int CORPSE_DATA_SIZE = 12;
+    private static final int ACT1 = 0, ACT2 = 1, ACT3 = 2, ACT4 = 3, ACT5 = 4;
+    // Quest data of the five acts in a difficulty, 16 bytes each except for 18 in act 4
+    private static final int QUEST_DATA_SIZE = 82;
     private static final byte COMPLETED_BYTE_1 = (byte) 0xFD, COMPLETED_BYTE_2 = (byte) 0x9F,
                             JUST_COMPLETED_BYTE_1 = (byte) 0xFE, JUST_COMPLETED_BYTE_2 = (byte) 0xFF;
+    // The item count is 16 bits
+    private static final int MAX_ITEMS = 0xFFFF;
+
+    // Four full rejuvs in the belt, that differ only in X position since belts have no rows
+    private static final D2Item[] REJUVS = new D2Item[4];
+
+    static {
+        D2Item.Builder builder = new D2Item.Builder("rvl").setSimple(true).setItemLocation(D2Item.BELT);
+        for(int i = 0; i < REJUVS.length; i++)
+            REJUVS[i] = builder.setX(i).build();
+    }
 
     private ByteArrayOutputStream stream;
 
+    // Layout of the save being written, and the tables its items are encoded with
+    private D2sFormat format;
+    private D2GameData gameData;
+
+    // Where sections and the fields of bit packed sections are recorded, if anywhere
+    private D2BitTrace trace;
+
+    // Where the item count goes, and the count, written once every item is
+    private int itemCountOffset = -1, itemCount;
+
     public D2sWriter(ByteArrayOutputStream stream) {
         this.stream = stream;
     }
 
+    /**
+     * Writer that records each section in the trace, and each field of the attributes and items. Offsets are from
+     * the start of the stream, so it should be empty to get offsets into the file.
+     */
+    public D2sWriter(ByteArrayOutputStream stream, D2BitTrace trace) {
+        this.stream = stream;
+        this.trace = trace;
+    }
+
+    /**
+     * Sections of the save in file order. Each section may be encoded on its own and gathered later,
+     * which lets callers reuse the bytes of sections whose inputs did not change.
+     */
+    public enum Section {
+        HEADER, QUESTS, WAYPOINTS, NPCS, ATTRIBUTES, SKILLS, ITEMS, CORPSE, HIRELING, GOLEM
+    }
+
     /**
      * Write all the data needed for the save to be valid.
      */
@@ -27,15 +73,82 @@ public class D2sWriter {
         if(save == null)
             throw new NullPointerException("Save cannot be null. Check that it is parsed correctly?");
 
-        writeHeader(save);
-        writeAttributes(save);
-        writeSkills(save);
-        writeItems(save);
-        writeCorpse();
+        format = getFormat(save);
+        gameData = D2GameData.current();
+        for(Section section : Section.values())
+            encode(section, save);
+    }
+
+    /**
+     * Write a single section of the save. Hireling and golem sections are only written for expansion saves.
+     */
+    public void writeSection(Section section, D2Save save) {
+        format = getFormat(save);
+        gameData = D2GameData.current();
+        encode(section, save);
+    }
+
+    private static D2sFormat getFormat(D2Save save) {
+        D2sFormat format = D2sFormat.forVersion(save.getVersion());
+        if(format == null)
+            throw new IllegalArgumentException("Unsupported save version " + save.getVersion());
+        return format;
+    }
 
-        if(save.isExpansion()) {
-            writeHireling();
-            writeGolem();
+    private void encode(Section section, D2Save save) {
+        if(trace == null) {
+            encodeData(section, save);
+            return;
+        }
+
+        String name = section.name().toLowerCase();
+        int span = trace.begin(name, stream.size() * 8L);
+        String outer = trace.enter(name);
+        encodeData(section, save);
+        trace.restore(outer);
+        trace.end(span, stream.size() * 8L);
+    }
+
+    private void encodeData(Section section, D2Save save) {
+        switch(section) {
+            case HEADER:
+                writeHeader(save);
+                break;
+            case QUESTS:
+                if(save.getProgress() != null)
+                    writeProgress(format.getQuestHeader(), format.getQuestSize(), save.getProgress(), true);
+                else
+                    writeQuests(save.getDifficulty(), save.getStartingAct(), save.getRewards(), save.isExpansion());
+                break;
+            case WAYPOINTS:
+                if(save.getProgress() != null)
+                    writeProgress(format.getWaypointHeader(), format.getWaypointSize(), save.getProgress(), false);
+                else
+                    writeWaypoints(save);
+                break;
+            case NPCS:
+                writeNpcs();
+                break;
+            case ATTRIBUTES:
+                writeAttributes(save);
+                break;
+            case SKILLS:
+                writeSkills(save);
+                break;
+            case ITEMS:
+                writeItems(save);
+                break;
+            case CORPSE:
+                writeCorpse(save.getCorpse());
+                break;
+            case HIRELING:
+                if(save.isExpansion())
+                    writeHireling(save.getHireling());
+                break;
+            case GOLEM:
+                if(save.isExpansion())
+                    writeGolem(save.getGolem());
+                break;
         }
     }
 
@@ -44,44 +157,110 @@ public class D2sWriter {
     }
 
     /**
-     * Obtain the byte array, calculate and write the checksum and file length at the beginning.
+     * Obtain the byte array, fill in the item count, then calculate and write the checksum and file length at the beginning.
      */
     public byte[] toByteArray() {
         byte[] result = stream.toByteArray();
-        int len = result.length, checksum = 0, offset = 8;
+        patchItemCount(result);
+        finish(result);
+        return result;
+    }
 
-        // Write the length
-        for(int i = 0; i < 4; i++)
-            result[offset + i] = (byte) (len >> (8 * i) );
+    /**
+     * Encode one section of the save into its own byte array.
+     */
+    public static byte[] encodeSection(Section section, D2Save save) {
+        D2sWriter writer = new D2sWriter(new ByteArrayOutputStream());
+        writer.writeSection(section, save);
+        byte[] result = writer.stream.toByteArray();
+        writer.patchItemCount(result);
+        return result;
+    }
 
-        // Compute the checksum and write it. The bytes need to be unsigned
-        // Info on checksum is at https://evilertoaster.wordpress.com/2008/05/19/diablo-2-111-save-file/#comment-179
-        for(byte b : result)
+    /**
+     * Concatenate encoded sections in file order, then write the file length and checksum.
+     * @param sections encoded sections indexed by {@link Section#ordinal()}
+     * @return the complete save file
+     */
+    public static byte[] gather(byte[][] sections) {
+        int len = 0;
+        for(byte[] section : sections)
+            len += section.length;
+
+        byte[] result = new byte[len];
+        int offset = 0;
+        for(byte[] section : sections) {
+            System.arraycopy(section, 0, result, offset, section.length);
+            offset += section.length;
+        }
+
+        finish(result);
+        return result;
+    }
+
+    /**
+     * Compute the save checksum. The checksum field itself (offset 12) must be zero when this is called.
+     * Info on checksum is at https://evilertoaster.wordpress.com/2008/05/19/diablo-2-111-save-file/#comment-179
+     */
+    public static int checksum(byte[] data) {
+        // The bytes need to be unsigned
+        int checksum = 0;
+        for(byte b : data)
             checksum = (checksum << 1) + Byte.toUnsignedInt(b) + ( (checksum & 0x80000000) != 0 ? 1 : 0);
+        return checksum;
+    }
+
+    /**
+     * Compute the save checksum of a buffer from index 0 to its limit, counting the checksum field as zero.
+     * Reads 8 bytes at a time, so memory-mapped files are not accessed byte by byte.
+     */
+    public static int checksum(ByteBuffer data) {
+        ByteBuffer buffer = data.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int len = buffer.limit(), checksum = 0, i = 0;
+        for(; i + 8 <= len; i += 8) {
+            long word = buffer.getLong(i);
+            if(i == 8) // Bytes 12 - 15 are the low half of this word
+                word &= 0xFFFFFFFF00000000L;
+
+            for(int shift = 56; shift >= 0; shift -= 8)
+                checksum = (checksum << 1) + (int) (word >>> shift & 0xFF) + (checksum >>> 31);
+        }
+
+        for(; i < len; i++) {
+            int b = i >= 12 && i < 16 ? 0 : Byte.toUnsignedInt(buffer.get(i));
+            checksum = (checksum << 1) + b + (checksum >>> 31);
+        }
+        return checksum;
+    }
+
+    // Write the file length at offset 8, then the checksum at offset 12
+    private static void finish(byte[] result) {
+        int len = result.length, offset = 8;
+        for(int i = 0; i < 4; i++)
+            result[offset + i] = (byte) (len >> (8 * i) );
 
         offset = 12;
         for(int i = 0; i < 4; i++)
-            result[offset + i] = (byte) (checksum >> (8 * i) );
+            result[offset + i] = 0;
 
-        return result;
+        int checksum = checksum(result);
+        for(int i = 0; i < 4; i++)
+            result[offset + i] = (byte) (checksum >> (8 * i) );
     }
 
     /**
-     * Write the file header, or the first 765 bytes.
+     * Write the character portion of the file header, everything before the quest data.
+     * Together with quests, waypoints and NPC data this makes up the fixed size part of the file.
+     * The constant fields come from the layout's template, so only the character's fields are set here.
+     * Length and checksum are left 0 and set later.
      */
     private void writeHeader(D2Save save) {
-        writeInt(MAGIC_NUMBER);
-        writeInt(VERSION);
-        writeInt(0); // Leave length and checksum 0 and set them later
-        writeInt(0);
-        
-        // Active weapon
-        writeInt(0);
-        
-        // Character Name (padded to 16 bytes)
-        for(char c : save.getName().toCharArray())
-            stream.write(c);
-        skip(16 - save.getName().length());
+        byte[] header = format.getHeaderTemplate().clone();
+
+        // Character Name (padded with 0)
+        String name = save.getName();
+        for(int i = 0; i < name.length(); i++)
+            header[format.getNameOffset() + i] = (byte) name.charAt(i);
 
         // Character status
         byte status = 0;
@@ -89,58 +268,31 @@ public class D2sWriter {
             status |= 1 << 2;
         if(save.isExpansion())
             status |= 1 << 5;
-        stream.write(status);
+        header[format.getStatusOffset()] = status;
 
-        // Character progression
-        stream.write(save.getDifficulty());
-
-        // Two unknown bytes, Character class
-        skip(2);
-        stream.write(save.getClassNum());
-
-        // Unknown bytes
-        stream.write(0x10);
-        stream.write(0x1E);
-
-        // Character level
-        stream.write(save.getLevel());
-
-        // Unknown bytes, timestamp
-        writeInt(0);
-        writeInt((int) Instant.now().getEpochSecond());
-
-        // Unknown bytes
-        writeInt(0xFFFFFFFF);
-
-        // Hotkeyed skills for 16 keys and 4 mouse keys - 0xFFFF0000 means no skill
-        for(int i = 0; i < 16; i++)
-            writeInt(0x0000FFFF);
-        skip(16);
-
-        // Character appearance - for now, just set it so nothing is equipped
-        for(int i = 0; i < 8; i++)
-            writeInt(0xFFFFFFFF);
+        header[format.getProgressionOffset()] = (byte) save.getDifficulty();
+        header[format.getClassOffset()] = (byte) save.getClassNum();
+        header[format.getLevelOffset()] = (byte) save.getLevel();
+        D2sFormat.writeInt(header, format.getTimestampOffset(), (int) Instant.now().getEpochSecond());
 
         // Difficulty and starting act. Three bytes, one for each difficulty.
-        writeArray(getDifficulty(save));
-
-        // Map ID. This may be safely set to 0 and the game can change it itself.
-        writeInt(0);
-
-        // Unknown bytes + Hireling Data + padding
-        skip(2 + 14 + 144);
-
-        writeQuests(save.getDifficulty(), save.getStartingAct(), save.getRewards(), save.isExpansion());
-
-        writeWaypoints(save);
-
-        // Unknown byte
-        stream.write(1);
+        byte[] difficulty = getDifficulty(save);
+        System.arraycopy(difficulty, 0, header, format.getDifficultyOffset(), difficulty.length);
+
+        // Mercenary, if one is hired
+        D2Hireling hireling = save.isExpansion() ? save.getHireling() : null;
+        if(hireling != null) {
+            int offset = format.getMercenaryOffset();
+            header[offset] = (byte) (hireling.isDead() ? 1 : 0);
+            D2sFormat.writeInt(header, offset + 2, hireling.getIdentifier());
+            header[offset + 6] = (byte) hireling.getNameId();
+            header[offset + 7] = (byte) (hireling.getNameId() >> 8);
+            header[offset + 8] = (byte) hireling.getType();
+            header[offset + 9] = (byte) (hireling.getType() >> 8);
+            D2sFormat.writeInt(header, offset + 10, hireling.getExperience());
+        }
 
-        // NPC introductions
-        stream.write(0x77);
-        stream.write(0x34);
-        skip(49);
+        stream.write(header, 0, header.length);
     }
 
     /**
@@ -148,7 +300,7 @@ public class D2sWriter {
      * that is waypoints in a given act only appear if the character has traveled to the act.
      */
     private void writeQuests(int saveDiff, int startingAct, D2QuestRewards quest, boolean isExpansion) {
-        writeArray(QUEST_HEADER);
+        writeArray(format.getQuestHeader());
 
         // Quest information for Normal, Nightmare, Hell modes.
         for(int i = 0; i < 3; i++)
@@ -167,7 +319,7 @@ public class D2sWriter {
      */
     private void writeQuestForDiff(int currDiff, int saveDiff, int startingAct, D2QuestRewards quest, boolean isExpansion) {
         if(currDiff > saveDiff) {
-            skip(96);
+            skip(format.getQuestSize());
             return;
         }
 
@@ -258,7 +410,7 @@ public class D2sWriter {
 
         writeArray(arr);
 
-        skip(14); // Quest Padding
+        skip(format.getQuestSize() - QUEST_DATA_SIZE); // Quest Padding
     }
 
     /**
@@ -266,7 +418,7 @@ public class D2sWriter {
      * all town waypoints are unlocked for that difficulty.
      */
     private void writeWaypoints(D2Save save) {
-        writeArray(WAYPOINT_HEADER);
+        writeArray(format.getWaypointHeader());
 
         // Data for each difficulty - 2 unknown bytes, 5 byte bit vector for all WPs, then padding
         for(int i = 0; i < 3; i++) {
@@ -275,100 +427,158 @@ public class D2sWriter {
             stream.write(2);
             stream.write(1);
             writeArray(currData);
-            skip(17);
+            skip(format.getWaypointSize() - 2 - currData.length);
         }
     }
 
+    // Write the section header, then copy the quest or waypoint blocks of every difficulty as they are
+    private void writeProgress(byte[] header, int blockSize, D2Progress progress, boolean quests) {
+        if(blockSize != (quests ? D2Progress.QUEST_SIZE : D2Progress.WAYPOINT_SIZE))
+            throw new IllegalArgumentException("Version " + format.getVersion() + " has a different progress layout");
+
+        ByteBuffer buffer = ByteBuffer.allocate(header.length + 3 * blockSize).order(ByteOrder.LITTLE_ENDIAN).put(header);
+        if(quests)
+            progress.writeQuests(buffer);
+        else
+            progress.writeWaypoints(buffer);
+        stream.write(buffer.array(), 0, buffer.capacity());
+    }
+
+    // Unknown byte, then NPC introductions
+    private void writeNpcs() {
+        writeArray(format.getNpcHeader());
+        skip(format.getNpcSize() - format.getNpcHeader().length);
+    }
+
     /**
      * Write the attributes of the character. This section has variable length
      */
     private void writeAttributes(D2Save save) {
-        stream.write(0x67); // "gf"
-        stream.write(0x66);
+        writeArray(format.getAttributesMarker()); // "gf"
 
         D2CharacterAttributes attrs = new D2CharacterAttributes(save);
-        int[] lengths_map = new int[]{10, 10, 10, 10, 10, 8, 21, 21, 21, 21, 21, 21, 7, 32, 25, 25};
         int[] ids = getIds(attrs);
         long[] values = getValues(attrs, ids.length);
 
-        writeVariableData(ids, values, lengths_map, new int[16], 16);
+        BitWriter writer = new BitWriter(stream, trace);
+        format.getAttributeEncoder().writeList(writer, ids, values, 0);
+        writer.pad();
     }
 
     // Write the amount of skill points allocated for each skill
     private void writeSkills(D2Save save) {
-        stream.write(0x69); // "if"
-        stream.write(0x66);
+        writeArray(format.getSkillsMarker()); // "if"
         for(int i : save.getSkills())
             stream.write(i);
     }
 
-    // Gather all D2Item objects and write them
+    // Write the items one at a time as they are built, then the count once it is known
     private void writeItems(D2Save save) {
-        stream.write(0x4A);
-        stream.write(0x4D);
-        
-        int numItems = 0;
-        if(save.isRejuv()) {
-            numItems += 4;
-        }
-        stream.write(numItems);
-        stream.write(numItems >> 8);
-        
-        D2Item.Builder builder;
-        D2Item[] items = new D2Item[numItems];
-        int idx = 0;
-        
-        // Create four full rejuvs, each that differ only in X position
-        if(save.isRejuv()) {
-            builder = new D2Item.Builder("rvl");
-            builder.setSimple(true).setItemLocation(D2Item.BELT);
-            
-            for(int i = idx; i < idx + 4; i++) { // belts have no rows
-                builder.setX(i - idx);
-                items[idx + i] = builder.build();
-            }
-        }
+        writeArray(format.getItemsMarker());
+        itemCountOffset = stream.size();
+        skip(2);
 
-        // Write the simple and extended item data
-        D2sItemWriter itemWriter = new D2sItemWriter(stream, new BitWriter(stream));
-        for(D2Item item : items)
-            itemWriter.writeItem(item);
+        D2sItemWriter itemWriter = new D2sItemWriter(stream, new BitWriter(stream, trace), format, gameData);
+        itemCount = 0;
+        for(Iterator<D2Item> items = new ItemIterator(save); items.hasNext(); itemCount++) {
+            if(itemCount == MAX_ITEMS)
+                throw new IllegalArgumentException("A save holds at most " + MAX_ITEMS + " items");
+            itemWriter.writeItem(items.next());
+        }
     }
 
-    // save as first item header, number indicate how many items in corpse which shall be 0
-    private void writeCorpse() {
-        stream.write(0x4A); 
-        stream.write(0x4D);
-        skip(2);
+    // Write the item count at the offset saved by writeItems, if the items were written
+    private void patchItemCount(byte[] result) {
+        if(itemCountOffset < 0)
+            return;
+        result[itemCountOffset] = (byte) itemCount;
+        result[itemCountOffset + 1] = (byte) (itemCount >> 8);
     }
 
-    // just write "jf", no items to store because no hireling
-    private void writeHireling() {
-        stream.write(0x6A); 
-        stream.write(0x66);
+    /**
+     * Iterates over the items of the save in the order they are written: the belt rejuvs, then the inventory, stash
+     * and cube. Submitted items are built as they are reached, so only one is held at a time.
+     */
+    private static class ItemIterator implements Iterator<D2Item> {
+        private static final D2Placement.Storage[] STORAGES = D2Placement.Storage.values();
+
+        private final D2Save save;
+        private int rejuvs, storage;
+        private Iterator<D2ItemForm> forms = Collections.emptyIterator();
+
+        ItemIterator(D2Save save) {
+            this.save = save;
+            rejuvs = save.isRejuv() ? REJUVS.length : 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while(rejuvs == 0 && !forms.hasNext() && storage < STORAGES.length)
+                forms = save.getItems(STORAGES[storage++]).iterator();
+            return rejuvs > 0 || forms.hasNext();
+        }
+
+        @Override
+        public D2Item next() {
+            if(!hasNext())
+                throw new NoSuchElementException();
+            if(rejuvs > 0)
+                return REJUVS[REJUVS.length - rejuvs--];
+            return forms.next().toItem(STORAGES[storage - 1].getStore());
+        }
     }
 
-    // just write "kf", and 0 indicating no golem
-    private void writeGolem() {
-        stream.write(0x6B); 
-        stream.write(0x66);
+    // Same marker as the items, then the number of corpses. A character with items on its corpse has one,
+    // with its position left 0 and the items as they were in the inventory.
+    private void writeCorpse(List<D2ItemForm> corpse) {
+        writeArray(format.getItemsMarker());
+        if(corpse.isEmpty()) {
+            skip(2);
+            return;
+        }
+
+        stream.write(1);
         stream.write(0);
+        skip(CORPSE_DATA_SIZE);
+        writeArray(format.getItemsMarker());
+        stream.write(corpse.size());
+        stream.write(corpse.size() >> 8);
+
+        D2sItemWriter itemWriter = new D2sItemWriter(stream, new BitWriter(stream, trace), format, gameData);
+        for(D2ItemForm item : corpse)
+            itemWriter.writeItem(item.toItem(D2Item.INVENTORY));
     }
 
-    /**
-     * Helper method to write four bytes to the stream, in little endian order.
-     * @param i the integer to write
-     */
-    private void writeInt(int i) {
-        stream.write(i);
-        stream.write(i >> 8);
-        stream.write(i >> 16);
-        stream.write(i >> 24);
+    // Write "jf", then the items of the mercenary if one is hired. Its items keep their encoding between saves.
+    private void writeHireling(D2Hireling hireling) {
+        writeArray(format.getHirelingMarker());
+        if(hireling == null)
+            return;
+
+        D2Item[] items = hireling.getItems();
+        writeArray(format.getItemsMarker());
+        stream.write(items.length);
+        stream.write(items.length >> 8);
+
+        D2sItemWriter itemWriter = new D2sItemWriter(stream, new BitWriter(stream, trace), format, gameData);
+        for(D2Item item : items)
+            itemWriter.writeCached(item);
+    }
+
+    // Write "kf", then whether there is an Iron Golem and the item it was made from
+    private void writeGolem(D2ItemForm golem) {
+        writeArray(format.getGolemMarker());
+        if(golem == null) {
+            stream.write(0);
+            return;
+        }
+
+        stream.write(1);
+        new D2sItemWriter(stream, new BitWriter(stream, trace), format, gameData).writeItem(golem.toItem(0));
     }
 
     private void writeArray(byte[] arr) {
-        for(byte b : arr)
-            stream.write(b);
+        stream.write(arr, 0, arr.length);
     }
 
     /**
@@ -507,26 +717,4 @@ public class D2sWriter {
 
         return arr;
     }
-
-    private void writeVariableData(int[] ids, long[] values, int[] lengths_map, int[] bias, int maxId) {
-        BitWriter writer = new BitWriter(stream);
-        for(int i = 0; i < ids.length; i++) {
-            if(ids[i] < 0 || ids[i] > maxId)
-                throw new IllegalArgumentException("Variable ID " + ids[i] + " does not exist");
-
-            // Put ID into integer, reverse the last 9 bits, write the 9 bits in reverse order.
-            // Repeat for the value itself
-            long id = ids[i], val = values[i] + bias[ids[i]];
-            id = writer.reverseBits(id, 9);
-            writer.writeBits(id, 9);
-
-            val = writer.reverseBits(val, lengths_map[ids[i]]);
-            writer.writeBits(val, lengths_map[ids[i]]);
-        }
-
-        // Write 0x01FF id, end of attributes
-        writer.writeBits(writer.reverseBits(0x01FF, 9), 9);
-
-        stream.write((int) writer.flush());
-    }
 }
@@ -0,0 +1,9 @@
+package com.iamtechknow.d2sbackend;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(code = HttpStatus.FORBIDDEN, reason = "Forbidden")
+public class ForbiddenException extends RuntimeException {
+
+}
@@ -0,0 +1,55 @@
+package com.iamtechknow.d2sbackend;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations in nanoseconds with power of two buckets. Recording is a single uncontended add,
+ * so it can be used on hot paths by many threads.
+ */
+public class LatencyHistogram {
+    private final LongAdder[] buckets = new LongAdder[64];
+    private final LongAdder total = new LongAdder();
+
+    public LatencyHistogram() {
+        for(int i = 0; i < buckets.length; i++)
+            buckets[i] = new LongAdder();
+    }
+
+    public void record(long nanos) {
+        buckets[64 - Long.numberOfLeadingZeros(Math.max(0, nanos))].add(1);
+        total.add(nanos);
+    }
+
+    /**
+     * Summarize the histogram. Percentiles are the upper bound of the bucket they fall into.
+     */
+    public JsonObject toJson() {
+        long[] counts = new long[buckets.length];
+        long count = 0;
+        for(int i = 0; i < counts.length; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+
+        JsonObject result = new JsonObject();
+        result.add("count", new JsonPrimitive(count));
+        result.add("meanNanos", new JsonPrimitive(count == 0 ? 0 : total.sum() / count));
+        result.add("p50Nanos", new JsonPrimitive(percentile(counts, count, 0.5)));
+        result.add("p99Nanos", new JsonPrimitive(percentile(counts, count, 0.99)));
+        result.add("p999Nanos", new JsonPrimitive(percentile(counts, count, 0.999)));
+        return result;
+    }
+
+    private long percentile(long[] counts, long count, double p) {
+        long target = (long) Math.ceil(count * p), seen = 0;
+        for(int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if(seen >= target && seen > 0)
+                return i == 0 ? 0 : i == 63 ? Long.MAX_VALUE : (1L << i) - 1;
+        }
+        return 0;
+    }
+}
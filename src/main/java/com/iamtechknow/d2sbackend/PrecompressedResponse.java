@@ -0,0 +1,132 @@
+package com.iamtechknow.d2sbackend;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Response body that is built once and served from memory, along with a gzipped copy. Each has its own strong ETag,
+ * since they are different representations, and responses vary by Accept-Encoding. Serving it only picks the right
+ * byte array, so there is no serialization or compression per request.
+ */
+public class PrecompressedResponse {
+    private final byte[] body, gzipped;
+    private final String etag, gzippedEtag;
+    private final MediaType contentType;
+    private final CacheControl cacheControl;
+
+    public PrecompressedResponse(byte[] body, MediaType contentType, CacheControl cacheControl) {
+        this.body = body;
+        this.contentType = contentType;
+        this.cacheControl = cacheControl;
+        gzipped = gzip(body);
+        String hash = hash(body);
+        etag = '"' + hash + '"';
+        gzippedEtag = '"' + hash + "-gzip\"";
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    // ETag of the uncompressed body
+    public String getETag() {
+        return etag;
+    }
+
+    /**
+     * Build the response for a request, gzipped if the client accepts it, or 304 if the client has it cached.
+     * @param acceptEncoding value of the Accept-Encoding header, may be null
+     * @param ifNoneMatch value of the If-None-Match header, may be null
+     */
+    public ResponseEntity<byte[]> toResponse(String acceptEncoding, String ifNoneMatch) {
+        boolean gzip = acceptsGzip(acceptEncoding);
+        String tag = gzip ? gzippedEtag : etag;
+
+        HttpHeaders header = new HttpHeaders();
+        header.setETag(tag);
+        header.setCacheControl(cacheControl);
+        header.setVary(Collections.singletonList(HttpHeaders.ACCEPT_ENCODING));
+
+        if(ifNoneMatch != null && (ifNoneMatch.contains(tag) || ifNoneMatch.trim().equals("*")))
+            return new ResponseEntity<>(header, HttpStatus.NOT_MODIFIED);
+
+        header.setContentType(contentType);
+        if(gzip) {
+            header.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+            header.setContentLength(gzipped.length);
+            return new ResponseEntity<>(gzipped, header, HttpStatus.OK);
+        }
+
+        header.setContentLength(body.length);
+        return new ResponseEntity<>(body, header, HttpStatus.OK);
+    }
+
+    /**
+     * Whether an Accept-Encoding header allows gzip, either by name or by "*", with a quality above 0. A quality given
+     * for gzip itself takes precedence over one given for "*".
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if(acceptEncoding == null)
+            return false;
+
+        double gzip = -1, any = -1;
+        for(String part : acceptEncoding.split(",")) {
+            String[] params = part.split(";");
+            String coding = params[0].trim();
+            double quality = 1;
+            for(int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if(param.startsWith("q=") || param.startsWith("Q=")) {
+                    try {
+                        quality = Double.parseDouble(param.substring(2).trim());
+                    } catch(NumberFormatException e) {
+                        // An unreadable quality makes the coding unacceptable
+                        quality = 0;
+                    }
+                }
+            }
+
+            if(coding.equalsIgnoreCase("gzip") || coding.equalsIgnoreCase("x-gzip"))
+                gzip = Math.max(gzip, quality);
+            else if(coding.equals("*"))
+                any = Math.max(any, quality);
+        }
+        return (gzip >= 0 ? gzip : any) > 0;
+    }
+
+    /**
+     * Hex encoded SHA-256 of the data, truncated to 16 characters.
+     */
+    public static String hash(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder sb = new StringBuilder();
+            for(int i = 0; i < 8; i++)
+                sb.append(String.format("%02x", digest[i]));
+            return sb.toString();
+        } catch(NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+        try(GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -456,7 +456,7 @@ module.exports = [
         id: 149, name: 'Battle Orders', level: 24, deps: [138],
       },
       {
-        id: 150, name: 'Grim Ward', level: 24, deps: [150],
+        id: 150, name: 'Grim Ward', level: 24, deps: [142],
       },
       {
         id: 151, name: 'Whirlwind', level: 30, deps: [143, 144],
@@ -0,0 +1,55 @@
+package com.iamtechknow.d2sbackend;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class D2CatalogTest {
+    private final D2Catalog catalog = new D2Catalog(D2GameData.builtIn());
+
+    private JsonArray getProperties(int from, int to) {
+        String body = new String(catalog.getProperties(from, to).getBody(), StandardCharsets.UTF_8);
+        return new JsonParser().parse(body).getAsJsonArray();
+    }
+
+    @Test
+    public void slicesHoldThePropertiesInRange() {
+        JsonArray all = getProperties(0, 511);
+        assertThat(all.size()).isEqualTo(D2GameData.builtIn().getDescriptors().length -
+            (int) Arrays.stream(D2GameData.builtIn().getDescriptors()).filter(d -> d == null).count());
+
+        JsonArray slice = getProperties(10, 20);
+        assertThat(slice.size()).isPositive();
+        slice.forEach(prop -> assertThat(prop.getAsJsonObject().get("id").getAsInt()).isBetween(10, 20));
+    }
+
+    @Test
+    public void rangesWithTheSamePropertiesShareASlice() {
+        assertThat(catalog.getProperties(0, 511)).isSameAs(catalog.getProperties(0, 1000));
+        assertThat(catalog.getProperties(20, 10)).isSameAs(catalog.getProperties(600, 700));
+    }
+
+    @Test
+    public void largestIdDoesNotOverflow() {
+        assertThat(getProperties(0, Integer.MAX_VALUE)).isEqualTo(getProperties(0, 511));
+        assertThat(getProperties(Integer.MIN_VALUE, Integer.MAX_VALUE)).isEqualTo(getProperties(0, 511));
+        assertThat(getProperties(Integer.MAX_VALUE, Integer.MAX_VALUE).size()).isZero();
+    }
+
+    @Test
+    public void keepsRecentlyUsedSlices() {
+        PrecompressedResponse first = catalog.getProperties(10, 20);
+        // Each start ID gives a different range, more than are kept
+        for(int from = 0; from < 200; from++)
+            for(int to = from; to < 200; to += 7)
+                catalog.getProperties(from, to);
+        PrecompressedResponse recent = catalog.getProperties(150, 160);
+        assertThat(catalog.getProperties(150, 160)).isSameAs(recent);
+        assertThat(catalog.getProperties(10, 20)).isNotSameAs(first);
+    }
+}
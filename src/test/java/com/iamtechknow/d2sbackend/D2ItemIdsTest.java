@@ -0,0 +1,77 @@
+package com.iamtechknow.d2sbackend;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class D2ItemIdsTest {
+    private static final int THREADS = 8, IDS_PER_THREAD = 1_000_000;
+
+    @Test
+    public void splitGeneratorsNeverRepeatAcrossThreads() throws Exception {
+        D2ItemIds[] generators = new D2ItemIds[THREADS];
+        generators[0] = new D2ItemIds(42);
+        for(int i = 1; i < THREADS; i++)
+            generators[i] = generators[i - 1].split();
+
+        // Start every thread at once, so they generate at the same time
+        int[] ids = new int[THREADS * IDS_PER_THREAD];
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for(int i = 0; i < THREADS; i++) {
+                D2ItemIds generator = generators[i];
+                int from = i * IDS_PER_THREAD;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for(int j = 0; j < IDS_PER_THREAD; j++)
+                        ids[from + j] = generator.next();
+                    return null;
+                }));
+            }
+            for(Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        int[] first = Arrays.copyOf(ids, IDS_PER_THREAD);
+        Arrays.sort(ids);
+        for(int i = 1; i < ids.length; i++)
+            assertThat(ids[i]).as("identifier %d", i).isNotEqualTo(ids[i - 1]);
+
+        // The first generator's identifiers only depend on the seed
+        D2ItemIds again = new D2ItemIds(42);
+        for(int id : first)
+            assertThat(again.next()).isEqualTo(id);
+    }
+
+    @Test
+    public void seedsGiveDifferentIdentifiers() {
+        assertThat(new D2ItemIds(D2ItemIds.seedFor("Alice", 0)).next())
+            .isNotEqualTo(new D2ItemIds(D2ItemIds.seedFor("Bob", 0)).next());
+    }
+
+    @Test
+    public void splittingHalvesWhatIsLeft() {
+        D2ItemIds generator = new D2ItemIds(1);
+        for(int i = 0; i < 31; i++)
+            generator.split();
+        assertThat(generator.remaining()).isEqualTo(2);
+
+        D2ItemIds other = generator.split();
+        assertThat(generator.next()).isNotEqualTo(other.next());
+        assertThatThrownBy(generator::next).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(other::next).isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,42 @@
+package com.iamtechknow.d2sbackend;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class D2LootGeneratorTest {
+    private static final int ITEMS = 500;
+
+    @After
+    public void restoreGameData() {
+        D2GameData.publish(D2GameData.builtIn());
+    }
+
+    @Test
+    public void rollsTheBaseTypesOfTheCurrentGameData() {
+        D2LootGenerator generator = new D2LootGenerator(1);
+        generator.nextItem(10);
+
+        // The unique hand axe's base becomes a shield
+        D2GameData.publish(new D2GameData.Builder("test").addItem("zzz", D2GameData.ARMOR, 0, false, false)
+            .addItem("hax", D2GameData.SHIELD, 0, false, false).addItem("axe", D2GameData.WEAPON, 0, false, false)
+            .setDescriptors(D2GameData.builtIn().getDescriptors()).build());
+
+        Set<String> types = new HashSet<>();
+        int uniqueShields = 0;
+        for(int i = 0; i < ITEMS; i++) {
+            D2Item item = generator.nextItem(1 + i % D2LootGenerator.MAX_LEVEL);
+            types.add(item.getTypeCode());
+            if(item.getExtendedData().getQuality() == D2ExtendedItem.UNIQUE && item.getTypeCode().equals("hax")) {
+                assertThat(item.getExtendedData().getData().getDefense()).isPositive();
+                uniqueShields++;
+            }
+        }
+        assertThat(uniqueShields).isPositive();
+        assertThat(types).contains("zzz", "hax", "axe").isSubsetOf("zzz", "hax", "axe", "rin", "amu", "jew", "cm1", "cm2", "cm3");
+    }
+}
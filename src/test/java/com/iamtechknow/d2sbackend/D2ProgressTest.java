@@ -0,0 +1,77 @@
+package com.iamtechknow.d2sbackend;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class D2ProgressTest {
+    @Test
+    public void rejectsUnsupportedVersions() {
+        D2Save save = save(1, 0, 0, false);
+        save.setVersion(0x5C);
+        assertThatThrownBy(() -> D2Progress.of(save)).isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("Unsupported save version 92");
+    }
+
+    @Test
+    public void derivedProgressGivesTheSameRewardsAndBonuses() {
+        for(int level : new int[]{1, 40, 70, 99})
+            for(int difficulty = 0; difficulty <= 15; difficulty += 5)
+                for(int act = 0; act < 5; act++)
+                    for(boolean rewards : new boolean[]{false, true}) {
+                        D2Save save = save(level, difficulty, act, rewards);
+                        if(!save.checkValid())
+                            continue;
+                        String name = level + " " + difficulty + " " + act + " " + rewards;
+
+                        D2sWriter writer = new D2sWriter(new ByteArrayOutputStream());
+                        writer.write(save);
+                        int read = D2sReader.readSave(writer.toByteArray()).getRewards().toBits();
+                        D2CharacterAttributes expected = new D2CharacterAttributes(save);
+
+                        save.setProgress(D2Progress.of(save));
+                        assertThat(save.getEarnedRewards().toBits()).as(name).isEqualTo(read);
+                        D2CharacterAttributes attributes = new D2CharacterAttributes(save);
+                        assertThat(attributes.getAttrPoints()).as(name).isEqualTo(expected.getAttrPoints());
+                        assertThat(attributes.getSkillPoints()).as(name).isEqualTo(expected.getSkillPoints());
+                        assertThat(attributes.getExperience()).as(name).isEqualTo(expected.getExperience());
+                    }
+    }
+
+    @Test
+    public void progressOverridesTheRewardsSet() {
+        D2Save save = save(70, 10, 4, true);
+        D2CharacterAttributes withRewards = new D2CharacterAttributes(save);
+        save.setProgress(new D2Progress());
+
+        assertThat(save.getEarnedRewards().toBits()).isZero();
+        D2CharacterAttributes attributes = new D2CharacterAttributes(save);
+        assertThat(attributes.getAttrPoints()).isLessThan(withRewards.getAttrPoints());
+        assertThat(attributes.getSkillPoints()).isLessThan(withRewards.getSkillPoints());
+        assertThat(attributes.getExperience()).isLessThan(withRewards.getExperience());
+    }
+
+    private static D2Save save(int level, int difficulty, int act, boolean rewards) {
+        D2Save save = new D2Save();
+        save.setName("Quester");
+        save.setExpansion(true);
+        save.setLevel(level);
+        save.setDifficulty(difficulty);
+        save.setStartingAct(act);
+        if(rewards) {
+            D2QuestRewards set = save.getRewards();
+            set.setDen(true);
+            set.setSkillBook(true);
+            set.setLamEsen(true);
+            set.setIzual(true);
+            set.setSocket(true);
+            set.setnAncients(level >= 20);
+            set.setNmAncients(level >= 40);
+            set.sethAncients(level >= 60);
+        }
+        return save;
+    }
+}
@@ -0,0 +1,50 @@
+package com.iamtechknow.d2sbackend;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class D2RateLimitInterceptorTest {
+    private final D2RateLimitInterceptor interceptor =
+        new D2RateLimitInterceptor(" known, other ", 1, 0.001, 1, 0.001, 1, 0.001, 1, 0.001, 1, 0.001);
+
+    @Test
+    public void keysByConfiguredApiKeys() {
+        MockHttpServletRequest first = request("10.0.0.1", "known"), second = request("10.0.0.2", "known");
+        assertThat(interceptor.getClientKey(first)).isNegative().isEqualTo(interceptor.getClientKey(second));
+    }
+
+    @Test
+    public void keysByAddressForUnknownApiKeys() {
+        MockHttpServletRequest request = request("10.0.0.1", "made-up");
+        assertThat(interceptor.getClientKey(request)).isEqualTo((10L << 24 | 1) + 1);
+        assertThat(D2AuditReader.formatClient(interceptor.getClientKey(request))).isEqualTo("10.0.0.1");
+    }
+
+    @Test
+    public void newApiKeysDontGetNewBuckets() {
+        assertThat(interceptor.preHandle(request("10.0.0.1", "a"), new MockHttpServletResponse(), null)).isTrue();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertThat(interceptor.preHandle(request("10.0.0.1", "b"), response, null)).isFalse();
+        assertThat(response.getStatus()).isEqualTo(429);
+    }
+
+    @Test
+    public void limitsCatalogPropertyRanges() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/catalog/abc/properties");
+        request.setServletPath("/api/catalog/abc/properties");
+        request.setRemoteAddr("10.0.0.3");
+        assertThat(interceptor.preHandle(request, new MockHttpServletResponse(), null)).isTrue();
+        assertThat(interceptor.preHandle(request, new MockHttpServletResponse(), null)).isFalse();
+    }
+
+    private static MockHttpServletRequest request(String addr, String apiKey) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/");
+        request.setServletPath("/");
+        request.setRemoteAddr(addr);
+        request.addHeader(D2RateLimitInterceptor.API_KEY_HEADER, apiKey);
+        return request;
+    }
+}
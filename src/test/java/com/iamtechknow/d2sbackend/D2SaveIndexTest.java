@@ -0,0 +1,127 @@
+package com.iamtechknow.d2sbackend;
+
+import com.google.gson.JsonElement;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class D2SaveIndexTest {
+    // More than 64 saves, so queries span several words of rows
+    private static final int SAVES = 150;
+
+    private final D2SaveIndex index = new D2SaveIndex();
+
+    public D2SaveIndexTest() {
+        List<D2Save> saves = new ArrayList<>();
+        for(int i = 0; i < SAVES; i++)
+            saves.add(save(i, i % 99 + 1, i % 7, i % 3 == 0 ? "cap" : null));
+        index.putAll(saves);
+    }
+
+    private static D2Save save(int i, int level, int classNum, String itemType) {
+        D2Save save = new D2Save();
+        save.setName(name(i));
+        save.setLevel(level);
+        save.setClassNum(classNum);
+        save.setExpansion(true);
+        if(itemType != null) {
+            D2ItemForm form = new D2ItemForm();
+            form.setType(itemType);
+            save.getStash().add(form);
+        }
+        return save;
+    }
+
+    // Names can't have digits, so the number is written in letters
+    private static String name(int i) {
+        return "Row" + (char) ('a' + i / 26 / 26) + (char) ('a' + i / 26 % 26) + (char) ('a' + i % 26);
+    }
+
+    private List<String> query(D2SaveQuery query) {
+        query.setLimit(D2SaveQuery.MAX_LIMIT);
+        List<String> names = new ArrayList<>();
+        for(JsonElement name : index.query(query).getAsJsonArray("names"))
+            names.add(name.getAsString());
+        return names;
+    }
+
+    private static List<String> expected(IntPredicate matches) {
+        List<String> names = new ArrayList<>();
+        for(int i = 0; i < SAVES; i++)
+            if(matches.test(i))
+                names.add(name(i));
+        return names;
+    }
+
+    private List<String> levels(Integer min, Integer max) {
+        D2SaveQuery query = new D2SaveQuery();
+        query.setMinLevel(min);
+        query.setMaxLevel(max);
+        return query(query);
+    }
+
+    @Test
+    public void filtersByLevelRange() {
+        assertThat(levels(20, 40)).isEqualTo(expected(i -> i % 99 + 1 >= 20 && i % 99 + 1 <= 40));
+        assertThat(levels(99, null)).isEqualTo(expected(i -> i % 99 + 1 == 99));
+        assertThat(levels(null, 1)).isEqualTo(expected(i -> i % 99 + 1 == 1));
+        assertThat(levels(41, 40)).isEmpty();
+    }
+
+    @Test
+    public void boundsOutsideTheLevelsMatchEverythingOrNothing() {
+        List<String> all = expected(i -> true);
+        assertThat(levels(-1, null)).isEqualTo(all);
+        assertThat(levels(0, 200)).isEqualTo(all);
+        assertThat(levels(Integer.MIN_VALUE, Integer.MAX_VALUE)).isEqualTo(all);
+        assertThat(levels(128, null)).isEmpty();
+        assertThat(levels(null, -1)).isEmpty();
+    }
+
+    @Test
+    public void filtersByItemTypeAndClass() {
+        D2SaveQuery query = new D2SaveQuery();
+        query.setItemType("cap");
+        query.setClassNum(2);
+        assertThat(query(query)).isEqualTo(expected(i -> i % 3 == 0 && i % 7 == 2));
+
+        query.setItemType("qui");
+        assertThat(query(query)).isEmpty();
+    }
+
+    @Test
+    public void updatedSavesMoveBetweenPostingLists() {
+        index.put(save(0, 50, 0, "hax"));
+        D2SaveQuery caps = new D2SaveQuery();
+        caps.setItemType("cap");
+        assertThat(query(caps)).isEqualTo(expected(i -> i > 0 && i % 3 == 0));
+
+        D2SaveQuery axes = new D2SaveQuery();
+        axes.setItemType("hax");
+        assertThat(query(axes)).containsExactly(name(0));
+        assertThat(index.size()).isEqualTo(SAVES);
+    }
+
+    @Test
+    public void pagesThroughMatches() {
+        D2SaveQuery query = new D2SaveQuery();
+        query.setOffset(70);
+        query.setLimit(5);
+        assertThat(index.query(query).get("total").getAsLong()).isEqualTo(SAVES);
+        List<String> names = new ArrayList<>();
+        index.query(query).getAsJsonArray("names").forEach(name -> names.add(name.getAsString()));
+        assertThat(names).isEqualTo(expected(i -> i >= 70 && i < 75));
+    }
+
+    @Test
+    public void rejectsUnknownRewards() {
+        D2SaveQuery query = new D2SaveQuery();
+        query.setRewards("den,unknown");
+        assertThatThrownBy(() -> index.query(query)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,59 @@
+package com.iamtechknow.d2sbackend;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class D2SaveTest {
+    @Test
+    public void classicStashesHaveFourRows() {
+        assertThat(save(false, Collections.singletonList(form(0, 5))).checkValid()).isFalse();
+        assertThat(save(true, Collections.singletonList(form(0, 5))).checkValid()).isTrue();
+
+        List<D2ItemForm> stash = new ArrayList<>();
+        for(int i = 0; i < 6 * 4; i++)
+            stash.add(form(null, null));
+        D2Save classic = save(false, stash);
+        assertThat(classic.checkValid()).isTrue();
+        assertThat(stash).allMatch(item -> item.getY() < 4);
+
+        stash.add(form(null, null));
+        assertThat(save(false, stash).checkValid()).isFalse();
+        assertThat(save(true, stash).checkValid()).isTrue();
+    }
+
+    @Test
+    public void checkingTwiceKeepsWhatWasAssigned() {
+        D2ItemForm sword = new D2ItemForm();
+        sword.setType("ssd");
+        D2Save save = save(true, Collections.singletonList(sword));
+        assertThat(save.checkValid()).isTrue();
+        int x = sword.getX(), y = sword.getY(), identifier = sword.getIdentifier();
+        assertThat(identifier).isNotZero();
+
+        assertThat(save.checkValid()).isTrue();
+        assertThat(sword.getX()).isEqualTo(x);
+        assertThat(sword.getY()).isEqualTo(y);
+        assertThat(sword.getIdentifier()).isEqualTo(identifier);
+    }
+
+    private static D2Save save(boolean expansion, List<D2ItemForm> stash) {
+        D2Save save = new D2Save();
+        save.setName("Stasher");
+        save.setExpansion(expansion);
+        save.setStash(stash);
+        return save;
+    }
+
+    private static D2ItemForm form(Integer x, Integer y) {
+        D2ItemForm form = new D2ItemForm();
+        form.setType("key");
+        form.setX(x);
+        form.setY(y);
+        return form;
+    }
+}
@@ -0,0 +1,27 @@
+package com.iamtechknow.d2sbackend;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class D2SkillTreesTest {
+    private static final int BARBARIAN = 4, FIND_ITEM = 16, GRIM_WARD = 24;
+
+    @Test
+    public void skillsDependOnOtherSkillsAvailableNoLater() {
+        for(int cls = 0; D2SkillTrees.isClass(cls); cls++)
+            for(int skill = 0; skill < D2SkillTrees.NUM_SKILLS; skill++) {
+                int prereqs = D2SkillTrees.getMissing(cls, skill, 0);
+                assertThat(prereqs & 1 << skill).as("Skill %d", D2SkillTrees.getSkillId(cls, skill)).isZero();
+                for(int dep = 0; dep < D2SkillTrees.NUM_SKILLS; dep++)
+                    if((prereqs & 1 << dep) != 0)
+                        assertThat(D2SkillTrees.getRequiredLevel(cls, dep)).as("Skill %d", D2SkillTrees.getSkillId(cls, skill))
+                            .isLessThanOrEqualTo(D2SkillTrees.getRequiredLevel(cls, skill));
+            }
+    }
+
+    @Test
+    public void grimWardNeedsFindItem() {
+        assertThat(D2SkillTrees.getMissing(BARBARIAN, GRIM_WARD, 0)).isEqualTo(1 << FIND_ITEM);
+    }
+}
@@ -0,0 +1,44 @@
+package com.iamtechknow.d2sbackend;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class D2sEditSessionTest {
+    private static D2Save newSave(int gold) {
+        D2Save save = new D2Save();
+        save.setName("Editor");
+        save.setClassNum(1);
+        save.setLevel(20);
+        save.setGold(gold);
+        return save;
+    }
+
+    @Test
+    public void encodesOnlyChangedSections() {
+        D2sEditSession session = new D2sEditSession();
+        assertThat(session.update(newSave(100))).isEqualTo(D2sWriter.Section.values().length);
+        // Gold is only in the attributes
+        assertThat(session.update(newSave(200))).isEqualTo(1);
+        assertThat(session.update(newSave(200))).isZero();
+        assertThat(session.isValid()).isTrue();
+
+        D2sWriter writer = new D2sWriter(new ByteArrayOutputStream());
+        writer.write(newSave(200));
+        assertThat(session.size()).isEqualTo(writer.size());
+    }
+
+    @Test
+    public void keepsNothingForInvalidSaves() {
+        D2Save save = newSave(0);
+        save.setName("1nvalid");
+
+        D2sEditSession session = new D2sEditSession();
+        assertThat(session.update(save)).isZero();
+        assertThat(session.isValid()).isFalse();
+        assertThat(session.size()).isZero();
+        assertThat(session.toByteArray()).isNull();
+    }
+}
@@ -0,0 +1,81 @@
+package com.iamtechknow.d2sbackend;
+
+import com.google.gson.JsonObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class D2sImporterTest {
+    // More than one batch of 256
+    private static final int SAVES = (D2sSweep.MAX_CLASS + 1) * 99;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path sweep() throws IOException {
+        Path dir = folder.newFolder("saves").toPath();
+        int count = new D2sSweep.Builder(new D2Save()).setDifficulties(new int[]{0}).setActs(new int[]{0}).build()
+            .writeToDirectory(dir);
+        assertThat(count).isEqualTo(SAVES);
+        return dir;
+    }
+
+    @Test
+    public void resumesFromTheCheckpoint() throws Exception {
+        Path source = sweep(), checkpoint = folder.getRoot().toPath().resolve("import.checkpoint");
+        Files.write(checkpoint, (source + "\t300").getBytes(StandardCharsets.UTF_8));
+
+        D2SaveStore store = new D2SaveStore(new ConcurrentHashMap<>());
+        D2sImporter importer = new D2sImporter(store, checkpoint, 2);
+        importer.run(source);
+
+        JsonObject progress = importer.getProgress();
+        assertThat(progress.get("skipped").getAsLong()).isEqualTo(300);
+        assertThat(progress.get("read").getAsLong()).isEqualTo(SAVES - 300);
+        assertThat(progress.get("imported").getAsLong()).isEqualTo(SAVES - 300);
+        assertThat(progress.get("failed").getAsLong()).isZero();
+        assertThat(store.size()).isEqualTo(SAVES - 300);
+        assertThat(Files.exists(checkpoint)).isFalse();
+    }
+
+    @Test
+    public void ignoresCheckpointsOfOtherSources() throws Exception {
+        Path source = sweep(), checkpoint = folder.getRoot().toPath().resolve("import.checkpoint");
+        Files.write(checkpoint, (source + "-other\t300").getBytes(StandardCharsets.UTF_8));
+
+        D2SaveStore store = new D2SaveStore(new ConcurrentHashMap<>());
+        D2sImporter importer = new D2sImporter(store, checkpoint, 2);
+        importer.run(source);
+        assertThat(importer.getProgress().get("skipped").getAsLong()).isZero();
+        assertThat(store.size()).isEqualTo(SAVES);
+    }
+
+    @Test(timeout = 60_000)
+    public void finishesWhenTheStoreFails() throws Exception {
+        Path source = sweep(), checkpoint = folder.getRoot().toPath().resolve("import.checkpoint");
+        Map<String, D2Save> failing = new ConcurrentHashMap<String, D2Save>() {
+            @Override
+            public void putAll(Map<? extends String, ? extends D2Save> saves) {
+                throw new IllegalStateException("Store is down");
+            }
+        };
+
+        D2sImporter importer = new D2sImporter(new D2SaveStore(failing), checkpoint, 1);
+        importer.run(source);
+
+        JsonObject progress = importer.getProgress();
+        assertThat(progress.get("running").getAsBoolean()).isFalse();
+        assertThat(progress.get("imported").getAsLong()).isZero();
+        assertThat(progress.get("failed").getAsLong()).isEqualTo(SAVES);
+        assertThat(progress.getAsJsonArray("errors").get(0).getAsString()).contains("Store is down");
+    }
+}
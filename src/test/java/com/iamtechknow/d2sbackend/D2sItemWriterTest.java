@@ -0,0 +1,33 @@
+package com.iamtechknow.d2sbackend;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class D2sItemWriterTest {
+    @Test
+    public void tomesAreTheOnesInTheTables() {
+        D2GameData tome = new D2GameData.Builder("test").addItem("zzz", D2GameData.MISC, 0, true, true).build(),
+                   other = new D2GameData.Builder("test").addItem("zzz", D2GameData.MISC, 0, true, false).build();
+        assertThat(fields(tome)).contains("tomeData");
+        assertThat(fields(other)).doesNotContain("tomeData");
+    }
+
+    // Names of the fields an item of type zzz is written with
+    private static String fields(D2GameData data) {
+        D2ExtendedItem extended = new D2ExtendedItem.Builder(1, 1, 2).setData(new D2ItemData.Builder().setQuantity(20).build())
+            .build();
+        D2Item item = new D2Item.Builder("zzz").setIdentified(true).setItemLocation(D2Item.STORED).setItemStore(1)
+            .setExtendedData(extended).build();
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        D2BitTrace trace = new D2BitTrace();
+        new D2sItemWriter(stream, new BitWriter(stream, trace), D2sFormat.V1_10, data).writeItem(item);
+        StringBuilder names = new StringBuilder();
+        for(int i = 0; i < trace.size(); i++)
+            names.append(trace.getName(i)).append(' ');
+        return names.toString();
+    }
+}
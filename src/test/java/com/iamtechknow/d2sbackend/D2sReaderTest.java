@@ -0,0 +1,155 @@
+package com.iamtechknow.d2sbackend;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class D2sReaderTest {
+    // Items are placed after a 1.10 header, which the reader only checks the magic and version of
+    private static final int ITEMS = 765;
+    private static final int CHECKSUM_OFFSET = 12, TIME_OFFSET = 48;
+    private static final String[] STASH_ITEMS = {"cap", "lsd", "jav", "tbk", "key", "rin"};
+
+    @Test
+    public void rewritesWholeSavesItRead() {
+        for(int classNum = 0; classNum <= D2sSweep.MAX_CLASS; classNum++)
+            for(int level : new int[]{1, 70})
+                for(int diff : new int[]{0, 10})
+                    for(int act : new int[]{0, 4})
+                        // Gold and stash gold each add an attribute, which moves where the attributes end in a byte
+                        for(int gold = 0; gold < 4; gold++) {
+                            D2Save save = fullSave(classNum, level, diff, act, gold);
+                            assertThat(save.checkValid()).isTrue();
+                            byte[] written = write(save);
+
+                            D2Save read = D2sReader.readSave(written);
+                            assertThat(read.checkValid()).isTrue();
+                            assertThat(write(read)).as(save.getName() + " %d %d %d", level, diff, gold).isEqualTo(written);
+                        }
+    }
+
+    @Test
+    public void rejectsTruncatedSaves() {
+        byte[] written = write(fullSave(D2Save.NECROMANCER, 70, 10, 4, 1));
+        for(int length = 0; length < written.length; length++) {
+            byte[] truncated = Arrays.copyOf(written, length);
+            assertThatThrownBy(() -> D2sReader.readSave(truncated)).as("length %d", length)
+                .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    public void readsItemListsItWasGiven() {
+        D2Item[] items = {magicItem(1), magicItem(2), magicItem(3)};
+        byte[] save = save(items, null);
+
+        D2sReader.ItemCollector collector = new D2sReader.ItemCollector(D2sWriter.Section.ITEMS);
+        assertThat(new D2sReader(save).readItemList(ITEMS, D2sWriter.Section.ITEMS, collector)).isEqualTo(save.length);
+        assertThat(collector.getItems()).hasSize(items.length);
+        for(int i = 0; i < items.length; i++)
+            assertThat(D2sItemWriter.encode(collector.getItems().get(i), D2sFormat.V1_10))
+                .isEqualTo(D2sItemWriter.encode(items[i], D2sFormat.V1_10));
+    }
+
+    @Test
+    public void namesUnknownPropertiesAndWhereTheyAre() {
+        D2PropertyEncoder encoder = D2GameData.current().getPropertyEncoder(D2sFormat.V1_10);
+        int unknown = 0;
+        while(encoder.isDefined(unknown))
+            unknown++;
+
+        D2BitTrace trace = new D2BitTrace();
+        byte[] save = save(new D2Item[]{magicItem(1)}, trace);
+        int field = 0;
+        while(!trace.getName(field).endsWith(".id"))
+            field++;
+        long offset = (ITEMS + 4) * 8L + trace.getOffset(field);
+        for(int i = 0; i < trace.getWidth(field); i++) {
+            long bit = offset + i;
+            if((unknown >> i & 1) != 0)
+                save[(int) (bit >>> 3)] |= 1 << (bit & 7);
+            else
+                save[(int) (bit >>> 3)] &= ~(1 << (bit & 7));
+        }
+
+        assertThatThrownBy(() -> new D2sReader(save).readItemList(ITEMS, D2sWriter.Section.ITEMS, null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("Variable ID %d does not exist, at bit %d", unknown, offset);
+    }
+
+    @Test
+    public void rejectsVersionsWithoutALayout() {
+        byte[] save = save(new D2Item[0], null);
+        save[4] = 0x5C;
+        assertThatThrownBy(() -> new D2sReader(save)).isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("Unsupported save version 92");
+    }
+
+    // A save with items in the stash and a corpse, and a golem if it is a necromancer
+    private static D2Save fullSave(int classNum, int level, int diff, int act, int gold) {
+        D2Save save = new D2Save();
+        save.setName("Reader" + (char) ('a' + classNum));
+        save.setClassNum(classNum);
+        save.setLevel(level);
+        save.setDifficulty(diff);
+        save.setStartingAct(act);
+        save.setExpansion(true);
+        save.setRejuvs(gold % 2 == 0);
+        save.setGold((gold & 1) * 1234);
+        save.setStashGold((gold >> 1) * 56789);
+        for(String type : STASH_ITEMS)
+            save.getStash().add(form(type));
+        save.getCorpse().add(form("hax"));
+        if(classNum == D2Save.NECROMANCER)
+            save.setGolem(form("spr"));
+        return save;
+    }
+
+    private static D2ItemForm form(String type) {
+        D2ItemForm form = new D2ItemForm();
+        form.setType(type);
+        form.setDefense(12);
+        form.setDurability(24);
+        form.setQuantity(30);
+        return form;
+    }
+
+    // The time and checksum are cleared, since a rewrite happens at another time
+    private static byte[] write(D2Save save) {
+        D2sWriter writer = new D2sWriter(new ByteArrayOutputStream());
+        writer.write(save);
+        byte[] data = writer.toByteArray();
+        Arrays.fill(data, CHECKSUM_OFFSET, CHECKSUM_OFFSET + 4, (byte) 0);
+        Arrays.fill(data, TIME_OFFSET, TIME_OFFSET + 4, (byte) 0);
+        return data;
+    }
+
+    private static D2Item magicItem(int seed) {
+        D2ItemData data = new D2ItemData.Builder().setDefense(10 + seed).setMaxDur(20).setCurDur(20)
+            .setPropertyIds(new int[]{0, 7}).setPropertyValues(new long[]{seed, 10 * seed}).build();
+        D2ExtendedItem extended = new D2ExtendedItem.Builder(seed, 20, D2ExtendedItem.MAGICAL).setPrefixId(seed)
+            .setSuffixId(seed).setData(data).build();
+        return new D2Item.Builder("cap").setIdentified(true).setItemLocation(D2Item.STORED).setItemStore(1)
+            .setX(seed).setExtendedData(extended).build();
+    }
+
+    // A save with only a header and the items, as an item list of their own
+    private static byte[] save(D2Item[] items, D2BitTrace trace) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        D2sItemWriter writer = new D2sItemWriter(stream, new BitWriter(stream, trace), D2sFormat.V1_10);
+        for(D2Item item : items)
+            writer.writeItem(item);
+        byte[] encoded = stream.toByteArray();
+
+        byte[] save = Arrays.copyOf(new byte[]{0x55, (byte) 0xAA, 0x55, (byte) 0xAA, 0x60}, ITEMS + 4 + encoded.length);
+        save[ITEMS] = 'J';
+        save[ITEMS + 1] = 'M';
+        save[ITEMS + 2] = (byte) items.length;
+        System.arraycopy(encoded, 0, save, ITEMS + 4, encoded.length);
+        return save;
+    }
+}
@@ -0,0 +1,131 @@
+package com.iamtechknow.d2sbackend;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class D2sSweepTest {
+    private static final int CHECKSUM_OFFSET = 12, TIME_OFFSET = 48;
+
+    @Test
+    public void parsesListsAndRanges() {
+        assertThat(D2sSweep.parseValues("1-3,7, 9", 1, 99)).containsExactly(1, 2, 3, 7, 9);
+    }
+
+    @Test
+    public void rejectsValuesOutOfBoundsBeforeExpandingRanges() {
+        assertThatThrownBy(() -> D2sSweep.parseValues("0-2000000000", 1, 99)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> D2sSweep.parseValues("-5", 1, 99)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> D2sSweep.parseValues("x", 1, 99)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void rejectsInvalidSweepValues() {
+        D2sSweep.Builder builder = new D2sSweep.Builder(new D2Save());
+        assertThatThrownBy(() -> builder.setClasses(new int[]{7})).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> builder.setLevels(new int[]{0})).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> builder.setDifficulties(new int[]{3})).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> builder.setActs(new int[]{5})).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void rejectsValuesGivenTwice() {
+        D2sSweep.Builder builder = new D2sSweep.Builder(new D2Save());
+        assertThatThrownBy(() -> builder.setLevels(new int[]{1, 1})).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> builder.setClasses(D2sSweep.parseValues("0-6,0-6", 0, D2sSweep.MAX_CLASS)))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> builder.setDifficulties(new int[]{5, 0, 5})).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> builder.setActs(new int[]{0, 2, 2})).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void capsTheCombinationCount() {
+        // Without repeated values, no sweep is larger than the full matrix
+        new D2sSweep.Builder(new D2Save()).build();
+        int[] levels = new int[D2sSweep.MAX_SAVES + 1];
+        Arrays.fill(levels, 1);
+        assertThatThrownBy(() -> new D2sSweep.Builder(new D2Save()).setLevels(levels).build())
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void sweptSavesMatchSavesWrittenWhole() throws IOException {
+        D2Save template = new D2Save();
+        template.setName("Sweep");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int count = new D2sSweep.Builder(template).setClasses(new int[]{1, 2}).setLevels(new int[]{1, 50})
+            .setDifficulties(new int[]{0, 10}).setActs(new int[]{0, 4}).build().writeToZip(out);
+        assertThat(count).isEqualTo(16);
+        assertMatchWrittenWhole(out.toByteArray(), false);
+    }
+
+    @Test
+    public void sweptSavesWithItemsMatchSavesWrittenWhole() throws IOException {
+        // The items get identifiers seeded by each save's name
+        D2Save template = new D2Save();
+        template.setName("Sweep");
+        template.setExpansion(true);
+        template.setStash(stashItems());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int count = new D2sSweep.Builder(template).setClasses(new int[]{2, 4}).setLevels(new int[]{1, 50})
+            .setDifficulties(new int[]{0}).setActs(new int[]{0}).build().writeToZip(out);
+        assertThat(count).isEqualTo(4);
+        assertThat(template.getStash()).allSatisfy(form -> assertThat(form.getIdentifier()).isZero());
+        assertMatchWrittenWhole(out.toByteArray(), true);
+    }
+
+    private static List<D2ItemForm> stashItems() {
+        List<D2ItemForm> forms = new ArrayList<>();
+        for(String type : new String[]{"hax", "cap", "buc"}) {
+            D2ItemForm form = new D2ItemForm();
+            form.setType(type);
+            form.setDefense(3);
+            form.setDurability(20);
+            forms.add(form);
+        }
+        return forms;
+    }
+
+    // Compare each entry with the same save written on its own
+    private static void assertMatchWrittenWhole(byte[] zipped, boolean withItems) throws IOException {
+        try(ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(zipped))) {
+            for(ZipEntry entry; (entry = zip.getNextEntry()) != null; ) {
+                String name = entry.getName();
+                D2Save save = new D2Save();
+                if(withItems) {
+                    save.setExpansion(true);
+                    save.setStash(stashItems());
+                }
+                save.setName(name.substring(0, name.length() - ".d2s".length()));
+                save.setClassNum(name.charAt(5) - 'a');
+                save.setLevel((name.charAt(6) - 'a') * 26 + name.charAt(7) - 'a');
+                save.setDifficulty(name.charAt(8) - 'a');
+                save.setStartingAct(name.charAt(9) - 'a');
+                assertThat(save.checkValid()).isTrue();
+
+                D2sWriter writer = new D2sWriter(new ByteArrayOutputStream());
+                writer.write(save);
+                assertThat(withoutTime(zip.readAllBytes())).as(name).isEqualTo(withoutTime(writer.toByteArray()));
+            }
+        }
+    }
+
+    // Clear the checksum and the time the save was written, which differ between saves written at different times
+    private static byte[] withoutTime(byte[] data) {
+        for(int i = CHECKSUM_OFFSET; i < CHECKSUM_OFFSET + 4; i++)
+            data[i] = 0;
+        for(int i = TIME_OFFSET; i < TIME_OFFSET + 4; i++)
+            data[i] = 0;
+        return data;
+    }
+}
@@ -0,0 +1,49 @@
+package com.iamtechknow.d2sbackend;
+
+import org.junit.Test;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PrecompressedResponseTest {
+    private final PrecompressedResponse response = new PrecompressedResponse("{\"a\":1}".getBytes(StandardCharsets.UTF_8),
+        MediaType.APPLICATION_JSON_UTF8, CacheControl.noCache());
+
+    @Test
+    public void codingsHaveDifferentStrongETags() {
+        ResponseEntity<byte[]> plain = response.toResponse(null, null), gzipped = response.toResponse("gzip, br", null);
+        assertThat(plain.getHeaders().getETag()).isEqualTo(response.getETag());
+        assertThat(gzipped.getHeaders().getETag()).isNotEqualTo(plain.getHeaders().getETag()).endsWith("-gzip\"");
+        assertThat(gzipped.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(plain.getHeaders().getVary()).containsExactly(HttpHeaders.ACCEPT_ENCODING);
+        assertThat(gzipped.getHeaders().getVary()).containsExactly(HttpHeaders.ACCEPT_ENCODING);
+    }
+
+    @Test
+    public void revalidatesOnlyTheSameCoding() {
+        String plain = response.toResponse(null, null).getHeaders().getETag(),
+               gzipped = response.toResponse("gzip", null).getHeaders().getETag();
+        assertThat(response.toResponse(null, plain).getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(response.toResponse("gzip", gzipped).getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(response.toResponse("gzip", plain).getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.toResponse(null, gzipped).getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    public void readsTheQualityOfGzip() {
+        assertThat(PrecompressedResponse.acceptsGzip("gzip;q=0, br")).isFalse();
+        assertThat(PrecompressedResponse.acceptsGzip("gzip ; q=0.0")).isFalse();
+        assertThat(PrecompressedResponse.acceptsGzip("br, gzip;q=0.5")).isTrue();
+        assertThat(PrecompressedResponse.acceptsGzip("*")).isTrue();
+        assertThat(PrecompressedResponse.acceptsGzip("*;q=0.1, gzip;q=0")).isFalse();
+        assertThat(PrecompressedResponse.acceptsGzip("identity, *;q=0")).isFalse();
+        assertThat(PrecompressedResponse.acceptsGzip("identity")).isFalse();
+        assertThat(response.toResponse("gzip;q=0", null).getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isNull();
+    }
+}
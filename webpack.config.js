@@ -1,9 +1,16 @@
 const path = require('path');
+const CompressionPlugin = require('compression-webpack-plugin');
+const ManifestPlugin = require('webpack-manifest-plugin');
 
 const ROOT = path.resolve(__dirname, 'src/main/webapp');
 const SRC = path.resolve(ROOT, 'js');
 const DEST = path.resolve(__dirname, 'src/main/webapp/dist');
 
+// The dev server serves the bundle from memory and watch builds rewrite it, both under its plain name, so a running
+// server that read the manifest at startup keeps finding it. Other builds are fingerprinted
+const DEV_SERVER = process.argv.some(arg => arg.includes('webpack-dev-server'));
+const WATCH = process.argv.includes('--watch') || process.argv.includes('-w');
+
 const postcssObj = {
   // Loader for webpack to process CSS with PostCSS
   loader: 'postcss-loader',
@@ -24,9 +31,15 @@ module.exports = {
   cache: true,
   output: {
     path: DEST,
-    filename: 'bundle.js',
+    filename: DEV_SERVER || WATCH ? 'bundle.js' : 'bundle.[contenthash].js',
     publicPath: '/dist/',
   },
+  plugins: [
+    // The manifest maps the entry to its hashed file name, which Spring reads when rendering the index page
+    new ManifestPlugin(),
+    // Emit a gzipped copy of each asset next to it, served to clients that accept gzip
+    new CompressionPlugin({ test: /\.(js|css|map)$/ }),
+  ],
   resolve: {
     extensions: ['*', '.js', '.jsx'],
   },